@@ -7,10 +7,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-import org.bson.types.ObjectId;
 import org.nutz.lang.Lang;
-import org.nutz.mongo.adaptor.ZMoAs;
 import org.nutz.mongo.entity.ZMoEntity;
+import org.nutz.mongo.entity.ZMoEntityCodec;
 import org.nutz.mongo.entity.ZMoEntityHolder;
 import org.nutz.mongo.entity.ZMoEntityMaker;
 import org.nutz.mongo.entity.ZMoField;
@@ -116,12 +115,34 @@ public class ZMo {
      * @return 文档对象
      */
     public ZMoDoc toDoc(Object obj, ZMoEntity en) {
-        ZMoDoc doc = ZMoDoc.NEW();
-        Set<String> javaNames = en.getJavaNames(obj);
         // 获取字段过滤器
         ZMoFF ff = ZMoFF.get();
 
+        // 有预编译的编解码器，直接用它
+        ZMoEntityCodec codec = en.getCodec();
+        if (null != codec) {
+            return codec.toDoc(obj, ff);
+        }
+
+        ZMoDoc doc = ZMoDoc.NEW();
+
+        // 固定字段的实体，按下标循环每个字段
+        ZMoField[] flds = en.getFields();
+        if (null != flds) {
+            for (ZMoField fld : flds) {
+                Object v = fld.getEjecting().eject(obj);
+                // 是否需要过滤
+                if (null != ff && ff.isIgnore(fld, v)) {
+                    continue;
+                }
+                String mongoName = fld.getMongoName();
+                doc.put(mongoName, ZMoEntity.toMongoValue(fld, mongoName, v));
+            }
+            return doc;
+        }
+
         // 循环每个字段
+        Set<String> javaNames = en.getJavaNames(obj);
         for (String javaName : javaNames) {
             Object v = en.getValue(obj, javaName);
             ZMoField fld = en.javaField(javaName);
@@ -131,27 +152,8 @@ public class ZMo {
             if (null != ff && ff.isIgnore(fld, v)) {
                 continue;
             }
-            /*
-             * 适配值
-             */
             String mongoName = en.getMongoNameFromJava(javaName);
-            // 空值
-            if (null == v) {
-                doc.put(mongoName, v);
-            }
-            // _id
-            else if ("_id".equals(mongoName)) {
-                if (v instanceof ObjectId || v instanceof Boolean || v instanceof Integer || v instanceof Long) {
-                    doc.put(mongoName, v);
-                } else {
-                    doc.put(mongoName, new ObjectId(v.toString()));
-                }
-            }
-            // 其他值适配
-            else {
-                Object dbv = fld.getAdaptor().toMongo(fld, v);
-                doc.put(mongoName, dbv);
-            }
+            doc.put(mongoName, ZMoEntity.toMongoValue(fld, mongoName, v));
         }
         return doc;
     }
@@ -287,7 +289,29 @@ public class ZMo {
         if (null == en) {
             en = holder.get(DFT_MAP_KEY);
         }
+        // 有预编译的编解码器，直接用它
+        ZMoEntityCodec codec = en.getCodec();
+        if (null != codec) {
+            return codec.fromDoc(doc);
+        }
         Object obj = en.born();
+
+        // 固定字段的实体，按下标循环每个字段
+        ZMoField[] flds = en.getFields();
+        if (null != flds) {
+            for (ZMoField fld : flds) {
+                String mongoName = fld.getMongoName();
+                try {
+                    Object pojov = ZMoEntity.toJavaValue(fld, mongoName, doc.get(mongoName));
+                    fld.getInjecting().inject(obj, pojov);
+                }
+                catch (Exception e) {
+                    throw Lang.wrapThrow(e, "fail to set field %s#%s", en.getType(), mongoName);
+                }
+            }
+            return obj;
+        }
+
         Set<String> keys = en.getMongoNames(doc);
         for (String key : keys) {
             try {
@@ -296,24 +320,8 @@ public class ZMo {
                 String javaName = en.getJavaNameFromMongo(key);
                 String mongoName = en.getMongoNameFromJava(javaName);
 
-                // 获取值
-                Object v = doc.get(mongoName);
-                Object pojov;
-
-                // 空值
-                if (null == v) {
-                    pojov = null;
-                }
-                // _id
-                else if ("_id".equals(key)) {
-                    pojov = ZMoAs.id().toJava(fld, v);
-                }
-                // 其他值适配
-                else {
-                    pojov = fld.getAdaptor().toJava(fld, v);
-                }
-                // 设置值
-
+                // 获取值 & 设置值
+                Object pojov = ZMoEntity.toJavaValue(fld, key, doc.get(mongoName));
                 en.setValue(obj, javaName, pojov);
             }
             catch (Exception e) {
@@ -323,6 +331,42 @@ public class ZMo {
         return obj;
     }
 
+    /**
+     * 将文档转换成 POJO，只设置给定的字段，其余字段保持对象创建时的默认值
+     * <p>
+     * 一般与只包含这些字段的查询投影一起使用
+     * 
+     * @param dbobj
+     *            文档对象
+     * @param en
+     *            映射关系
+     * @param only
+     *            要设置的字段，null 表示全部，同 fromDoc(dbobj, en)
+     * @return 普通Java对象
+     */
+    public Object fromDoc(DBObject dbobj, ZMoEntity en, ZMoField[] only) {
+        if (null == only || null == en)
+            return fromDoc(dbobj, en);
+        if (null == dbobj)
+            return null;
+        // 有预编译的编解码器，直接用它
+        ZMoEntityCodec codec = en.getCodec();
+        if (null != codec)
+            return codec.fromDoc(dbobj, only);
+        Object obj = en.born();
+        for (ZMoField fld : only) {
+            String mongoName = fld.getMongoName();
+            try {
+                Object pojov = ZMoEntity.toJavaValue(fld, mongoName, dbobj.get(mongoName));
+                fld.getInjecting().inject(obj, pojov);
+            }
+            catch (Exception e) {
+                throw Lang.wrapThrow(e, "fail to set field %s#%s", en.getType(), mongoName);
+            }
+        }
+        return obj;
+    }
+
     /**
      * 将任何一个文档对象转换成指定 Java 对象（不可以是 Map 等容器）
      * 
@@ -374,28 +418,29 @@ public class ZMo {
      * @return 映射关系
      */
     public ZMoEntity getEntity(Class<? extends Object> type) {
-        ZMoEntity en = holder.get(type.getName());
-        // 如果木有加载过，那么尝试加载
+        // 先按类型查，不需要计算类名的哈希
+        ZMoEntity en = holder.get(type);
+        if (null != en) {
+            return en;
+        }
+        String key = type.getName();
+        en = holder.get(key);
+        // 如果木有加载过，那么尝试加载。这里不加锁，
+        // 多个线程同时加载同一个类型时，只有第一个放入 holder 的会被采用
         if (null == en) {
-            synchronized (this) {
-                en = holder.get(type.getName());
-                if (null == en) {
-                    // 如果是 Map 或者 DBObject 用默认Map映射对象来搞
-                    if (Map.class.isAssignableFrom(type)
-                        || DBObject.class.isAssignableFrom(type)) {
-                        en = holder.get(DFT_MAP_KEY).clone();
-                        en.setType(type);
-                        en.setBorning(en.getMirror().getBorning());
-                        holder.add(type.getName(), en);
-                    }
-                    // 普通 POJO
-                    else {
-                        en = maker.make(type);
-                        holder.add(type.getName(), en);
-                    }
-                }
+            // 如果是 Map 或者 DBObject 用默认Map映射对象来搞
+            if (Map.class.isAssignableFrom(type) || DBObject.class.isAssignableFrom(type)) {
+                en = holder.get(DFT_MAP_KEY).clone();
+                en.setType(type);
+                en.setBorning(en.getMirror().getBorning());
+            }
+            // 普通 POJO
+            else {
+                en = maker.make(type);
             }
+            en = holder.addIfAbsent(key, en);
         }
+        holder.bind(type, en);
         return en;
     }
 
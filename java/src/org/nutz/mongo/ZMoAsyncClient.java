@@ -0,0 +1,146 @@
+package org.nutz.mongo;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.nutz.lang.Lang;
+import org.nutz.mongo.codec.ZMoCodecs;
+
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCredential;
+import com.mongodb.ServerAddress;
+import com.mongodb.async.client.MongoClientSettings;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.connection.ClusterConnectionMode;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.ServerSettings;
+import com.mongodb.connection.SocketSettings;
+import com.mongodb.connection.SslSettings;
+import com.mongodb.connection.netty.NettyStreamFactoryFactory;
+
+/**
+ * 异步驱动的连接
+ * <p>
+ * 异步驱动（mongodb-driver-async）是可选的依赖，所有用到它的类的代码都集中在这里和 ZMoAsyncCo 中， ZMongo 只持有本类的引用，没有这个 jar 时也能正常加载和使用同步的功能
+ */
+public class ZMoAsyncClient {
+
+    private com.mongodb.async.client.MongoClient client;
+
+    /**
+     * 按照同步连接的服务器地址，认证信息和连接配置创建
+     */
+    ZMoAsyncClient(MongoClient mc) {
+        this.client = MongoClients.create(settings(mc.getServerAddressList(),
+                                                   mc.getCredentialsList(),
+                                                   mc.getMongoClientOptions()));
+    }
+
+    /**
+     * @return 异步驱动的原生连接
+     */
+    public com.mongodb.async.client.MongoClient getNative() {
+        return client;
+    }
+
+    /**
+     * @return 异步集合封装
+     */
+    public ZMoAsyncCo ac(String dbname, String coname) {
+        return new ZMoAsyncCo(client.getDatabase(dbname).getCollection(coname, DBObject.class));
+    }
+
+    public void close() {
+        client.close();
+    }
+
+    /**
+     * 把同步驱动的连接配置转换成异步驱动的配置
+     * <p>
+     * 异步驱动默认的 AsynchronousSocketChannel 不支持 SSL，开启了 SSL 时需要 classpath 中有 netty
+     */
+    static MongoClientSettings settings(List<ServerAddress> sas,
+                                        List<MongoCredential> creds,
+                                        MongoClientOptions mopt) {
+        ClusterSettings.Builder cs = ClusterSettings.builder()
+                                                    .hosts(sas)
+                                                    .serverSelectionTimeout(mopt.getServerSelectionTimeout(),
+                                                                            TimeUnit.MILLISECONDS);
+        if (null != mopt.getRequiredReplicaSetName()) {
+            cs.requiredReplicaSetName(mopt.getRequiredReplicaSetName());
+            cs.mode(ClusterConnectionMode.MULTIPLE);
+        } else {
+            cs.mode(sas.size() > 1 ? ClusterConnectionMode.MULTIPLE
+                                   : ClusterConnectionMode.SINGLE);
+        }
+        int poolSize = mopt.getConnectionsPerHost();
+        ConnectionPoolSettings pool = ConnectionPoolSettings.builder()
+                                                            .maxSize(poolSize)
+                                                            .minSize(mopt.getMinConnectionsPerHost())
+                                                            .maxWaitQueueSize(poolSize
+                                                                              * mopt.getThreadsAllowedToBlockForConnectionMultiplier())
+                                                            .maxWaitTime(mopt.getMaxWaitTime(),
+                                                                         TimeUnit.MILLISECONDS)
+                                                            .maxConnectionIdleTime(mopt.getMaxConnectionIdleTime(),
+                                                                                   TimeUnit.MILLISECONDS)
+                                                            .maxConnectionLifeTime(mopt.getMaxConnectionLifeTime(),
+                                                                                   TimeUnit.MILLISECONDS)
+                                                            .build();
+        SocketSettings socket = SocketSettings.builder()
+                                              .connectTimeout(mopt.getConnectTimeout(),
+                                                              TimeUnit.MILLISECONDS)
+                                              .readTimeout(mopt.getSocketTimeout(),
+                                                           TimeUnit.MILLISECONDS)
+                                              .keepAlive(mopt.isSocketKeepAlive())
+                                              .build();
+        // 同步驱动的心跳连接也是读写都用 connectTimeout
+        SocketSettings heartbeat = SocketSettings.builder()
+                                                 .connectTimeout(mopt.getConnectTimeout(),
+                                                                 TimeUnit.MILLISECONDS)
+                                                 .readTimeout(mopt.getConnectTimeout(),
+                                                              TimeUnit.MILLISECONDS)
+                                                 .keepAlive(mopt.isSocketKeepAlive())
+                                                 .build();
+        ServerSettings server = ServerSettings.builder()
+                                              .heartbeatFrequency(mopt.getHeartbeatFrequency(),
+                                                                  TimeUnit.MILLISECONDS)
+                                              .minHeartbeatFrequency(mopt.getMinHeartbeatFrequency(),
+                                                                     TimeUnit.MILLISECONDS)
+                                              .build();
+        SslSettings ssl = SslSettings.builder()
+                                     .enabled(mopt.isSslEnabled())
+                                     .invalidHostNameAllowed(mopt.isSslInvalidHostNameAllowed())
+                                     .build();
+        MongoClientSettings.Builder sb = MongoClientSettings.builder()
+                                                            .clusterSettings(cs.build())
+                                                            .credentialList(creds)
+                                                            .readPreference(mopt.getReadPreference())
+                                                            .writeConcern(mopt.getWriteConcern())
+                                                            .readConcern(mopt.getReadConcern())
+                                                            .codecRegistry(ZMoCodecs.registry())
+                                                            .connectionPoolSettings(pool)
+                                                            .socketSettings(socket)
+                                                            .heartbeatSocketSettings(heartbeat)
+                                                            .serverSettings(server)
+                                                            .sslSettings(ssl);
+        if (mopt.isSslEnabled()) {
+            if (!hasNetty())
+                throw Lang.makeThrow("async client with SSL needs netty in classpath");
+            sb.streamFactoryFactory(new NettyStreamFactoryFactory());
+        }
+        return sb.build();
+    }
+
+    private static boolean hasNetty() {
+        try {
+            Class.forName("io.netty.channel.EventLoopGroup");
+            return true;
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
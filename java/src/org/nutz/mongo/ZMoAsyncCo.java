@@ -0,0 +1,340 @@
+package org.nutz.mongo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nutz.log.Log;
+import org.nutz.log.Logs;
+
+import com.mongodb.DBObject;
+import com.mongodb.async.AsyncBatchCursor;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.FindIterable;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+
+/**
+ * 基于异步驱动的集合封装，所有方法都立即返回 ZMoFuture，不占用调用线程
+ * <p>
+ * 通过 ZMongo.ac 或者 ZMoDB.ac 获得。注意，ZMongo.db 时设置的拦截器对它不生效
+ */
+public class ZMoAsyncCo {
+
+    private static final Log log = Logs.get();
+
+    /**
+     * 按批处理查询结果
+     */
+    public static interface Batch {
+
+        /**
+         * 在驱动的 IO 线程中调用，不要在这里做阻塞的事情。本方法返回后才会去取下一批
+         *
+         * @param docs
+         *            一批文档
+         * @return false 表示不再需要后面的数据，游标会被关闭
+         */
+        boolean handle(List<ZMoDoc> docs);
+    }
+
+    private MongoCollection<DBObject> co;
+
+    public ZMoAsyncCo(MongoCollection<DBObject> co) {
+        this.co = co;
+    }
+
+    public String getName() {
+        return co.getNamespace().getCollectionName();
+    }
+
+    public MongoCollection<DBObject> getNativeCollection() {
+        return co;
+    }
+
+    /**
+     * @return 用 ZMoBsonCodec 直接编解码 POJO 的集合
+     */
+    public <T> MongoCollection<T> typed(Class<T> classOfT) {
+        return co.withDocumentClass(classOfT);
+    }
+
+    public ZMoFuture<Void> insert(ZMoDoc doc) {
+        debug("insert", doc);
+        ZMoFuture<Void> f = new ZMoFuture<Void>();
+        co.insertOne(doc, f);
+        return f;
+    }
+
+    public ZMoFuture<Void> insert(List<ZMoDoc> list) {
+        debug("insert", list.size());
+        ZMoFuture<Void> f = new ZMoFuture<Void>();
+        co.insertMany(list, f);
+        return f;
+    }
+
+    /**
+     * 插入一个 POJO，如果 _id 为空，会被设置上
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ZMoFuture<Void> insertObj(T obj) {
+        debug("insertObj", obj);
+        ZMoFuture<Void> f = new ZMoFuture<Void>();
+        typed((Class<T>) obj.getClass()).insertOne(obj, f);
+        return f;
+    }
+
+    /**
+     * 更新第一条匹配的文档
+     */
+    public ZMoFuture<UpdateResult> update(ZMoDoc q, ZMoDoc o) {
+        debug("update", q, o);
+        ZMoFuture<UpdateResult> f = new ZMoFuture<UpdateResult>();
+        co.updateOne(q, o, f);
+        return f;
+    }
+
+    public ZMoFuture<UpdateResult> updateMulti(ZMoDoc q, ZMoDoc o) {
+        debug("updateMulti", q, o);
+        ZMoFuture<UpdateResult> f = new ZMoFuture<UpdateResult>();
+        co.updateMany(q, o, f);
+        return f;
+    }
+
+    public ZMoFuture<UpdateResult> upsert(ZMoDoc q, ZMoDoc o) {
+        debug("upsert", q, o);
+        ZMoFuture<UpdateResult> f = new ZMoFuture<UpdateResult>();
+        co.updateOne(q, o, new UpdateOptions().upsert(true), f);
+        return f;
+    }
+
+    /**
+     * 删除全部匹配的文档
+     */
+    public ZMoFuture<DeleteResult> remove(ZMoDoc q) {
+        debug("remove", q);
+        ZMoFuture<DeleteResult> f = new ZMoFuture<DeleteResult>();
+        co.deleteMany(q, f);
+        return f;
+    }
+
+    public ZMoFuture<DeleteResult> removeOne(ZMoDoc q) {
+        debug("removeOne", q);
+        ZMoFuture<DeleteResult> f = new ZMoFuture<DeleteResult>();
+        co.deleteOne(q, f);
+        return f;
+    }
+
+    /**
+     * @param q
+     *            查询条件，null 表示全部
+     * @param keys
+     *            要返回的字段，null 表示全部
+     * @param sort
+     *            排序，可以为 null
+     * @param skip
+     *            跳过的条数
+     * @param limit
+     *            最多返回的条数，0 表示不限
+     * @return 全部结果
+     */
+    public ZMoFuture<List<ZMoDoc>> find(ZMoDoc q, ZMoDoc keys, ZMoDoc sort, int skip, int limit) {
+        debug("find", q, keys, sort, skip, limit);
+        ZMoFuture<List<DBObject>> f = new ZMoFuture<List<DBObject>>();
+        iterable(q, keys, sort, skip, limit).into(new ArrayList<DBObject>(), f);
+        return f.map(new ZMoFuture.Mapper<List<DBObject>, List<ZMoDoc>>() {
+            public List<ZMoDoc> map(List<DBObject> list) {
+                return wrap(list);
+            }
+        });
+    }
+
+    public ZMoFuture<List<ZMoDoc>> find(ZMoDoc q) {
+        return find(q, null, null, 0, 0);
+    }
+
+    /**
+     * 分批处理查询结果，不会把全部结果都放在内存里
+     * <p>
+     * 处理完一批才去取下一批，处理得慢，服务器那边也就跟着慢下来
+     *
+     * @param q
+     *            查询条件，null 表示全部
+     * @param keys
+     *            要返回的字段，null 表示全部
+     * @param sort
+     *            排序，可以为 null
+     * @param limit
+     *            最多返回的条数，0 表示不限
+     * @param batchSize
+     *            每批的条数，0 表示由服务器决定
+     * @param handler
+     *            处理每一批
+     * @return 处理过的总条数，游标取完，或者 handler 返回 false 时完成
+     */
+    public ZMoFuture<Long> each(ZMoDoc q,
+                                ZMoDoc keys,
+                                ZMoDoc sort,
+                                int limit,
+                                int batchSize,
+                                final Batch handler) {
+        debug("each", q, keys, sort, limit, batchSize);
+        final ZMoFuture<Long> f = new ZMoFuture<Long>();
+        FindIterable<DBObject> it = iterable(q, keys, sort, 0, limit);
+        if (batchSize > 0)
+            it.batchSize(batchSize);
+        it.batchCursor(new SingleResultCallback<AsyncBatchCursor<DBObject>>() {
+            public void onResult(AsyncBatchCursor<DBObject> cursor, Throwable err) {
+                if (null != err)
+                    f.onResult(null, err);
+                else
+                    next(cursor, handler, 0, f);
+            }
+        });
+        return f;
+    }
+
+    private static void next(final AsyncBatchCursor<DBObject> cursor,
+                             final Batch handler,
+                             final long n,
+                             final ZMoFuture<Long> f) {
+        cursor.next(new SingleResultCallback<List<DBObject>>() {
+            public void onResult(List<DBObject> list, Throwable err) {
+                // 出错，或者已经取完了
+                if (null != err || null == list) {
+                    cursor.close();
+                    f.onResult(null == err ? n : null, err);
+                    return;
+                }
+                boolean more;
+                try {
+                    more = list.isEmpty() || handler.handle(wrap(list));
+                }
+                catch (Throwable e) {
+                    cursor.close();
+                    f.onResult(null, e);
+                    return;
+                }
+                long m = n + list.size();
+                if (!more || cursor.isClosed()) {
+                    cursor.close();
+                    f.onResult(m, null);
+                    return;
+                }
+                next(cursor, handler, m, f);
+            }
+        });
+    }
+
+    /**
+     * 同 find，只是把结果转换成 Java 对象
+     *
+     * @param classOfT
+     *            对象类型，可以是 POJO 或者 Map
+     */
+    public <T> ZMoFuture<List<T>> find(ZMoDoc q,
+                                       ZMoDoc keys,
+                                       ZMoDoc sort,
+                                       int skip,
+                                       int limit,
+                                       final Class<T> classOfT) {
+        debug("find", q, keys, sort, skip, limit, classOfT);
+        ZMoFuture<List<DBObject>> f = new ZMoFuture<List<DBObject>>();
+        iterable(q, keys, sort, skip, limit).into(new ArrayList<DBObject>(), f);
+        return f.map(new ZMoFuture.Mapper<List<DBObject>, List<T>>() {
+            public List<T> map(List<DBObject> list) {
+                List<T> re = new ArrayList<T>(list.size());
+                for (DBObject o : list)
+                    re.add(ZMo.me().fromDocToObj(o, classOfT));
+                return re;
+            }
+        });
+    }
+
+    public ZMoFuture<ZMoDoc> findOne(ZMoDoc q) {
+        return findOne(q, null);
+    }
+
+    public ZMoFuture<ZMoDoc> findOne(ZMoDoc q, ZMoDoc keys) {
+        debug("findOne", q, keys);
+        ZMoFuture<DBObject> f = new ZMoFuture<DBObject>();
+        iterable(q, keys, null, 0, 0).first(f);
+        return f.map(new ZMoFuture.Mapper<DBObject, ZMoDoc>() {
+            public ZMoDoc map(DBObject o) {
+                return null == o ? null : ZMoDoc.WRAP(o);
+            }
+        });
+    }
+
+    public <T> ZMoFuture<T> findOne(ZMoDoc q, final Class<T> classOfT) {
+        debug("findOne", q, classOfT);
+        ZMoFuture<DBObject> f = new ZMoFuture<DBObject>();
+        iterable(q, null, null, 0, 0).first(f);
+        return f.map(new ZMoFuture.Mapper<DBObject, T>() {
+            public T map(DBObject o) {
+                return null == o ? null : ZMo.me().fromDocToObj(o, classOfT);
+            }
+        });
+    }
+
+    public ZMoFuture<Long> count(ZMoDoc q) {
+        debug("count", q);
+        ZMoFuture<Long> f = new ZMoFuture<Long>();
+        co.count(null == q ? ZMoDoc.NEW() : q, f);
+        return f;
+    }
+
+    public ZMoFuture<List<ZMoDoc>> aggregate(List<ZMoDoc> pipeline) {
+        debug("aggregate", pipeline);
+        ZMoFuture<List<DBObject>> f = new ZMoFuture<List<DBObject>>();
+        co.aggregate(pipeline).into(new ArrayList<DBObject>(), f);
+        return f.map(new ZMoFuture.Mapper<List<DBObject>, List<ZMoDoc>>() {
+            public List<ZMoDoc> map(List<DBObject> list) {
+                return wrap(list);
+            }
+        });
+    }
+
+    public ZMoFuture<Void> drop() {
+        debug("drop");
+        ZMoFuture<Void> f = new ZMoFuture<Void>();
+        co.drop(f);
+        return f;
+    }
+
+    private FindIterable<DBObject> iterable(ZMoDoc q, ZMoDoc keys, ZMoDoc sort, int skip, int limit) {
+        FindIterable<DBObject> it = co.find(null == q ? ZMoDoc.NEW() : q);
+        if (null != keys)
+            it.projection(keys);
+        if (null != sort)
+            it.sort(sort);
+        if (skip > 0)
+            it.skip(skip);
+        if (limit > 0)
+            it.limit(limit);
+        return it;
+    }
+
+    private static List<ZMoDoc> wrap(List<DBObject> list) {
+        List<ZMoDoc> re = new ArrayList<ZMoDoc>(list.size());
+        for (DBObject o : list)
+            re.add(ZMoDoc.WRAP(o));
+        return re;
+    }
+
+    private void debug(String method, Object... args) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder("async db.").append(getName())
+                                                             .append('.')
+                                                             .append(method)
+                                                             .append('(');
+            for (int i = 0; i < args.length; i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(args[i]);
+            }
+            log.debug(sb.append(')'));
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package org.nutz.mongo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量写的执行结果，包括总计数以及每个操作的结果
+ */
+public class ZMoBulkResult {
+
+    public static enum Status {
+        /**
+         * 还在 ZMoBulkWriter 中，没有发给服务器
+         */
+        PENDING,
+        /**
+         * 执行成功
+         */
+        OK,
+        /**
+         * 执行失败
+         */
+        FAILED,
+        /**
+         * 有序模式下，因为前面的操作失败而没有执行
+         */
+        SKIPPED,
+        /**
+         * 写关注为不确认，不知道结果
+         */
+        UNKNOWN
+    }
+
+    /**
+     * 单个操作的结果
+     */
+    public static class Op {
+
+        private int index;
+
+        private ZMoBulkWriter.Type type;
+
+        Status status;
+
+        Object upsertedId;
+
+        private int errorCode;
+
+        private String errorMessage;
+
+        private Throwable cause;
+
+        Op(int index, ZMoBulkWriter.Type type) {
+            this.index = index;
+            this.type = type;
+            this.status = Status.PENDING;
+        }
+
+        /**
+         * @return 操作加入到 ZMoBulkWriter 的顺序，从 0 开始
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public ZMoBulkWriter.Type getType() {
+            return type;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isOk() {
+            return Status.OK == status;
+        }
+
+        /**
+         * @return 如果这个操作导致了一次 upsert 插入，这里是插入的 _id
+         */
+        public Object getUpsertedId() {
+            return upsertedId;
+        }
+
+        public int getErrorCode() {
+            return errorCode;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        /**
+         * @return 整批发送失败（比如网络错误）时的异常，单个操作的写错误没有异常，为 null
+         */
+        public Throwable getCause() {
+            return cause;
+        }
+
+        void fail(int code, String msg) {
+            this.status = Status.FAILED;
+            this.errorCode = code;
+            this.errorMessage = msg;
+        }
+
+        void fail(Throwable e) {
+            fail(-1, e.toString());
+            this.cause = e;
+        }
+
+        public String toString() {
+            return String.format("#%d %s %s%s",
+                                 index,
+                                 type,
+                                 status,
+                                 null == errorMessage ? "" : " : " + errorMessage);
+        }
+    }
+
+    private List<Op> ops;
+
+    private int batchCount;
+
+    private int insertedCount;
+
+    private int matchedCount;
+
+    private int modifiedCount;
+
+    private int removedCount;
+
+    private int upsertedCount;
+
+    private boolean acknowledged;
+
+    private String writeConcernError;
+
+    ZMoBulkResult() {
+        ops = new ArrayList<Op>();
+        acknowledged = true;
+    }
+
+    /**
+     * @return 每个操作的结果，顺序与加入的顺序相同
+     */
+    public List<Op> getOps() {
+        return ops;
+    }
+
+    /**
+     * @param index
+     *            操作在本结果中的位置，从 0 开始，不一定等于 Op.getIndex()
+     */
+    public Op getOp(int index) {
+        return ops.get(index);
+    }
+
+    /**
+     * @return 所有失败的操作
+     */
+    public List<Op> getErrors() {
+        List<Op> list = new ArrayList<Op>();
+        for (Op op : ops)
+            if (Status.FAILED == op.status)
+                list.add(op);
+        return list;
+    }
+
+    public boolean hasErrors() {
+        for (Op op : ops)
+            if (Status.FAILED == op.status)
+                return true;
+        return null != writeConcernError;
+    }
+
+    /**
+     * @return 实际发给服务器的批次数
+     */
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    public int getMatchedCount() {
+        return matchedCount;
+    }
+
+    public int getModifiedCount() {
+        return modifiedCount;
+    }
+
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    public int getUpsertedCount() {
+        return upsertedCount;
+    }
+
+    public boolean isAcknowledged() {
+        return acknowledged;
+    }
+
+    public String getWriteConcernError() {
+        return writeConcernError;
+    }
+
+    Op addOp(int index, ZMoBulkWriter.Type type) {
+        Op op = new Op(index, type);
+        ops.add(op);
+        return op;
+    }
+
+    void count(int inserted, int matched, int modified, int removed, int upserted) {
+        batchCount++;
+        insertedCount += inserted;
+        matchedCount += matched;
+        modifiedCount += modified;
+        removedCount += removed;
+        upsertedCount += upserted;
+    }
+
+    void unacknowledged() {
+        batchCount++;
+        acknowledged = false;
+    }
+
+    void setWriteConcernError(String writeConcernError) {
+        this.writeConcernError = writeConcernError;
+    }
+
+    public String toString() {
+        return String.format("batch:%d, inserted:%d, matched:%d, modified:%d, removed:%d, upserted:%d, errors:%d",
+                             batchCount,
+                             insertedCount,
+                             matchedCount,
+                             modifiedCount,
+                             removedCount,
+                             upsertedCount,
+                             getErrors().size());
+    }
+}
@@ -0,0 +1,401 @@
+package org.nutz.mongo;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BSONObject;
+import org.bson.types.ObjectId;
+import org.nutz.lang.Lang;
+import org.nutz.log.Log;
+import org.nutz.log.Logs;
+
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.BulkWriteUpsert;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+/**
+ * 批量写入器，可以混合插入，更新，upsert，删除等操作
+ * <p>
+ * 操作先缓存在本地，当数量达到 maxCount (或者设置了 maxBytes，估算的字节数达到 maxBytes) 时，合并成一个 bulkWrite 命令发给服务器。
+ * 调用 execute 发送剩余的操作并返回全部操作的结果。一批超过服务器消息上限时，驱动会自己再拆分
+ * <p>
+ * 有序模式下，一旦某个操作失败，后面所有的操作（包括尚未发送的批次）都不再执行； 无序模式下，失败的操作不影响其他操作
+ * <p>
+ * 整批发送失败（比如网络错误）时，这一批的操作都记为失败，并带上异常，不再向外抛出。 有序模式下后面的批次也都不再执行
+ * <p>
+ * 每次 execute 返回的是上次 execute 之后加入的操作的结果，返回后写入器就不再持有它们。 长期使用的写入器应该定期调用 execute，否则结果会一直累积
+ * <p>
+ * 本对象不是线程安全的
+ */
+public class ZMoBulkWriter {
+
+    public static enum Type {
+        INSERT, UPDATE, UPDATE_MULTI, UPSERT, REPLACE, REMOVE, REMOVE_ONE
+    }
+
+    private static final Log log = Logs.get();
+
+    /**
+     * 默认每批最多的操作数
+     */
+    public static final int DFT_MAX_COUNT = 1000;
+
+    /**
+     * 建议的每批最大字节数，比服务器 16MB 的消息上限留了点余量。默认不限制字节数
+     */
+    public static final int DFT_MAX_BYTES = 8 * 1024 * 1024;
+
+    private static class Item {
+        Type type;
+        DBObject q;
+        DBObject o;
+        ZMoBulkResult.Op op;
+    }
+
+    private DBCollection dbc;
+
+    private boolean ordered;
+
+    private int maxCount;
+
+    private int maxBytes;
+
+    private WriteConcern concern;
+
+    private List<Item> pending;
+
+    private int pendingBytes;
+
+    private ZMoBulkResult result;
+
+    private int opCount;
+
+    /**
+     * 有序模式下，前面有操作失败了
+     */
+    private boolean broken;
+
+    ZMoBulkWriter(DBCollection dbc, boolean ordered) {
+        this.dbc = dbc;
+        this.ordered = ordered;
+        this.maxCount = DFT_MAX_COUNT;
+        this.maxBytes = 0;
+        this.pending = new ArrayList<Item>();
+        this.result = new ZMoBulkResult();
+    }
+
+    public ZMoBulkWriter maxCount(int maxCount) {
+        this.maxCount = Math.max(1, maxCount);
+        return this;
+    }
+
+    /**
+     * @param maxBytes
+     *            每批最大的字节数，按文档内容粗略估算，不会真的编码。0 表示不限制，由驱动按服务器的消息上限拆分
+     * @return 自身
+     */
+    public ZMoBulkWriter maxBytes(int maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        return this;
+    }
+
+    /**
+     * @param concern
+     *            写关注，null 表示用集合默认的
+     * @return 自身
+     */
+    public ZMoBulkWriter writeConcern(WriteConcern concern) {
+        this.concern = concern;
+        return this;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * @param obj
+     *            要插入的对象，可以是 ZMoDoc，Map 或者 POJO
+     * @return 自身
+     */
+    public ZMoBulkWriter insert(Object obj) {
+        return add(Type.INSERT, null, ZMo.me().toDoc(obj));
+    }
+
+    /**
+     * 更新第一条匹配的文档
+     */
+    public ZMoBulkWriter update(ZMoDoc q, ZMoDoc o) {
+        return add(Type.UPDATE, q, o);
+    }
+
+    /**
+     * 更新全部匹配的文档
+     */
+    public ZMoBulkWriter updateMulti(ZMoDoc q, ZMoDoc o) {
+        return add(Type.UPDATE_MULTI, q, o);
+    }
+
+    /**
+     * 更新第一条匹配的文档，如果没有匹配的就插入
+     * 
+     * @param o
+     *            可以是 ZMoDoc，Map 或者 POJO。如果是 $set 这类更新操作符的文档就做更新，否则用它替换匹配的文档
+     */
+    public ZMoBulkWriter upsert(ZMoDoc q, Object o) {
+        return add(Type.UPSERT, q, ZMo.me().toDoc(o));
+    }
+
+    /**
+     * 用一个对象替换第一条匹配的文档，对象可以是 ZMoDoc，Map 或者 POJO
+     */
+    public ZMoBulkWriter replace(ZMoDoc q, Object obj) {
+        return add(Type.REPLACE, q, ZMo.me().toDoc(obj));
+    }
+
+    /**
+     * 删除全部匹配的文档
+     */
+    public ZMoBulkWriter remove(ZMoDoc q) {
+        return add(Type.REMOVE, q, null);
+    }
+
+    /**
+     * 删除第一条匹配的文档
+     */
+    public ZMoBulkWriter removeOne(ZMoDoc q) {
+        return add(Type.REMOVE_ONE, q, null);
+    }
+
+    /**
+     * @return 尚未发送给服务器的操作数
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 将缓存的操作立即发给服务器
+     *
+     * @return 自身
+     */
+    public ZMoBulkWriter flush() {
+        if (pending.isEmpty())
+            return this;
+        List<Item> items = pending;
+        pending = new ArrayList<Item>();
+        pendingBytes = 0;
+
+        // 前面失败了，有序模式下剩下的都不执行
+        if (broken) {
+            skip(items, 0);
+            return this;
+        }
+
+        BulkWriteOperation bulk = ordered ? dbc.initializeOrderedBulkOperation()
+                                          : dbc.initializeUnorderedBulkOperation();
+        for (Item it : items)
+            apply(bulk, it);
+
+        if (log.isDebugEnabled())
+            log.debugf("db.%s.bulkWrite(%d ops, ordered:%s)", dbc.getName(), items.size(), ordered);
+
+        try {
+            BulkWriteResult re = null == concern ? bulk.execute() : bulk.execute(concern);
+            collect(items, re);
+        }
+        catch (BulkWriteException e) {
+            collect(items, e.getWriteResult());
+            for (BulkWriteError err : e.getWriteErrors()) {
+                items.get(err.getIndex()).op.fail(err.getCode(), err.getMessage());
+            }
+            if (null != e.getWriteConcernError()) {
+                result.setWriteConcernError(e.getWriteConcernError().getMessage());
+            }
+            // 有序模式下，出错的操作后面的都没有执行
+            if (ordered && !e.getWriteErrors().isEmpty()) {
+                int last = e.getWriteErrors().get(e.getWriteErrors().size() - 1).getIndex();
+                skip(items, last + 1);
+                broken = true;
+            }
+        }
+        // 整批都没有结果，不知道执行了多少，全部算失败
+        catch (RuntimeException e) {
+            log.warnf("db.%s.bulkWrite(%d ops) fail : %s", dbc.getName(), items.size(), e);
+            for (Item it : items)
+                it.op.fail(e);
+            if (ordered)
+                broken = true;
+        }
+        return this;
+    }
+
+    /**
+     * 发送全部剩余的操作，并返回结果
+     *
+     * @return 上次 execute 之后加入的所有操作的结果
+     */
+    public ZMoBulkResult execute() {
+        flush();
+        ZMoBulkResult re = result;
+        result = new ZMoBulkResult();
+        return re;
+    }
+
+    private ZMoBulkWriter add(Type type, DBObject q, DBObject o) {
+        if (null == q && Type.INSERT != type)
+            throw Lang.makeThrow("bulk %s without query", type);
+        Item it = new Item();
+        it.type = type;
+        it.q = q;
+        it.o = o;
+        int bytes = 0;
+        if (maxBytes > 0) {
+            bytes = sizeOf(q) + sizeOf(o);
+            // 加上本操作会超出限制，那么先发送之前的
+            if (!pending.isEmpty() && pendingBytes + bytes > maxBytes) {
+                flush();
+            }
+        }
+        it.op = result.addOp(opCount++, type);
+        pending.add(it);
+        pendingBytes += bytes;
+
+        if (pending.size() >= maxCount || (maxBytes > 0 && pendingBytes >= maxBytes)) {
+            flush();
+        }
+        return this;
+    }
+
+    private void apply(BulkWriteOperation bulk, Item it) {
+        switch (it.type) {
+        case INSERT:
+            bulk.insert(it.o);
+            break;
+        case UPDATE:
+            bulk.find(it.q).updateOne(it.o);
+            break;
+        case UPDATE_MULTI:
+            bulk.find(it.q).update(it.o);
+            break;
+        case UPSERT:
+            if (isUpdate(it.o))
+                bulk.find(it.q).upsert().updateOne(it.o);
+            else
+                bulk.find(it.q).upsert().replaceOne(it.o);
+            break;
+        case REPLACE:
+            bulk.find(it.q).replaceOne(it.o);
+            break;
+        case REMOVE:
+            bulk.find(it.q).remove();
+            break;
+        case REMOVE_ONE:
+            bulk.find(it.q).removeOne();
+            break;
+        }
+    }
+
+    private void collect(List<Item> items, BulkWriteResult re) {
+        if (null == re || !re.isAcknowledged()) {
+            result.unacknowledged();
+            for (Item it : items)
+                it.op.status = ZMoBulkResult.Status.UNKNOWN;
+            return;
+        }
+        for (Item it : items)
+            it.op.status = ZMoBulkResult.Status.OK;
+        List<BulkWriteUpsert> upserts = re.getUpserts();
+        result.count(re.getInsertedCount(),
+                     re.getMatchedCount(),
+                     re.isModifiedCountAvailable() ? re.getModifiedCount() : 0,
+                     re.getRemovedCount(),
+                     upserts.size());
+        for (BulkWriteUpsert up : upserts) {
+            items.get(up.getIndex()).op.upsertedId = up.getId();
+        }
+    }
+
+    private void skip(List<Item> items, int from) {
+        for (int i = from; i < items.size(); i++) {
+            ZMoBulkResult.Op op = items.get(i).op;
+            if (ZMoBulkResult.Status.FAILED != op.status)
+                op.status = ZMoBulkResult.Status.SKIPPED;
+        }
+    }
+
+    /**
+     * @return 文档是否是 {$set:..} 这样的更新操作符文档
+     */
+    private static boolean isUpdate(DBObject o) {
+        for (String key : o.keySet())
+            return key.startsWith("$");
+        return false;
+    }
+
+    /**
+     * 粗略估算文档编码后的字节数，只遍历不编码，驱动发送时还要再编码一次，这里不能重复花这个代价
+     */
+    static int sizeOf(DBObject obj) {
+        if (null == obj)
+            return 0;
+        byte[] raw = ZMoDoc.rawBytesOf(obj);
+        if (null != raw)
+            return raw.length;
+        return estimate(obj);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static int estimate(Object v) {
+        if (null == v || v instanceof Boolean)
+            return 1;
+        if (v instanceof CharSequence)
+            return ((CharSequence) v).length() + 5;
+        if (v instanceof Number || v instanceof Date)
+            return 8;
+        if (v instanceof ObjectId)
+            return 12;
+        if (v instanceof byte[])
+            return ((byte[]) v).length + 5;
+        // 文档，每个字段还有 1 字节类型和以 0 结尾的字段名
+        if (v instanceof BSONObject) {
+            BSONObject o = (BSONObject) v;
+            int n = 5;
+            for (String key : o.keySet())
+                n += key.length() + 2 + estimate(o.get(key));
+            return n;
+        }
+        if (v instanceof Map) {
+            int n = 5;
+            for (Object en : ((Map) v).entrySet()) {
+                Map.Entry e = (Map.Entry) en;
+                n += String.valueOf(e.getKey()).length() + 2 + estimate(e.getValue());
+            }
+            return n;
+        }
+        // 数组，下标就是字段名
+        if (v instanceof Iterable) {
+            int n = 5;
+            for (Object ele : (Iterable) v)
+                n += 4 + estimate(ele);
+            return n;
+        }
+        if (v.getClass().isArray()) {
+            int n = 5;
+            int len = Array.getLength(v);
+            for (int i = 0; i < len; i++)
+                n += 4 + estimate(Array.get(v, i));
+            return n;
+        }
+        return 16;
+    }
+
+}
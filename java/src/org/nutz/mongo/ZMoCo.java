@@ -4,11 +4,21 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.nutz.json.Json;
 import org.nutz.json.JsonFormat;
+import org.nutz.lang.Lang;
 import org.nutz.log.Log;
 import org.nutz.log.Logs;
+import org.nutz.mongo.codec.ZMoCodecs;
+import org.nutz.mongo.entity.ZMoEntity;
+import org.nutz.mongo.entity.ZMoField;
+import org.nutz.mongo.fieldfilter.ZMoFF;
+import org.nutz.mongo.interceptor.impl.BulkheadMongoInterceptor;
 
 import com.mongodb.AggregationOutput;
 import com.mongodb.CommandResult;
@@ -22,9 +32,12 @@ import com.mongodb.GroupCommand;
 import com.mongodb.MapReduceCommand;
 import com.mongodb.MapReduceCommand.OutputType;
 import com.mongodb.MapReduceOutput;
+import com.mongodb.Mongo;
+import com.mongodb.MongoClient;
 import com.mongodb.ReadPreference;
 import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
+import com.mongodb.client.MongoCollection;
 
 /**
  * 对于集合类的薄封装
@@ -35,12 +48,119 @@ public class ZMoCo {
 
     private DBCollection dbc;
 
+    /**
+     * typed() 生成过的集合，MongoCollection 是不可变的，可以共享
+     */
+    private ConcurrentHashMap<Class<?>, MongoCollection<?>> typeds = new ConcurrentHashMap<Class<?>, MongoCollection<?>>();
+
+    /**
+     * 缓存了本句柄的 ZMoDB，集合被删除或者改名时需要通知它
+     */
+    ZMoDB owner;
+
+    /**
+     * 执行 xxxAsync 的线程池，null 表示用所属 ZMongo 的
+     */
+    private ExecutorService executor;
+
     private static final Log log = Logs.get();
 
     public ZMoCo(DBCollection c) {
         this.dbc = c;
     }
 
+    /**
+     * 设置本集合执行 submit 和 xxxAsync 的线程池，比如 Java 21 的 Executors.newVirtualThreadPerTaskExecutor()
+     * <p>
+     * 不设置则用所属 ZMongo 的线程池，请参看 ZMongo.setExecutor。线程池归调用者所有
+     * 
+     * @return 自身
+     */
+    public ZMoCo setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @return 执行阻塞调用的线程池
+     * @throws RuntimeException
+     *             没有设置过，集合也不是从 ZMongo 获取的
+     */
+    public ExecutorService getExecutor() {
+        if (null != executor)
+            return executor;
+        if (null != owner && null != owner.mongo)
+            return owner.mongo.getExecutor();
+        throw Lang.makeThrow("no executor for collection '%s', call setExecutor first", getName());
+    }
+
+    /**
+     * 在线程池中执行一个阻塞的调用，当前线程的舱壁标签会带到任务中
+     * 
+     * @see BulkheadMongoInterceptor#wrap(Callable)
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return getExecutor().submit(BulkheadMongoInterceptor.wrap(task));
+    }
+
+    /**
+     * 在线程池中执行 findOne(q)，调用线程不会被阻塞
+     */
+    public Future<ZMoDoc> findOneAsync(final ZMoDoc q) {
+        return submit(new Callable<ZMoDoc>() {
+            public ZMoDoc call() {
+                return findOne(q);
+            }
+        });
+    }
+
+    /**
+     * 在线程池中执行 count(q)，调用线程不会被阻塞
+     */
+    public Future<Long> countAsync(final ZMoDoc q) {
+        return submit(new Callable<Long>() {
+            public Long call() {
+                return count(q);
+            }
+        });
+    }
+
+    /**
+     * 在线程池中查询并读出全部结果，调用线程不会被阻塞
+     * 
+     * @param q
+     *            查询条件，null 表示全部
+     * @param keys
+     *            返回的字段，null 表示全部
+     * @param sort
+     *            排序，null 表示不排序
+     * @param limit
+     *            最多多少条，小于等于 0 表示不限
+     */
+    public Future<List<ZMoDoc>> findListAsync(final ZMoDoc q,
+                                              final ZMoDoc keys,
+                                              final ZMoDoc sort,
+                                              final int limit) {
+        return submit(new Callable<List<ZMoDoc>>() {
+            public List<ZMoDoc> call() {
+                DBCursor cu = dbc.find(null == q ? ZMoDoc.NEW() : q, keys);
+                if (null != sort)
+                    cu.sort(sort);
+                if (limit > 0)
+                    cu.limit(limit);
+                List<ZMoDoc> list = new ArrayList<ZMoDoc>();
+                try {
+                    while (cu.hasNext())
+                        list.add(ZMoDoc.WRAP(cu.next()));
+                }
+                finally {
+                    cu.close();
+                }
+                return list;
+            }
+        });
+    }
+
     public WriteResult insert(ZMoDoc[] arr, WriteConcern concern) {
         if (log.isDebugEnabled())
             log.debug(log_format("insert", arr, concern));
@@ -92,6 +212,36 @@ public class ZMoCo {
         return dbc.insert((List) list, concern, encoder);
     }
 
+    /**
+     * 插入一组文档，其中未修改过的懒加载文档直接写出原始字节，不再重新编码
+     * 
+     * @see ZMoDoc#LAZY(byte[])
+     */
+    public WriteResult insertLazy(List<ZMoDoc> list, WriteConcern concern) {
+        return insert(list, concern, ZMoLazyEncoder.FACTORY.create());
+    }
+
+    /**
+     * 创建一个批量写入器，混合的插入/更新/删除操作会被合并成 bulkWrite 命令
+     * 
+     * @param ordered
+     *            true 为有序模式，出错即停止；false 为无序模式
+     * @return 批量写入器
+     */
+    public ZMoBulkWriter bulk(boolean ordered) {
+        return new ZMoBulkWriter(dbc, ordered);
+    }
+
+    /**
+     * 创建一个后写队列，配置好以后调用 start() 启动
+     * 
+     * @return 后写队列
+     * @see ZMoWriteBehind
+     */
+    public ZMoWriteBehind writeBehind() {
+        return new ZMoWriteBehind(this);
+    }
+
     public WriteResult update(ZMoDoc q,
                               ZMoDoc o,
                               boolean upsert,
@@ -204,6 +354,55 @@ public class ZMoCo {
         dbc.setHintFields((List) lst);
     }
 
+    /**
+     * 获取一个直接以 POJO 为文档类型的集合，POJO 会通过 ZMoBsonCodec 直接与 BSON 流互相转换
+     * <p>
+     * 注意，这个集合走的是 MongoClient 的执行器，ZMongo.db 时设置的拦截器对它不生效
+     * 
+     * @param classOfT
+     *            POJO 类型
+     * @return 集合对象
+     */
+    @SuppressWarnings("unchecked")
+    public <T> MongoCollection<T> typed(Class<T> classOfT) {
+        ReadPreference rp = dbc.getReadPreference();
+        WriteConcern wc = dbc.getWriteConcern();
+        MongoCollection<T> mc = (MongoCollection<T>) typeds.get(classOfT);
+        // 读偏好和写关注可能被改过，改过就重新生成
+        if (null != mc && rp.equals(mc.getReadPreference()) && wc.equals(mc.getWriteConcern()))
+            return mc;
+        Mongo mongo = dbc.getDB().getMongo();
+        if (!(mongo instanceof MongoClient)) {
+            throw Lang.makeThrow("%s not MongoClient", mongo.getClass().getName());
+        }
+        mc = ((MongoClient) mongo).getDatabase(dbc.getDB().getName())
+                                  .getCollection(dbc.getName(), classOfT)
+                                  .withCodecRegistry(ZMoCodecs.registry())
+                                  .withReadPreference(rp)
+                                  .withWriteConcern(wc);
+        typeds.put(classOfT, mc);
+        return mc;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> void insertObj(T obj) {
+        if (log.isDebugEnabled())
+            log.debug(log_format("insertObj", obj));
+        typed((Class<T>) obj.getClass()).insertOne(obj);
+    }
+
+    public <T> void insertObjs(Class<T> classOfT, List<T> objs) {
+        if (log.isDebugEnabled())
+            log.debug(log_format("insertObjs", classOfT, objs));
+        typed(classOfT).insertMany(objs);
+    }
+
+    public <T> T findOneObj(ZMoDoc q, Class<T> classOfT) {
+        if (log.isDebugEnabled())
+            log.debug(log_format("findOneObj", q, classOfT));
+        return typed(classOfT).find(null == q ? ZMoDoc.NEW() : q).first();
+    }
+
     public DBCursor find(ZMoDoc ref) {
         if (log.isDebugEnabled())
             log.debug(log_format("find", ref));
@@ -216,6 +415,157 @@ public class ZMoCo {
         return dbc.find(ref, keys);
     }
 
+    /**
+     * 查询并返回懒加载的文档，游标的每个元素都是 ZMoDoc，字段在读取时才解码
+     * <p>
+     * 适合只看少数几个字段就转发出去的场景，配合 insertLazy 可以原样写回
+     * 
+     * @param ref
+     *            查询条件，null 表示全部
+     * @param keys
+     *            要返回的字段，null 表示全部
+     * @return 游标
+     * @see ZMoDoc#LAZY(byte[])
+     */
+    public DBCursor findLazy(ZMoDoc ref, ZMoDoc keys) {
+        if (log.isDebugEnabled())
+            log.debug(log_format("findLazy", ref, keys));
+        return dbc.find(ref, keys).setDecoderFactory(ZMoLazyDecoder.FACTORY);
+    }
+
+    /**
+     * 查询并返回一个逐条转换成 Java 对象的游标
+     * 
+     * @param ref
+     *            查询条件，null 表示全部
+     * @param keys
+     *            要返回的字段，null 表示全部
+     * @param classOfT
+     *            对象类型，可以是 POJO 或者 Map
+     * @return 游标，用完需要关闭
+     */
+    public <T> ZMoCursor<T> iterate(ZMoDoc ref, ZMoDoc keys, Class<T> classOfT) {
+        if (log.isDebugEnabled())
+            log.debug(log_format("iterate", ref, keys, classOfT));
+        return iterate(dbc.find(ref, keys), classOfT);
+    }
+
+    /**
+     * 同 iterate(ref, keys, classOfT)，只是指定了每批读取的文档数量
+     */
+    public <T> ZMoCursor<T> iterate(ZMoDoc ref, ZMoDoc keys, Class<T> classOfT, int batchSize) {
+        return iterate(ref, keys, classOfT).batchSize(batchSize);
+    }
+
+    /**
+     * 只查询并转换字段过滤器保留的字段
+     * <p>
+     * 字段投影根据对象的映射实体和过滤器的规则自动生成（过滤器中与值相关的规则，比如 ignoreNull，在这里不生效）， 转换时也只设置这些字段，其余字段保持默认值
+     * 
+     * @param ref
+     *            查询条件，null 表示全部
+     * @param classOfT
+     *            POJO 类型，如果是 Map 则不做投影
+     * @param ff
+     *            字段过滤器，null 表示全部字段
+     * @return 游标，用完需要关闭
+     */
+    public <T> ZMoCursor<T> find(ZMoDoc ref, Class<T> classOfT, ZMoFF ff) {
+        ZMoEntity en = ZMo.me().getEntity(classOfT);
+        ZMoField[] only = null == ff ? null : ff.select(en);
+        ZMoDoc keys = null == only ? null : ZMoFF.projection(only);
+        if (log.isDebugEnabled())
+            log.debug(log_format("find", ref, keys, classOfT));
+        return new ZMoCursor<T>(dbc.find(ref, keys), en, only);
+    }
+
+    /**
+     * 将一个已经准备好的游标包裹成逐条转换 Java 对象的游标
+     * 
+     * @param cursor
+     *            游标
+     * @param classOfT
+     *            对象类型，可以是 POJO 或者 Map
+     * @return 游标，用完需要关闭
+     */
+    public <T> ZMoCursor<T> iterate(DBCursor cursor, Class<T> classOfT) {
+        return new ZMoCursor<T>(cursor, ZMo.me().getEntity(classOfT));
+    }
+
+    /**
+     * 同 page(q, sort, after, limit, classOfT)，只是返回文档
+     */
+    public ZMoPage<ZMoDoc> page(ZMoDoc q, ZMoDoc sort, String after, int limit) {
+        return page(q, sort, after, limit, ZMoDoc.class);
+    }
+
+    /**
+     * 按键翻页。与 skip/limit 不同，不论翻到第几页，服务器都只需要从索引上定位到上一页的末尾， 所以深翻页与第一页一样快
+     * <p>
+     * 如果排序里没有 _id，会自动加上 _id 作为最后一个排序字段，保证顺序唯一。 为了效率，排序字段（加上 _id）应该有对应的索引，且值不能为 null
+     * 
+     * @param q
+     *            查询条件，null 表示全部
+     * @param sort
+     *            排序，如 {ct:-1}，方向只能是 1 或 -1，不支持 {$meta:"textScore"} 这样的排序
+     * @param after
+     *            上一页返回的令牌，null 表示第一页
+     * @param limit
+     *            每页的条数
+     * @param classOfT
+     *            对象类型，可以是 ZMoDoc，POJO 或者 Map
+     * @return 一页结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ZMoPage<T> page(ZMoDoc q, ZMoDoc sort, String after, int limit, Class<T> classOfT) {
+        if (limit <= 0)
+            throw Lang.makeThrow("page limit must > 0 : %d", limit);
+        ZMoDoc by = ZMoPage.sortOf(sort);
+        String[] keys = by.keySet().toArray(new String[by.keySet().size()]);
+        String sortKeys = by.toString();
+
+        // 从令牌构建定位条件
+        ZMoDoc cond = null == q ? ZMoDoc.NEW() : q;
+        if (null != after) {
+            List<?> vs = ZMoPage.decodeToken(sortKeys, after);
+            if (vs.size() != keys.length)
+                throw Lang.makeThrow("invalid page token '%s'", after);
+            ZMoDoc seek = ZMoPage.seekOf(by, vs);
+            cond = cond.isEmpty() ? seek : ZMoDoc.NEW("$and", Lang.list(cond, seek));
+        }
+        if (log.isDebugEnabled())
+            log.debug(log_format("page", cond, by, limit));
+
+        // 多取一条，用来判断是否还有下一页
+        DBCursor cursor = dbc.find(cond).sort(by).limit(limit + 1).batchSize(limit + 1);
+        boolean isDoc = ZMoDoc.class == classOfT;
+        List<T> list = new ArrayList<T>(limit);
+        DBObject last = null;
+        boolean more = false;
+        try {
+            while (cursor.hasNext()) {
+                DBObject dbobj = cursor.next();
+                if (list.size() == limit) {
+                    more = true;
+                    break;
+                }
+                last = dbobj;
+                list.add(isDoc ? (T) ZMoDoc.WRAP(dbobj) : ZMo.me().fromDocToObj(dbobj, classOfT));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        String next = null;
+        if (more) {
+            List<Object> vs = new ArrayList<Object>(keys.length);
+            for (String key : keys)
+                vs.add(ZMoDocComparator.valueOf(last, key));
+            next = ZMoPage.encodeToken(sortKeys, vs);
+        }
+        return new ZMoPage<T>(list, next);
+    }
+
     public DBCursor find() {
         if (log.isDebugEnabled())
             log.debug(log_format("find"));
@@ -286,6 +636,8 @@ public class ZMoCo {
         if (log.isDebugEnabled())
             log.debug(log_format("drop"));
         dbc.drop();
+        if (null != owner)
+            owner.uncache(getName());
     }
 
     public long count() {
@@ -355,13 +707,22 @@ public class ZMoCo {
     public DBCollection rename(String newName) {
         if (log.isDebugEnabled())
             log.debug(log_format("rename", newName));
-        return dbc.rename(newName);
+        DBCollection re = dbc.rename(newName);
+        // 改名成功以后再去掉缓存，否则期间别的线程又会把旧名字缓存进去
+        if (null != owner)
+            owner.uncache(getName());
+        return re;
     }
 
     public DBCollection rename(String newName, boolean dropTarget) {
         if (log.isDebugEnabled())
             log.debug(log_format("rename", newName, dropTarget));
-        return dbc.rename(newName, dropTarget);
+        DBCollection re = dbc.rename(newName, dropTarget);
+        if (null != owner) {
+            owner.uncache(getName());
+            owner.uncache(newName);
+        }
+        return re;
     }
 
     public ZMoDoc group(ZMoDoc key, ZMoDoc cond, ZMoDoc initial, String reduce) {
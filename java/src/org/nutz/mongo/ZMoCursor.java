@@ -0,0 +1,101 @@
+package org.nutz.mongo;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+import org.nutz.lang.Lang;
+import org.nutz.mongo.entity.ZMoEntity;
+import org.nutz.mongo.entity.ZMoField;
+
+import com.mongodb.DBCursor;
+
+/**
+ * 对于游标的薄封装，每次迭代时才将当前文档转换成 Java 对象
+ * <p>
+ * 游标按照 batchSize 一批一批的从服务器读取，所以任何时候内存里最多只有一批文档。
+ * 本对象只能迭代一次，用完需要 close，或者迭代到最后会自动关闭
+ */
+public class ZMoCursor<T> implements Iterator<T>, Iterable<T>, Closeable {
+
+    private DBCursor cursor;
+
+    private ZMoEntity en;
+
+    /**
+     * 只设置这些字段，null 表示全部
+     */
+    private ZMoField[] only;
+
+    private boolean closed;
+
+    public ZMoCursor(DBCursor cursor, ZMoEntity en) {
+        this(cursor, en, null);
+    }
+
+    /**
+     * @param only
+     *            转换时只设置这些字段，一般与只查询这些字段的投影一起使用，null 表示全部
+     */
+    public ZMoCursor(DBCursor cursor, ZMoEntity en, ZMoField[] only) {
+        this.cursor = cursor;
+        this.en = en;
+        this.only = only;
+    }
+
+    public ZMoCursor<T> sort(ZMoDoc orderBy) {
+        cursor.sort(orderBy);
+        return this;
+    }
+
+    public ZMoCursor<T> skip(int n) {
+        cursor.skip(n);
+        return this;
+    }
+
+    public ZMoCursor<T> limit(int n) {
+        cursor.limit(n);
+        return this;
+    }
+
+    public ZMoCursor<T> batchSize(int n) {
+        cursor.batchSize(n);
+        return this;
+    }
+
+    public boolean hasNext() {
+        if (closed)
+            return false;
+        if (cursor.hasNext())
+            return true;
+        close();
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T next() {
+        return (T) ZMo.me().fromDoc(cursor.next(), en, only);
+    }
+
+    public void remove() {
+        throw Lang.noImplement();
+    }
+
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    public void close() {
+        if (!closed) {
+            closed = true;
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return 被包裹的游标
+     */
+    public DBCursor getCursor() {
+        return cursor;
+    }
+
+}
@@ -1,10 +1,15 @@
 package org.nutz.mongo;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.nutz.lang.Lang;
 
 import com.mongodb.DB;
+import com.mongodb.DBCursor;
 
 /**
  * 对于 DB 对象的薄封装
@@ -13,23 +18,100 @@ import com.mongodb.DB;
  */
 public class ZMoDB {
 
+    /**
+     * 默认集合句柄缓存的有效期（毫秒）
+     */
+    public static final long DFT_CACHE_TTL = 60 * 1000L;
+
+    private static class CoEntry {
+        ZMoCo co;
+        long expireAt;
+    }
+
     private DB db;
 
+    /**
+     * 已经确认存在的集合句柄
+     */
+    private ConcurrentHashMap<String, CoEntry> cos;
+
+    private long cacheTTL;
+
+    /**
+     * 由 ZMongo.db 创建时设置，用来获取异步集合
+     */
+    ZMongo mongo;
+
     public ZMoDB(DB db) {
         this.db = db;
+        this.cos = new ConcurrentHashMap<String, CoEntry>();
+        this.cacheTTL = DFT_CACHE_TTL;
+    }
+
+    /**
+     * 设置集合句柄缓存的有效期，过期后 c() 会再向服务器确认一次集合是否存在
+     * 
+     * @param ms
+     *            有效期（毫秒），小于等于 0 表示不缓存
+     * @return 自身
+     */
+    public ZMoDB setCacheTTL(long ms) {
+        this.cacheTTL = ms;
+        if (ms <= 0)
+            cos.clear();
+        return this;
+    }
+
+    public long getCacheTTL() {
+        return cacheTTL;
+    }
+
+    /**
+     * 让某个集合的句柄缓存失效
+     * 
+     * @param name
+     *            集合名称
+     */
+    public void uncache(String name) {
+        cos.remove(name);
+    }
+
+    /**
+     * 清除全部集合句柄缓存
+     */
+    public void clearCache() {
+        cos.clear();
     }
 
     /**
      * 获取集合，如果集合不存在，则抛错
+     * <p>
+     * 确认存在过的集合句柄会被缓存，在有效期内再次获取不需要访问服务器
      * 
      * @param name
      *            集合名称
      * @return 集合薄封装
      */
     public ZMoCo c(String name) {
-        if (!db.collectionExists(name))
+        CoEntry ce = cos.get(name);
+        if (null != ce && ce.expireAt > System.currentTimeMillis())
+            return ce.co;
+        if (!db.collectionExists(name)) {
+            cos.remove(name);
             throw Lang.makeThrow("Colection noexitst: %s.%s", db.getName(), name);
-        return new ZMoCo(db.getCollection(name));
+        }
+        return cache(new ZMoCo(db.getCollection(name)));
+    }
+
+    private ZMoCo cache(ZMoCo co) {
+        co.owner = this;
+        if (cacheTTL > 0) {
+            CoEntry ce = new CoEntry();
+            ce.co = co;
+            ce.expireAt = System.currentTimeMillis() + cacheTTL;
+            cos.put(co.getName(), ce);
+        }
+        return co;
     }
 
     /**
@@ -48,11 +130,12 @@ public class ZMoDB {
         }
         // 固定清除
         else if (dropIfExists) {
+            uncache(name);
             db.getCollection(name).drop();
             return createCollection(name, null);
         }
         // 已经存在
-        return new ZMoCo(db.getCollection(name));
+        return cache(new ZMoCo(db.getCollection(name)));
     }
 
     /**
@@ -76,6 +159,7 @@ public class ZMoDB {
      * @return 集合薄封装
      */
     public ZMoCo createCollection(String name, ZMoDoc options) {
+        uncache(name);
         if (db.collectionExists(name)) {
             throw Lang.makeThrow("Colection exitst: %s.%s", db.getName(), name);
         }
@@ -85,7 +169,7 @@ public class ZMoDB {
             options = ZMoDoc.NEW("capped:false");
         }
 
-        return new ZMoCo(db.createCollection(name, options));
+        return cache(new ZMoCo(db.createCollection(name, options)));
     }
 
     /**
@@ -106,6 +190,78 @@ public class ZMoDB {
         return db.getCollectionNames();
     }
 
+    /**
+     * 同时查询多个结构相同的集合（比如按月分表），并按排序归并成一个结果
+     * <p>
+     * 如果本对象由 ZMongo.db 创建，查询在 ZMongo 的线程池中并发发出，最多同时 8 个；否则依次发出
+     * 
+     * @see #findAcross(List, ZMoDoc, ZMoDoc, ZMoDoc, int, ExecutorService, int)
+     */
+    public ZMoMergeCursor findAcross(List<String> names,
+                                     ZMoDoc q,
+                                     ZMoDoc keys,
+                                     ZMoDoc sort,
+                                     int limit) {
+        return findAcross(names, q, keys, sort, limit, null == mongo ? null : mongo.getExecutor(), 8);
+    }
+
+    /**
+     * 同时查询多个结构相同的集合，并按排序归并成一个结果
+     * <p>
+     * 每个集合最多取 limit 条，归并时取满 limit 条就关闭全部游标。不存在的集合当作空集合
+     * 
+     * @param names
+     *            集合名称列表
+     * @param q
+     *            查询条件，null 表示全部
+     * @param keys
+     *            要返回的字段，null 表示全部。注意要包含排序的字段
+     * @param sort
+     *            排序，null 表示不关心顺序
+     * @param limit
+     *            最多返回的条数，0 表示不限
+     * @param es
+     *            发出查询的线程池，null 表示依次发出
+     * @param maxParallel
+     *            最多同时发出的查询数
+     * @return 归并后的游标，用完需要关闭
+     */
+    public ZMoMergeCursor findAcross(List<String> names,
+                                     ZMoDoc q,
+                                     ZMoDoc keys,
+                                     ZMoDoc sort,
+                                     int limit,
+                                     ExecutorService es,
+                                     int maxParallel) {
+        List<DBCursor> cursors = new ArrayList<DBCursor>(names.size());
+        for (String name : names) {
+            DBCursor cur = db.getCollection(name).find(q, keys);
+            if (null != sort)
+                cur.sort(sort);
+            if (limit > 0) {
+                cur.limit(limit);
+                // 尽量一批就取完
+                cur.batchSize(Math.min(limit, 1000));
+            }
+            cursors.add(cur);
+        }
+        return new ZMoMergeCursor(cursors, sort, limit, es, maxParallel);
+    }
+
+    /**
+     * 获取基于异步驱动的集合，不检查集合是否存在
+     * 
+     * @param name
+     *            集合名称
+     * @return 异步集合封装
+     * @see ZMongo#ac(String, String)
+     */
+    public ZMoAsyncCo ac(String name) {
+        if (null == mongo)
+            throw Lang.makeThrow("ZMoDB '%s' not created by ZMongo, no async client", db.getName());
+        return mongo.ac(db.getName(), name);
+    }
+
     public DB getNativeDB() {
         return this.db;
     }
@@ -8,6 +8,11 @@ import java.util.Map;
 import java.util.Set;
 
 import org.bson.BSONObject;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWrapper;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.nutz.castor.Castors;
 import org.nutz.lang.Each;
@@ -17,6 +22,7 @@ import org.nutz.lang.util.NutMap;
 import org.nutz.mongo.adaptor.ZMoAs;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 
 /**
@@ -24,7 +30,7 @@ import com.mongodb.DBObject;
  * 
  * @author zozoh(zozohtnt@gmail.com)
  */
-public class ZMoDoc implements DBObject {
+public class ZMoDoc implements DBObject, Bson {
 
     private DBObject DBobj;
 
@@ -94,6 +100,54 @@ public class ZMoDoc implements DBObject {
         return new ZMoDoc().setDBobj(obj);
     }
 
+    /**
+     * 用原始的 BSON 字节生成一个懒加载的文档
+     * <p>
+     * 字段在读取时才解码，并且会缓存解码结果。第一次修改时才会完整解码。
+     * 未修改过的文档，通过 ZMoLazyEncoder 写回数据库时会直接写出原始字节，不再重新编码
+     * 
+     * @param bytes
+     *            一个完整的 BSON 文档
+     * @return 懒加载的文档
+     * @see ZMoLazyDecoder
+     * @see ZMoLazyEncoder
+     */
+    public static ZMoDoc LAZY(byte[] bytes) {
+        return LAZY(bytes, null);
+    }
+
+    public static ZMoDoc LAZY(byte[] bytes, DBCollection collection) {
+        return new ZMoDoc().setDBobj(new ZMoLazyDBObject(bytes, collection));
+    }
+
+    /**
+     * @return 如果是未修改过的懒加载文档，返回原始的 BSON 字节，否则返回 null
+     */
+    static byte[] rawBytesOf(BSONObject o) {
+        if (o instanceof ZMoDoc)
+            o = ((ZMoDoc) o).DBobj;
+        if (o instanceof ZMoLazyDBObject) {
+            ZMoLazyDBObject lazy = (ZMoLazyDBObject) o;
+            if (!lazy.isModified())
+                return lazy.getBytes();
+        }
+        return null;
+    }
+
+    /**
+     * @return 是否是懒加载的文档
+     */
+    public boolean isLazy() {
+        return DBobj instanceof ZMoLazyDBObject;
+    }
+
+    /**
+     * @return 未修改过的懒加载文档的原始 BSON 字节，调用者不要修改它。其他情况返回 null
+     */
+    public byte[] getRawBytes() {
+        return rawBytesOf(DBobj);
+    }
+
     /**
      * 重新生成 _id
      * 
@@ -537,6 +591,14 @@ public class ZMoDoc implements DBObject {
         return o;
     }
 
+    public <TDocument> BsonDocument toBsonDocument(Class<TDocument> documentClass,
+                                                   CodecRegistry codecRegistry) {
+        byte[] bytes = getRawBytes();
+        if (null != bytes)
+            return new RawBsonDocument(bytes);
+        return new BsonDocumentWrapper<DBObject>(this, codecRegistry.get(DBObject.class));
+    }
+
     public void markAsPartialObject() {
         DBobj.markAsPartialObject();
     }
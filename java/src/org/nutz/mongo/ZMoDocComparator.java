@@ -0,0 +1,309 @@
+package org.nutz.mongo;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+
+import com.mongodb.DBObject;
+
+/**
+ * 按照 MongoDB 的排序规则在客户端比较两个文档
+ * <p>
+ * 不同类型的值按 MinKey &lt; null &lt; 数字 &lt; 字符串 &lt; 对象 &lt; 数组 &lt; 二进制 &lt; ObjectId &lt; 布尔 &lt; 日期 &lt;
+ * 时间戳 &lt; 正则 &lt; MaxKey 排列；同类型的值与服务器一样比较：
+ * <ul>
+ * <li>整数和浮点数按数值比较，NaN 比所有数字都小，-0.0 等于 0.0
+ * <li>字符串按 UTF-8 字节（即 Unicode 码点）比较，而不是 Java 的 UTF-16 顺序
+ * <li>对象逐个字段比较，先比值的类型，再比字段名，最后比值
+ * <li>数组逐个元素比较；但作为排序键时，升序取最小的元素，降序取最大的元素，空数组比 null 还小
+ * <li>二进制先比长度，再比子类型，最后按无符号字节比较
+ * </ul>
+ * 字段名可以是 "a.b.c" 形式，但路径中间不能穿过数组（会当作 null），也不支持 collation
+ */
+public class ZMoDocComparator implements Comparator<DBObject> {
+
+    /**
+     * 作为排序键的空数组，比 null 还小
+     */
+    private static final Object EMPTY_ARRAY = new Object();
+
+    private String[] keys;
+
+    private int[] dirs;
+
+    /**
+     * @param sort
+     *            排序，如 {ct:-1, _id:1}
+     */
+    public ZMoDocComparator(DBObject sort) {
+        List<String> ks = new ArrayList<String>();
+        List<Integer> ds = new ArrayList<Integer>();
+        if (null != sort) {
+            for (String key : sort.keySet()) {
+                Object v = sort.get(key);
+                ks.add(key);
+                ds.add(v instanceof Number && ((Number) v).intValue() < 0 ? -1 : 1);
+            }
+        }
+        keys = ks.toArray(new String[ks.size()]);
+        dirs = new int[ds.size()];
+        for (int i = 0; i < dirs.length; i++)
+            dirs[i] = ds.get(i);
+    }
+
+    public int compare(DBObject a, DBObject b) {
+        for (int i = 0; i < keys.length; i++) {
+            Object va = sortValue(valueOf(a, keys[i]), dirs[i]);
+            Object vb = sortValue(valueOf(b, keys[i]), dirs[i]);
+            int c = compareValue(va, vb);
+            if (c != 0)
+                return c * dirs[i];
+        }
+        return 0;
+    }
+
+    static Object valueOf(DBObject doc, String key) {
+        if (key.indexOf('.') < 0)
+            return doc.get(key);
+        Object v = doc;
+        for (String k : key.split("\\.")) {
+            if (v instanceof DBObject)
+                v = ((DBObject) v).get(k);
+            else if (v instanceof Map<?, ?>)
+                v = ((Map<?, ?>) v).get(k);
+            else
+                return null;
+        }
+        return v;
+    }
+
+    /**
+     * 数组作为排序键时，升序取最小的元素，降序取最大的元素
+     */
+    static Object sortValue(Object v, int dir) {
+        List<?> list = asList(v);
+        if (null == list)
+            return v;
+        if (list.isEmpty())
+            return EMPTY_ARRAY;
+        Object re = list.get(0);
+        for (int i = 1; i < list.size(); i++) {
+            Object e = list.get(i);
+            if (compareValue(e, re) * dir < 0)
+                re = e;
+        }
+        return re;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compareValue(Object a, Object b) {
+        int ra = rank(a);
+        int rb = rank(b);
+        if (ra != rb)
+            return ra < rb ? -1 : 1;
+        switch (ra) {
+        case 1:
+            return compareNumber((Number) a, (Number) b);
+        case 2:
+            return compareString(stringOf(a), stringOf(b));
+        case 3:
+            return compareMap(asMap(a), asMap(b));
+        case 4:
+            return compareList(asList(a), asList(b));
+        case 5:
+            return compareBinary(a, b);
+        }
+        // null、MinKey、MaxKey 各自只有一个值
+        if (null == a || a == b || ra < 0 || ra == 12)
+            return 0;
+        if (a instanceof Comparable && a.getClass() == b.getClass())
+            return ((Comparable) a).compareTo(b);
+        if (a instanceof Pattern && b instanceof Pattern) {
+            Pattern pa = (Pattern) a;
+            Pattern pb = (Pattern) b;
+            int c = compareString(pa.pattern(), pb.pattern());
+            return c != 0 ? c : compareLong(pa.flags(), pb.flags());
+        }
+        return compareString(a.toString(), b.toString());
+    }
+
+    static int compareNumber(Number a, Number b) {
+        boolean ia = isIntegral(a);
+        boolean ib = isIntegral(b);
+        if (ia && ib)
+            return compareLong(a.longValue(), b.longValue());
+        if (ia)
+            return compareLongDouble(a.longValue(), b.doubleValue());
+        if (ib)
+            return -compareLongDouble(b.longValue(), a.doubleValue());
+        double x = a.doubleValue();
+        double y = b.doubleValue();
+        // NaN 最小，且 NaN 之间相等
+        if (Double.isNaN(x) || Double.isNaN(y))
+            return Double.isNaN(x) ? (Double.isNaN(y) ? 0 : -1) : 1;
+        // 用 == 比较，这样 -0.0 等于 0.0
+        return x < y ? -1 : (x == y ? 0 : 1);
+    }
+
+    /**
+     * 长整数与浮点数比较，不经过 double 转换，避免大于 2^53 的整数丢精度
+     */
+    private static int compareLongDouble(long x, double y) {
+        if (Double.isNaN(y))
+            return 1;
+        // 2^63 及以上，或 -2^63 以下
+        if (y >= 9.223372036854775807E18)
+            return -1;
+        if (y < -9.223372036854775808E18)
+            return 1;
+        long ly = (long) y;
+        if (x != ly)
+            return compareLong(x, ly);
+        // 整数部分相等，看 y 的小数部分
+        double frac = y - ly;
+        return frac > 0 ? -1 : (frac < 0 ? 1 : 0);
+    }
+
+    private static int compareLong(long x, long y) {
+        return x < y ? -1 : (x == y ? 0 : 1);
+    }
+
+    private static boolean isIntegral(Number n) {
+        return n instanceof Integer
+               || n instanceof Long
+               || n instanceof Short
+               || n instanceof Byte
+               || n instanceof AtomicInteger
+               || n instanceof AtomicLong;
+    }
+
+    /**
+     * 按 Unicode 码点比较，这与 UTF-8 的字节顺序一致
+     */
+    static int compareString(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb)
+                return ca < cb ? -1 : 1;
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return compareLong(a.length() - i, b.length() - j);
+    }
+
+    private static String stringOf(Object v) {
+        return v instanceof Symbol ? ((Symbol) v).getSymbol() : (String) v;
+    }
+
+    private static int compareMap(Map<?, ?> a, Map<?, ?> b) {
+        Iterator<? extends Map.Entry<?, ?>> ia = a.entrySet().iterator();
+        Iterator<? extends Map.Entry<?, ?>> ib = b.entrySet().iterator();
+        while (ia.hasNext() && ib.hasNext()) {
+            Map.Entry<?, ?> ea = ia.next();
+            Map.Entry<?, ?> eb = ib.next();
+            int c = compareLong(rank(ea.getValue()), rank(eb.getValue()));
+            if (c == 0)
+                c = compareString(String.valueOf(ea.getKey()), String.valueOf(eb.getKey()));
+            if (c == 0)
+                c = compareValue(ea.getValue(), eb.getValue());
+            if (c != 0)
+                return c;
+        }
+        return ia.hasNext() ? 1 : (ib.hasNext() ? -1 : 0);
+    }
+
+    private static int compareList(List<?> a, List<?> b) {
+        int n = Math.min(a.size(), b.size());
+        for (int i = 0; i < n; i++) {
+            int c = compareValue(a.get(i), b.get(i));
+            if (c != 0)
+                return c;
+        }
+        return compareLong(a.size(), b.size());
+    }
+
+    private static int compareBinary(Object a, Object b) {
+        byte[] da = a instanceof Binary ? ((Binary) a).getData() : (byte[]) a;
+        byte[] db = b instanceof Binary ? ((Binary) b).getData() : (byte[]) b;
+        if (da.length != db.length)
+            return da.length < db.length ? -1 : 1;
+        int ta = a instanceof Binary ? ((Binary) a).getType() & 0xff : 0;
+        int tb = b instanceof Binary ? ((Binary) b).getType() & 0xff : 0;
+        if (ta != tb)
+            return ta < tb ? -1 : 1;
+        for (int i = 0; i < da.length; i++) {
+            int x = da[i] & 0xff;
+            int y = db[i] & 0xff;
+            if (x != y)
+                return x < y ? -1 : 1;
+        }
+        return 0;
+    }
+
+    private static Map<?, ?> asMap(Object v) {
+        return v instanceof DBObject && !(v instanceof Map<?, ?>) ? ((DBObject) v).toMap()
+                                                                  : (Map<?, ?>) v;
+    }
+
+    private static List<?> asList(Object v) {
+        if (v instanceof List<?>)
+            return (List<?>) v;
+        if (null != v && v.getClass().isArray() && !(v instanceof byte[])) {
+            int len = Array.getLength(v);
+            List<Object> list = new ArrayList<Object>(len);
+            for (int i = 0; i < len; i++)
+                list.add(Array.get(v, i));
+            return list;
+        }
+        return null;
+    }
+
+    private static int rank(Object v) {
+        if (EMPTY_ARRAY == v)
+            return -2;
+        if (v instanceof MinKey)
+            return -1;
+        if (null == v)
+            return 0;
+        if (v instanceof Number)
+            return 1;
+        if (v instanceof String || v instanceof Symbol)
+            return 2;
+        if (v instanceof List<?> || v.getClass().isArray() && !(v instanceof byte[]))
+            return 4;
+        if (v instanceof DBObject || v instanceof Map<?, ?>)
+            return 3;
+        if (v instanceof byte[] || v instanceof Binary)
+            return 5;
+        if (v instanceof ObjectId)
+            return 6;
+        if (v instanceof Boolean)
+            return 7;
+        if (v instanceof Date)
+            return 8;
+        if (v instanceof BSONTimestamp)
+            return 9;
+        if (v instanceof Pattern)
+            return 10;
+        if (v instanceof MaxKey)
+            return 12;
+        return 11;
+    }
+}
@@ -0,0 +1,54 @@
+package org.nutz.mongo;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nutz.log.Log;
+import org.nutz.log.Logs;
+
+/**
+ * 执行阻塞的 MongoDB 调用的线程池
+ */
+public abstract class ZMoExecutors {
+
+    private static final Log log = Logs.get();
+
+    /**
+     * 如果运行的 JVM 支持虚拟线程（Java 21+），返回每个任务一个虚拟线程的执行器， 否则返回一个守护线程组成的可伸缩线程池
+     */
+    public static ExecutorService newDefault() {
+        ExecutorService es = newVirtualThreadPerTask();
+        if (null != es)
+            return es;
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private AtomicInteger n = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "zmo-exec-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * @return 每个任务一个虚拟线程的执行器，JVM 不支持则返回 null
+     */
+    public static ExecutorService newVirtualThreadPerTask() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+        catch (Exception e) {
+            if (log.isDebugEnabled())
+                log.debug("virtual thread executor unavailable", e);
+            return null;
+        }
+    }
+}
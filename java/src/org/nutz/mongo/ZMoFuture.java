@@ -0,0 +1,174 @@
+package org.nutz.mongo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.nutz.log.Log;
+import org.nutz.log.Logs;
+
+import com.mongodb.async.SingleResultCallback;
+
+/**
+ * 异步操作的结果
+ * <p>
+ * 既可以像 Future 一样阻塞等待，也可以通过 onDone 注册回调，回调在驱动的 IO 线程中执行，不要在回调里做阻塞的事情
+ *
+ * <pre>
+ * co.findOne(ZMoDoc.ID(id)).onDone(new ZMoFuture.Listener&lt;ZMoDoc&gt;() {
+ *     public void done(ZMoDoc doc, Throwable err) {
+ *         ...
+ *     }
+ * });
+ * </pre>
+ */
+public class ZMoFuture<T> implements Future<T>, SingleResultCallback<T> {
+
+    private static final Log log = Logs.get();
+
+    /**
+     * 结果回调
+     */
+    public static interface Listener<T> {
+
+        /**
+         * @param re
+         *            结果，出错时为 null
+         * @param err
+         *            错误，成功时为 null
+         */
+        void done(T re, Throwable err);
+    }
+
+    /**
+     * 结果转换
+     */
+    public static interface Mapper<T, R> {
+        R map(T o);
+    }
+
+    private CountDownLatch latch;
+
+    private boolean done;
+
+    private T result;
+
+    private Throwable error;
+
+    private List<Listener<T>> listeners;
+
+    public ZMoFuture() {
+        latch = new CountDownLatch(1);
+    }
+
+    /**
+     * 驱动回调，只有第一次调用生效
+     */
+    public void onResult(T re, Throwable err) {
+        List<Listener<T>> ls;
+        synchronized (this) {
+            if (done)
+                return;
+            done = true;
+            result = re;
+            error = err;
+            ls = listeners;
+            listeners = null;
+        }
+        latch.countDown();
+        if (null != ls)
+            for (Listener<T> l : ls)
+                notify(l, re, err);
+    }
+
+    /**
+     * 注册回调，如果已经完成了则立即在当前线程调用
+     *
+     * @return 自身
+     */
+    public ZMoFuture<T> onDone(Listener<T> l) {
+        synchronized (this) {
+            if (!done) {
+                if (null == listeners)
+                    listeners = new ArrayList<Listener<T>>(2);
+                listeners.add(l);
+                return this;
+            }
+        }
+        notify(l, result, error);
+        return this;
+    }
+
+    /**
+     * 转换结果，转换在完成的线程里进行，转换抛出的异常会成为新结果的错误
+     *
+     * @return 新的结果
+     */
+    public <R> ZMoFuture<R> map(final Mapper<T, R> mapper) {
+        final ZMoFuture<R> f = new ZMoFuture<R>();
+        onDone(new Listener<T>() {
+            public void done(T re, Throwable err) {
+                if (null != err) {
+                    f.onResult(null, err);
+                    return;
+                }
+                R r;
+                try {
+                    r = mapper.map(re);
+                }
+                catch (Throwable e) {
+                    f.onResult(null, e);
+                    return;
+                }
+                f.onResult(r, null);
+            }
+        });
+        return f;
+    }
+
+    /**
+     * 驱动的操作没法撤回，总是返回 false
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    public boolean isCancelled() {
+        return false;
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public T get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return unwrap();
+    }
+
+    public T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit))
+            throw new TimeoutException();
+        return unwrap();
+    }
+
+    private synchronized T unwrap() throws ExecutionException {
+        if (null != error)
+            throw new ExecutionException(error);
+        return result;
+    }
+
+    private static <T> void notify(Listener<T> l, T re, Throwable err) {
+        try {
+            l.done(re, err);
+        }
+        catch (Throwable e) {
+            log.warn("ZMoFuture listener fail", e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.nutz.mongo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.BSONObject;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+import com.mongodb.LazyDBCallback;
+import com.mongodb.LazyDBObject;
+
+/**
+ * 以原始 BSON 字节为底的文档，读取字段时才解码
+ * <p>
+ * 解码过的字段值会被缓存，再次读取不必重新扫描字节。子文档和数组仍然是懒加载的只读对象，要修改它们请整体替换。
+ * <p>
+ * 第一次修改时，会把全部字节解码成一个普通的 BasicDBObject，之后的读写都针对它。 未修改过的文档可以直接把原始字节写回服务器
+ */
+class ZMoLazyDBObject implements DBObject {
+
+    /**
+     * 缓存中表示 "没有这个字段" 的值
+     */
+    private static final Object NONE = new Object();
+
+    private byte[] bytes;
+
+    private DBCollection collection;
+
+    private LazyDBObject raw;
+
+    private Map<String, Object> cache;
+
+    private Set<String> keys;
+
+    /**
+     * 修改后的文档，null 表示还没有被修改过
+     */
+    private DBObject obj;
+
+    private boolean partial;
+
+    ZMoLazyDBObject(byte[] bytes, DBCollection collection) {
+        this.bytes = bytes;
+        this.collection = collection;
+        this.raw = new LazyDBObject(bytes, new LazyDBCallback(collection));
+        this.cache = new HashMap<String, Object>();
+    }
+
+    /**
+     * @return 是否被修改过
+     */
+    boolean isModified() {
+        return null != obj;
+    }
+
+    /**
+     * @return 原始的 BSON 字节，调用者不要修改它
+     */
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    private DBObject materialize() {
+        if (null == obj) {
+            obj = new DefaultDBDecoder().decode(bytes, collection);
+            if (partial)
+                obj.markAsPartialObject();
+            raw = null;
+            cache = null;
+            keys = null;
+        }
+        return obj;
+    }
+
+    public Object get(String key) {
+        if (null != obj)
+            return obj.get(key);
+        Object v = cache.get(key);
+        if (null == v) {
+            v = raw.get(key);
+            cache.put(key, null == v ? NONE : v);
+            return v;
+        }
+        return v == NONE ? null : v;
+    }
+
+    public boolean containsField(String s) {
+        if (null != obj)
+            return obj.containsField(s);
+        return keySet().contains(s);
+    }
+
+    @Deprecated
+    public boolean containsKey(String s) {
+        return containsField(s);
+    }
+
+    public Set<String> keySet() {
+        if (null != obj)
+            return obj.keySet();
+        if (null == keys)
+            keys = raw.keySet();
+        return keys;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public Map toMap() {
+        if (null != obj)
+            return obj.toMap();
+        return raw.toMap();
+    }
+
+    public Object put(String key, Object v) {
+        return materialize().put(key, v);
+    }
+
+    public void putAll(BSONObject o) {
+        materialize().putAll(o);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void putAll(Map m) {
+        materialize().putAll(m);
+    }
+
+    public Object removeField(String key) {
+        return materialize().removeField(key);
+    }
+
+    public void markAsPartialObject() {
+        partial = true;
+        if (null != obj)
+            obj.markAsPartialObject();
+    }
+
+    public boolean isPartialObject() {
+        return partial;
+    }
+
+    public String toString() {
+        if (null != obj)
+            return obj.toString();
+        return raw.toString();
+    }
+
+}
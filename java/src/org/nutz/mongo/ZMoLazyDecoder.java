@@ -0,0 +1,49 @@
+package org.nutz.mongo;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBDecoder;
+import com.mongodb.DBDecoderFactory;
+import com.mongodb.DBObject;
+import com.mongodb.LazyDBDecoder;
+
+/**
+ * 把服务器返回的文档解码成懒加载的 ZMoDoc
+ * <p>
+ * 不解析字段，只保留原始的 BSON 字节，字段在读取时才解码，请参看 ZMoDoc.LAZY
+ *
+ * <pre>
+ * DBCursor cu = co.find(q).setDecoderFactory(ZMoLazyDecoder.FACTORY);
+ * </pre>
+ */
+public class ZMoLazyDecoder extends LazyDBDecoder {
+
+    public static final DBDecoderFactory FACTORY = new DBDecoderFactory() {
+        public DBDecoder create() {
+            return new ZMoLazyDecoder();
+        }
+    };
+
+    public DBObject decode(byte[] bytes, DBCollection collection) {
+        return ZMoDoc.LAZY(bytes, collection);
+    }
+
+    public DBObject decode(InputStream in, DBCollection collection) throws IOException {
+        // 文档的前 4 个字节是小端序的文档总长度，长度包括这 4 个字节自己
+        byte[] head = new byte[4];
+        DataInputStream ins = new DataInputStream(in);
+        ins.readFully(head);
+        int len = (head[0] & 0xFF)
+                  | ((head[1] & 0xFF) << 8)
+                  | ((head[2] & 0xFF) << 16)
+                  | ((head[3] & 0xFF) << 24);
+        byte[] bytes = new byte[len];
+        System.arraycopy(head, 0, bytes, 0, 4);
+        ins.readFully(bytes, 4, len - 4);
+        return decode(bytes, collection);
+    }
+
+}
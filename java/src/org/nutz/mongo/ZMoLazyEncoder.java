@@ -0,0 +1,41 @@
+package org.nutz.mongo;
+
+import org.bson.BSONObject;
+import org.bson.io.OutputBuffer;
+
+import com.mongodb.DBEncoder;
+import com.mongodb.DBEncoderFactory;
+import com.mongodb.DefaultDBEncoder;
+
+/**
+ * 写文档时，未修改过的懒加载 ZMoDoc 直接写出原始的 BSON 字节，不再重新编码
+ * <p>
+ * 其他文档（包括修改过的懒加载文档）交给默认的编码器
+ *
+ * <pre>
+ * co.insert(list, WriteConcern.ACKNOWLEDGED, ZMoLazyEncoder.FACTORY.create());
+ * </pre>
+ */
+public class ZMoLazyEncoder implements DBEncoder {
+
+    public static final DBEncoderFactory FACTORY = new DBEncoderFactory() {
+        public DBEncoder create() {
+            return new ZMoLazyEncoder();
+        }
+    };
+
+    private DBEncoder dft;
+
+    public ZMoLazyEncoder() {
+        dft = DefaultDBEncoder.FACTORY.create();
+    }
+
+    public int writeObject(OutputBuffer buf, BSONObject o) {
+        byte[] bytes = ZMoDoc.rawBytesOf(o);
+        if (null == bytes)
+            return dft.writeObject(buf, o);
+        buf.writeBytes(bytes);
+        return bytes.length;
+    }
+
+}
@@ -0,0 +1,173 @@
+package org.nutz.mongo;
+
+import java.io.Closeable;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+import org.nutz.lang.Lang;
+import org.nutz.lang.Streams;
+
+import com.mongodb.DBObject;
+
+/**
+ * 把多个已经按同一规则排好序的游标，归并成一个有序的迭代器
+ * <p>
+ * 构建时并发地向各个集合发出查询（取回第一批），之后每次 next 只从当前最小的那个游标取下一条，
+ * 取满 limit 条就关闭全部游标
+ * <p>
+ * 本对象只能迭代一次，用完需要 close，或者迭代到最后会自动关闭
+ */
+public class ZMoMergeCursor implements Iterator<ZMoDoc>, Iterable<ZMoDoc>, Closeable {
+
+    private static class Head {
+        Iterator<DBObject> cursor;
+        DBObject doc;
+    }
+
+    private List<? extends Iterator<DBObject>> cursors;
+
+    private PriorityQueue<Head> heap;
+
+    private int limit;
+
+    private int count;
+
+    private boolean closed;
+
+    /**
+     * @param cursors
+     *            各个集合的游标（通常是 DBCursor），都应该设置好了同样的排序。实现了 Closeable 的会在用完时关闭
+     * @param sort
+     *            排序，null 表示不关心顺序
+     * @param limit
+     *            最多返回的条数，0 表示不限
+     * @param es
+     *            并发发出查询的线程池，null 表示在当前线程依次发出
+     * @param maxParallel
+     *            最多同时发出的查询数
+     */
+    public ZMoMergeCursor(List<? extends Iterator<DBObject>> cursors,
+                          DBObject sort,
+                          int limit,
+                          ExecutorService es,
+                          int maxParallel) {
+        this.cursors = cursors;
+        this.limit = limit;
+        final Comparator<DBObject> cmp = new ZMoDocComparator(sort);
+        this.heap = new PriorityQueue<Head>(Math.max(1, cursors.size()), new Comparator<Head>() {
+            public int compare(Head a, Head b) {
+                return cmp.compare(a.doc, b.doc);
+            }
+        });
+        try {
+            prefetch(es, maxParallel);
+            for (Iterator<DBObject> cur : cursors)
+                advance(cur);
+        }
+        catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public boolean hasNext() {
+        if (closed)
+            return false;
+        if (!heap.isEmpty() && (limit <= 0 || count < limit))
+            return true;
+        close();
+        return false;
+    }
+
+    public ZMoDoc next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        Head h = heap.poll();
+        count++;
+        DBObject doc = h.doc;
+        advance(h.cursor);
+        return ZMoDoc.WRAP(doc);
+    }
+
+    public void remove() {
+        throw Lang.noImplement();
+    }
+
+    public Iterator<ZMoDoc> iterator() {
+        return this;
+    }
+
+    public void close() {
+        if (!closed) {
+            closed = true;
+            heap.clear();
+            for (Iterator<DBObject> cur : cursors)
+                close(cur);
+        }
+    }
+
+    private void advance(Iterator<DBObject> cur) {
+        if (cur.hasNext()) {
+            Head h = new Head();
+            h.cursor = cur;
+            h.doc = cur.next();
+            heap.add(h);
+        } else {
+            close(cur);
+        }
+    }
+
+    private static void close(Iterator<DBObject> cur) {
+        if (cur instanceof Closeable)
+            Streams.safeClose((Closeable) cur);
+    }
+
+    /**
+     * 并发调用每个游标的 hasNext，让第一批数据同时在路上
+     * <p>
+     * 在当前线程拿到许可才提交任务，线程池里同时最多只有 maxParallel 个任务，不会有任务占着线程干等许可
+     */
+    private void prefetch(ExecutorService es, int maxParallel) {
+        if (null == es || cursors.size() < 2)
+            return;
+        final Semaphore permits = new Semaphore(Math.max(1, maxParallel));
+        ZMoScope scope = new ZMoScope(es);
+        try {
+            for (final Iterator<DBObject> cur : cursors) {
+                permits.acquire();
+                boolean forked = false;
+                try {
+                    scope.fork(new Callable<Boolean>() {
+                        public Boolean call() throws Exception {
+                            try {
+                                return cur.hasNext();
+                            }
+                            finally {
+                                permits.release();
+                            }
+                        }
+                    });
+                    forked = true;
+                }
+                finally {
+                    if (!forked)
+                        permits.release();
+                }
+            }
+            scope.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Lang.wrapThrow(e);
+        }
+        finally {
+            scope.close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.nutz.mongo;
+
+import java.util.List;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
+import org.bson.BasicBSONEncoder;
+import org.nutz.lang.Lang;
+import org.nutz.repo.Base64;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+
+/**
+ * 按键翻页（keyset pagination）的一页结果
+ * <p>
+ * 下一页的令牌记录了本页最后一条记录的排序字段的值，对调用者来说是不透明的字符串
+ *
+ * @see ZMoCo#page(ZMoDoc, ZMoDoc, String, int, Class)
+ */
+public class ZMoPage<T> {
+
+    private List<T> list;
+
+    private String next;
+
+    public ZMoPage(List<T> list, String next) {
+        this.list = list;
+        this.next = next;
+    }
+
+    /**
+     * @return 本页的数据
+     */
+    public List<T> getList() {
+        return list;
+    }
+
+    /**
+     * @return 下一页的令牌，没有下一页则为 null
+     */
+    public String getNext() {
+        return next;
+    }
+
+    public boolean hasNext() {
+        return null != next;
+    }
+
+    /**
+     * 生成令牌
+     *
+     * @param sortKeys
+     *            排序字段，用来校验令牌与排序是否匹配
+     * @param values
+     *            各排序字段的值
+     */
+    static String encodeToken(String sortKeys, List<Object> values) {
+        BasicDBList vs = new BasicDBList();
+        vs.addAll(values);
+        BasicDBObject o = new BasicDBObject("s", sortKeys).append("v", vs);
+        String str = Base64.encodeToString(new BasicBSONEncoder().encode(o), false);
+        // 转成 URL 安全的形式
+        return str.replace('+', '-').replace('/', '_').replace("=", "");
+    }
+
+    /**
+     * 解析令牌
+     *
+     * @return 各排序字段的值
+     */
+    static List<?> decodeToken(String sortKeys, String token) {
+        Object s;
+        List<?> vs;
+        try {
+            String str = token.replace('-', '+').replace('_', '/');
+            while (str.length() % 4 != 0)
+                str += "=";
+            BSONObject o = new BasicBSONDecoder().readObject(Base64.decode(str));
+            s = o.get("s");
+            vs = (List<?>) o.get("v");
+        }
+        catch (Exception e) {
+            throw Lang.makeThrow("invalid page token '%s'", token);
+        }
+        if (null == vs)
+            throw Lang.makeThrow("invalid page token '%s'", token);
+        if (!sortKeys.equals(s))
+            throw Lang.makeThrow("page token is for sort {%s}, not {%s}", s, sortKeys);
+        return vs;
+    }
+
+    /**
+     * 整理排序，方向只能是数字，并确保以 _id 结尾
+     *
+     * @param sort
+     *            排序，null 表示只按 _id
+     * @return 各字段的方向都是 1 或 -1 的排序
+     */
+    static ZMoDoc sortOf(ZMoDoc sort) {
+        ZMoDoc by = ZMoDoc.NEW();
+        int lastDir = 1;
+        if (null != sort) {
+            for (String key : sort.keySet()) {
+                Object v = sort.get(key);
+                // 比如 {$meta:"textScore"}，没法按值定位
+                if (!(v instanceof Number))
+                    throw Lang.makeThrow("page sort must be 1 or -1 : %s=%s", key, v);
+                lastDir = ((Number) v).intValue() < 0 ? -1 : 1;
+                by.put(key, lastDir);
+            }
+        }
+        if (!by.containsField("_id"))
+            by.put("_id", lastDir);
+        return by;
+    }
+
+    /**
+     * 构建定位到上一页末尾之后的条件，比如排序 {a:1,_id:1} 生成
+     *
+     * <pre>
+     * {$or:[{a:{$gt:va}}, {a:{$eq:va}, _id:{$gt:vid}}]}
+     * </pre>
+     *
+     * 相等的值都包在 $eq 里，值本身是带 $ 键的文档时也不会被当成操作符
+     * <p>
+     * 条件直接用 BasicDBObject 构建，因为 ZMoDoc.put 会检查 _id 的类型， 不接受 {$gt:xxx} 这样的值
+     *
+     * @param by
+     *            sortOf 整理过的排序
+     * @param vs
+     *            令牌中的各字段的值
+     */
+    static ZMoDoc seekOf(ZMoDoc by, List<?> vs) {
+        String[] keys = by.keySet().toArray(new String[by.keySet().size()]);
+        BasicDBList ors = new BasicDBList();
+        for (int i = 0; i < keys.length; i++) {
+            BasicDBObject or = new BasicDBObject();
+            for (int j = 0; j < i; j++)
+                or.put(keys[j], new BasicDBObject("$eq", vs.get(j)));
+            or.put(keys[i], new BasicDBObject(by.getInt(keys[i]) < 0 ? "$lt" : "$gt", vs.get(i)));
+            ors.add(or);
+        }
+        return ZMoDoc.WRAP(new BasicDBObject("$or", ors));
+    }
+}
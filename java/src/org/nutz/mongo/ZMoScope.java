@@ -0,0 +1,120 @@
+package org.nutz.mongo;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.nutz.lang.Lang;
+import org.nutz.mongo.interceptor.impl.BulkheadMongoInterceptor;
+
+/**
+ * 一组并发执行的查询，要么全部成功，要么一个失败就取消其余的
+ * <p>
+ * 用法:
+ *
+ * <pre>
+ * ZMoScope scope = mongo.scope();
+ * try {
+ *     Future&lt;List&lt;ZMoDoc&gt;&gt; pets = scope.fork(...);
+ *     Future&lt;Long&gt; n = scope.fork(...);
+ *     scope.join(3000);
+ *     pets.get(); n.get(); // 此时都已经完成了
+ * }
+ * finally {
+ *     scope.close();
+ * }
+ * </pre>
+ *
+ * 本对象只应该在创建它的线程中使用
+ */
+public class ZMoScope implements Closeable {
+
+    private CompletionService<Object> cs;
+
+    private List<Future<?>> futures;
+
+    private int pending;
+
+    ZMoScope(ExecutorService es) {
+        this.cs = new ExecutorCompletionService<Object>(es);
+        this.futures = new ArrayList<Future<?>>();
+    }
+
+    /**
+     * 提交一个任务，当前线程的舱壁标签会带到任务中
+     *
+     * @return 任务的结果，join 成功后可以直接 get
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> fork(Callable<T> task) {
+        Future<T> f = (Future<T>) cs.submit((Callable<Object>) BulkheadMongoInterceptor.wrap(task));
+        futures.add(f);
+        pending++;
+        return f;
+    }
+
+    /**
+     * 等待全部任务完成，一直等
+     */
+    public ZMoScope join() {
+        return join(0);
+    }
+
+    /**
+     * 等待全部任务完成。任何一个任务失败或者超时，都会取消其余的任务并抛出异常
+     *
+     * @param timeout
+     *            最多等待的毫秒数，0 表示一直等
+     * @return 自身
+     */
+    public ZMoScope join(long timeout) {
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+        try {
+            while (pending > 0) {
+                Future<Object> f;
+                if (deadline > 0) {
+                    long wait = deadline - System.currentTimeMillis();
+                    f = wait > 0 ? cs.poll(wait, TimeUnit.MILLISECONDS) : null;
+                    if (null == f)
+                        throw Lang.makeThrow("scope join timeout after %dms, %d pending",
+                                             timeout,
+                                             pending);
+                } else {
+                    f = cs.take();
+                }
+                pending--;
+                f.get();
+            }
+            return this;
+        }
+        catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw Lang.wrapThrow(e);
+        }
+        catch (ExecutionException e) {
+            close();
+            throw Lang.wrapThrow(e.getCause());
+        }
+        catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * 取消全部尚未完成的任务
+     */
+    public void close() {
+        for (Future<?> f : futures)
+            if (!f.isDone())
+                f.cancel(true);
+    }
+}
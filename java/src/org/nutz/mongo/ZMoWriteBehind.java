@@ -0,0 +1,393 @@
+package org.nutz.mongo;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.nutz.lang.Lang;
+import org.nutz.log.Log;
+import org.nutz.log.Logs;
+
+import com.mongodb.WriteConcern;
+
+/**
+ * 异步的后写队列，调用线程只负责把对象转成文档放入队列，由后台的刷写线程合并成批量插入
+ * <p>
+ * 适合那些"发出去就不管了"的集合，比如日志，埋点等。用法:
+ *
+ * <pre>
+ * ZMoWriteBehind wb = co.writeBehind().threads(2).flushInterval(200).start();
+ * wb.insert(obj);
+ * ...
+ * wb.close(); // 会把队列里剩余的文档都写完
+ * </pre>
+ */
+public class ZMoWriteBehind implements Closeable {
+
+    /**
+     * 队列满了以后的处理策略
+     */
+    public static enum Policy {
+        /**
+         * 阻塞调用线程，直到队列有空位
+         */
+        BLOCK,
+        /**
+         * 直接丢弃，并计数
+         */
+        DROP,
+        /**
+         * 由调用线程自己同步写入
+         */
+        CALLER_RUNS
+    }
+
+    private static final Log log = Logs.get();
+
+    private ZMoCo co;
+
+    private int threads;
+
+    private int capacity;
+
+    private long flushInterval;
+
+    private int maxBatchCount;
+
+    private int maxBatchBytes;
+
+    private Policy policy;
+
+    private WriteConcern concern;
+
+    private BlockingQueue<ZMoDoc> queue;
+
+    private Thread[] flushers;
+
+    private volatile boolean closed;
+
+    private AtomicLong written;
+
+    private AtomicLong dropped;
+
+    private AtomicLong failed;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 入队时持有读锁，关闭时持有写锁
+     */
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+
+    ZMoWriteBehind(ZMoCo co) {
+        this.co = co;
+        this.threads = 1;
+        this.capacity = 10000;
+        this.flushInterval = 100;
+        this.maxBatchCount = ZMoBulkWriter.DFT_MAX_COUNT;
+        this.maxBatchBytes = 0;
+        this.policy = Policy.BLOCK;
+        this.written = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.failed = new AtomicLong();
+    }
+
+    /**
+     * @param threads
+     *            刷写线程的数量，默认 1
+     */
+    public ZMoWriteBehind threads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * @param capacity
+     *            队列的容量，默认 10000
+     */
+    public ZMoWriteBehind capacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        return this;
+    }
+
+    /**
+     * @param flushInterval
+     *            收到第一个文档后，最多等待多少毫秒凑够一批，默认 100
+     */
+    public ZMoWriteBehind flushInterval(long flushInterval) {
+        this.flushInterval = Math.max(1, flushInterval);
+        return this;
+    }
+
+    /**
+     * @param maxBatchCount
+     *            一批最多的文档数，默认 1000
+     */
+    public ZMoWriteBehind maxBatchCount(int maxBatchCount) {
+        this.maxBatchCount = Math.max(1, maxBatchCount);
+        return this;
+    }
+
+    /**
+     * @param maxBatchBytes
+     *            一批最大的字节数，按文档内容估算。默认 0 表示不限制，由驱动按服务器的消息上限拆分
+     */
+    public ZMoWriteBehind maxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = Math.max(0, maxBatchBytes);
+        return this;
+    }
+
+    /**
+     * @param policy
+     *            队列满了以后的处理策略，默认 BLOCK
+     */
+    public ZMoWriteBehind policy(Policy policy) {
+        this.policy = policy;
+        return this;
+    }
+
+    /**
+     * @param concern
+     *            写关注，null 表示用集合默认的
+     */
+    public ZMoWriteBehind writeConcern(WriteConcern concern) {
+        this.concern = concern;
+        return this;
+    }
+
+    /**
+     * 启动刷写线程
+     *
+     * @return 自身
+     */
+    public ZMoWriteBehind start() {
+        lock.lock();
+        try {
+            if (null != flushers)
+                throw Lang.makeThrow("write-behind of %s already started", co.getName());
+            queue = new ArrayBlockingQueue<ZMoDoc>(capacity);
+            flushers = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                flushers[i] = new Thread(new Runnable() {
+                    public void run() {
+                        loop();
+                    }
+                }, "zmo-wb-" + co.getName() + "-" + i);
+                flushers[i].setDaemon(true);
+                flushers[i].start();
+            }
+            return this;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 放入一个对象
+     *
+     * @param obj
+     *            可以是 ZMoDoc，Map 或者 POJO，转换在调用线程中进行
+     * @return true 表示已经放入队列或者已经写入，false 表示被丢弃了
+     */
+    public boolean insert(Object obj) {
+        ZMoDoc doc = ZMo.me().toDoc(obj);
+        // 检查关闭和入队必须一起在读锁里完成，否则 close 时可能有文档进了队列却没有线程来写
+        gate.readLock().lock();
+        try {
+            if (closed || null == queue)
+                throw Lang.makeThrow("write-behind of %s not running", co.getName());
+            switch (policy) {
+            case BLOCK:
+                try {
+                    queue.put(doc);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                return true;
+            case DROP:
+                if (queue.offer(doc))
+                    return true;
+                dropped.incrementAndGet();
+                return false;
+            default:
+                if (queue.offer(doc))
+                    return true;
+                List<ZMoDoc> list = new ArrayList<ZMoDoc>(1);
+                list.add(doc);
+                write(list);
+                return true;
+            }
+        }
+        finally {
+            gate.readLock().unlock();
+        }
+    }
+
+    /**
+     * 不再接受新的文档，等待队列里剩余的文档都写完
+     */
+    public void close() {
+        close(0);
+    }
+
+    /**
+     * 不再接受新的文档，等待队列里剩余的文档都写完
+     * <p>
+     * 刷写线程结束后，队列里如果还有剩余，由调用线程写完。超时以后还没写的文档计入丢弃数
+     *
+     * @param timeout
+     *            最多等待的毫秒数，0 表示一直等
+     */
+    public void close(long timeout) {
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        // 等正在入队的调用都结束，之后的调用都会看到 closed
+        // 阻塞在 put 上的调用会被刷写线程腾出空位，所以这里不会一直等下去
+        boolean locked = false;
+        try {
+            locked = gate.writeLock().tryLock(remain(deadline), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closed = true;
+        if (locked)
+            gate.writeLock().unlock();
+
+        if (null == flushers)
+            return;
+        for (Thread t : flushers) {
+            long wait = remain(deadline);
+            if (wait <= 0)
+                break;
+            try {
+                t.join(wait == Long.MAX_VALUE ? 0 : wait);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        drain(deadline);
+    }
+
+    private static long remain(long deadline) {
+        if (deadline == Long.MAX_VALUE)
+            return Long.MAX_VALUE;
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * 在调用线程里写完队列里剩余的文档，过了 deadline 还没写的计入丢弃数
+     */
+    private void drain(long deadline) {
+        List<ZMoDoc> batch = new ArrayList<ZMoDoc>();
+        while (queue.drainTo(batch, maxBatchCount) > 0) {
+            if (remain(deadline) > 0) {
+                write(batch);
+            } else {
+                dropped.addAndGet(batch.size());
+            }
+            batch.clear();
+        }
+        if (remain(deadline) <= 0) {
+            int n = queue.size();
+            if (n > 0)
+                log.warnf("write-behind %s : close timeout, about %d docs left", co.getName(), n);
+        }
+    }
+
+    /**
+     * @return 队列中等待写入的文档数
+     */
+    public int queueSize() {
+        return null == queue ? 0 : queue.size();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    private void loop() {
+        List<ZMoDoc> batch = new ArrayList<ZMoDoc>();
+        while (true) {
+            try {
+                ZMoDoc first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (null == first) {
+                    if (closed && queue.isEmpty())
+                        break;
+                    continue;
+                }
+                batch.add(first);
+                // 在刷写间隔内尽量凑够一批
+                long deadline = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < maxBatchCount) {
+                    long wait = deadline - System.currentTimeMillis();
+                    ZMoDoc doc = (wait > 0 && !closed) ? queue.poll(wait, TimeUnit.MILLISECONDS)
+                                                       : queue.poll();
+                    if (null == doc)
+                        break;
+                    batch.add(doc);
+                }
+                write(batch);
+                batch.clear();
+            }
+            catch (InterruptedException e) {
+                // 被中断了也要把手上的和队列里剩余的都写完再退出
+                if (!batch.isEmpty())
+                    write(batch);
+                batch.clear();
+                drain(Long.MAX_VALUE);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 写入一批文档，写入成功和失败的都会计数
+     */
+    void write(List<ZMoDoc> docs) {
+        try {
+            ZMoBulkWriter bw = co.bulk(false)
+                                 .maxCount(maxBatchCount)
+                                 .maxBytes(maxBatchBytes)
+                                 .writeConcern(concern);
+            for (ZMoDoc doc : docs)
+                bw.insert(doc);
+            ZMoBulkResult re = bw.execute();
+            int nErr = re.getErrors().size();
+            written.addAndGet(docs.size() - nErr);
+            if (nErr > 0) {
+                failed.addAndGet(nErr);
+                log.warnf("write-behind %s : %d/%d fail, first: %s",
+                          co.getName(),
+                          nErr,
+                          docs.size(),
+                          re.getErrors().get(0));
+            }
+        }
+        catch (Exception e) {
+            failed.addAndGet(docs.size());
+            log.warnf("write-behind %s : %d docs fail : %s", co.getName(), docs.size(), e);
+        }
+    }
+
+}
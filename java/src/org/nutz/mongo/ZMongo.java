@@ -2,11 +2,17 @@ package org.nutz.mongo;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.nutz.lang.Lang;
 import org.nutz.lang.Mirror;
 import org.nutz.mongo.interceptor.MongoInterceptor;
 import org.nutz.mongo.interceptor.ZOperationExecutor;
+import org.nutz.mongo.interceptor.impl.BulkheadMongoInterceptor;
 
 import com.mongodb.DB;
 import com.mongodb.MongoClient;
@@ -95,12 +101,100 @@ public class ZMongo {
      */
     private MongoClient moclient;
 
+    /**
+     * 异步驱动的连接，第一次使用时创建。只通过 ZMoAsyncClient 引用异步驱动的类，没有异步驱动的 jar 时本类照样可以加载
+     */
+    private volatile ZMoAsyncClient asyncClient;
+
+    /**
+     * 执行阻塞调用的线程池，第一次使用时创建
+     */
+    private volatile ExecutorService executor;
+
+    /**
+     * 线程池是否由本对象创建，只有自己创建的才在 close 时关闭
+     */
+    private volatile boolean ownExecutor;
+
+    /**
+     * 按库名缓存的（不带拦截器的）数据库封装，这样各个 ZMoDB 里缓存的集合句柄不会因为重新获取数据库而失效
+     */
+    private final ConcurrentHashMap<String, ZMoDB> dbs = new ConcurrentHashMap<String, ZMoDB>();
+
+    /**
+     * 不用 synchronized，避免在虚拟线程上创建连接时钉住载体线程
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
     private ZMongo(MongoClient mc) {
         this.moclient = mc;
     }
 
     public void close() {
+        dbs.clear();
         moclient.close();
+        if (null != asyncClient)
+            asyncClient.close();
+        if (null != executor && ownExecutor)
+            executor.shutdown();
+    }
+
+    /**
+     * 设置执行阻塞调用的线程池，比如 Java 21 的 Executors.newVirtualThreadPerTaskExecutor()
+     * <p>
+     * 传入的线程池归调用者所有，close 时不会关闭它
+     * 
+     * @return 自身
+     */
+    public ZMongo setExecutor(ExecutorService executor) {
+        lock.lock();
+        try {
+            ExecutorService old = this.executor;
+            if (null != old && ownExecutor && old != executor)
+                old.shutdown();
+            this.executor = executor;
+            this.ownExecutor = false;
+        }
+        finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * @return 执行阻塞调用的线程池，没有设置过则创建默认的
+     * @see ZMoExecutors#newDefault()
+     */
+    public ExecutorService getExecutor() {
+        if (null == executor) {
+            lock.lock();
+            try {
+                if (null == executor) {
+                    ownExecutor = true;
+                    executor = ZMoExecutors.newDefault();
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 在线程池中执行一个阻塞的调用，当前线程的舱壁标签会带到任务中
+     * 
+     * @see BulkheadMongoInterceptor#wrap(Callable)
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return getExecutor().submit(BulkheadMongoInterceptor.wrap(task));
+    }
+
+    /**
+     * @return 一组并发查询的作用域，用完需要 close
+     */
+    public ZMoScope scope() {
+        return new ZMoScope(getExecutor());
     }
 
     /**
@@ -132,15 +226,75 @@ public class ZMongo {
     public ZMoDB db(String dbname) {
         return db(dbname, null);
     }
-    
+
+    /**
+     * 获取数据库访问对象
+     * <p>
+     * 没有拦截器时，同一个库名总是返回同一个对象，它缓存的集合句柄可以一直复用。
+     * <p>
+     * 带拦截器时每次都创建新的对象，不缓存：拦截器没法按值比较，每次传入新的拦截器列表会让缓存无限增长。 这时应该自己持有返回的 ZMoDB，不要每次重新获取
+     * 
+     * @param dbname
+     *            数据库名称
+     * @param interceptors
+     *            拦截器，null 或者空表示没有
+     * @return 数据库封装对象
+     */
     public ZMoDB db(String dbname, List<MongoInterceptor> interceptors) {
+        if (null != interceptors && interceptors.size() > 0)
+            return createDB(dbname, interceptors);
+        ZMoDB zdb = dbs.get(dbname);
+        if (null == zdb) {
+            zdb = createDB(dbname, null);
+            ZMoDB old = dbs.putIfAbsent(dbname, zdb);
+            if (null != old)
+                zdb = old;
+        }
+        return zdb;
+    }
+
+    private ZMoDB createDB(String dbname, List<MongoInterceptor> interceptors) {
         DB db = new ZMongoDB2(moclient, dbname);
         if (interceptors != null && interceptors.size() > 0) {
             OperationExecutor proxy = (OperationExecutor) Mirror.me(DB.class).getValue(db, "executor");
             ZOperationExecutor executor = new ZOperationExecutor(proxy, interceptors);
             Mirror.me(DB.class).setValue(db, "executor", executor);
         }
-        return new ZMoDB(db);
+        ZMoDB zdb = new ZMoDB(db);
+        zdb.mongo = this;
+        return zdb;
+    }
+
+    /**
+     * 获取基于异步驱动的集合
+     * <p>
+     * 异步驱动有自己的连接池，第一次调用时按照当前连接的服务器地址，认证信息和连接配置创建
+     * 
+     * @param dbname
+     *            数据库名称
+     * @param coname
+     *            集合名称
+     * @return 异步集合封装
+     */
+    public ZMoAsyncCo ac(String dbname, String coname) {
+        return async().ac(dbname, coname);
+    }
+
+    /**
+     * @return 异步驱动的连接，第一次调用时创建
+     */
+    public ZMoAsyncClient async() {
+        if (null == asyncClient) {
+            lock.lock();
+            try {
+                if (null == asyncClient)
+                    asyncClient = new ZMoAsyncClient(moclient);
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return asyncClient;
     }
 
     /**
@@ -0,0 +1,218 @@
+package org.nutz.mongo.codec;
+
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BsonBoolean;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.codecs.BsonTypeClassMap;
+import org.bson.codecs.Codec;
+import org.bson.codecs.CollectibleCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.nutz.lang.Lang;
+import org.nutz.mongo.adaptor.ZMoAs;
+import org.nutz.mongo.entity.ZMoEntity;
+import org.nutz.mongo.entity.ZMoField;
+import org.nutz.mongo.fieldfilter.ZMoFF;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.DBObject;
+
+/**
+ * 将一个 ZMoEntity 映射关系暴露成驱动的 Codec
+ * <p>
+ * 顶层文档直接与 BSON 流互相转换，不再生成中间的 ZMoDoc/BasicDBObject。 字段值仍然通过字段的适配器转换，所以映射规则与 ZMo.toDoc/fromDoc 一致
+ */
+public class ZMoBsonCodec<T> implements CollectibleCodec<T> {
+
+    private ZMoEntity en;
+
+    private Class<T> type;
+
+    private CodecRegistry registry;
+
+    private BsonTypeClassMap bsonTypes;
+
+    private ZMoField idField;
+
+    public ZMoBsonCodec(Class<T> type, ZMoEntity en, CodecRegistry registry) {
+        this.type = type;
+        this.en = en;
+        this.registry = registry;
+        this.bsonTypes = new BsonTypeClassMap();
+        this.idField = en.getMongoField("_id");
+    }
+
+    public Class<T> getEncoderClass() {
+        return type;
+    }
+
+    public void encode(BsonWriter writer, T value, EncoderContext ctx) {
+        // 获取字段过滤器
+        ZMoFF ff = ZMoFF.get();
+
+        writer.writeStartDocument();
+        for (ZMoField fld : en.getFields()) {
+            Object v = fld.getEjecting().eject(value);
+            // 是否需要过滤
+            if (null != ff && ff.isIgnore(fld, v)) {
+                continue;
+            }
+            String mongoName = fld.getMongoName();
+            // 空的 _id 不输出，交给服务器生成 (ZMoDoc.put 空的 _id 也是移除)
+            if ("_id".equals(mongoName)) {
+                if (null == v)
+                    continue;
+                writer.writeName(mongoName);
+                writeValue(writer, ZMoEntity.idOf(v), ctx);
+            }
+            // 空值
+            else if (null == v) {
+                writer.writeName(mongoName);
+                writer.writeNull();
+            }
+            // 其他值适配
+            else {
+                writer.writeName(mongoName);
+                writeValue(writer, ZMoEntity.toMongoValue(fld, mongoName, v), ctx);
+            }
+        }
+        writer.writeEndDocument();
+    }
+
+    @SuppressWarnings("unchecked")
+    public T decode(BsonReader reader, DecoderContext ctx) {
+        Object obj = en.born();
+        ZMoField[] flds = en.getFields();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String key = reader.readName();
+            int index = en.indexOfMongo(key);
+            // 实体里没有的字段直接跳过
+            if (index < 0) {
+                reader.skipValue();
+                continue;
+            }
+            ZMoField fld = flds[index];
+            try {
+                Object v = readValue(reader, ctx);
+                Object pojov = ZMoEntity.toJavaValue(fld, key, v);
+                fld.getInjecting().inject(obj, pojov);
+            }
+            catch (Exception e) {
+                throw Lang.wrapThrow(e, "fail to set field %s#%s", en.getType(), key);
+            }
+        }
+        reader.readEndDocument();
+        return (T) obj;
+    }
+
+    public boolean documentHasId(T document) {
+        return null != idField && null != idField.getEjecting().eject(document);
+    }
+
+    /**
+     * 返回的类型与 encode 写出的 _id 一致，否则按 _id 替换时会匹配不上
+     */
+    public BsonValue getDocumentId(T document) {
+        if (!documentHasId(document))
+            throw Lang.makeThrow("%s has no _id", type.getName());
+        Object id = ZMoEntity.idOf(idField.getEjecting().eject(document));
+        if (id instanceof Integer)
+            return new BsonInt32((Integer) id);
+        if (id instanceof Long)
+            return new BsonInt64((Long) id);
+        if (id instanceof Boolean)
+            return new BsonBoolean((Boolean) id);
+        return new BsonObjectId((ObjectId) id);
+    }
+
+    public T generateIdIfAbsentFromDocument(T document) {
+        if (null != idField && !documentHasId(document)) {
+            Object id = ZMoAs.id().toJava(idField, new ObjectId());
+            idField.getInjecting().inject(document, id);
+        }
+        return document;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void writeValue(BsonWriter writer, Object v, EncoderContext ctx) {
+        // 空值
+        if (null == v) {
+            writer.writeNull();
+        }
+        // 数组形式的 DBObject 或者集合
+        else if (v instanceof Iterable) {
+            writer.writeStartArray();
+            for (Object ele : (Iterable<?>) v)
+                writeValue(writer, ele, ctx);
+            writer.writeEndArray();
+        }
+        // 普通 Map
+        else if (v instanceof Map && !(v instanceof DBObject)) {
+            writer.writeStartDocument();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) v).entrySet()) {
+                writer.writeName(e.getKey().toString());
+                writeValue(writer, e.getValue(), ctx);
+            }
+            writer.writeEndDocument();
+        }
+        // 除了 byte[] 以外的数组
+        else if (v.getClass().isArray() && !(v instanceof byte[])) {
+            writer.writeStartArray();
+            int len = Array.getLength(v);
+            for (int i = 0; i < len; i++)
+                writeValue(writer, Array.get(v, i), ctx);
+            writer.writeEndArray();
+        }
+        // 其他的交给驱动的 Codec
+        else {
+            Codec codec = registry.get(v.getClass());
+            ctx.encodeWithChildContext(codec, writer, v);
+        }
+    }
+
+    private Object readValue(BsonReader reader, DecoderContext ctx) {
+        BsonType bt = reader.getCurrentBsonType();
+        // 空值
+        if (BsonType.NULL == bt || BsonType.UNDEFINED == bt) {
+            if (BsonType.NULL == bt)
+                reader.readNull();
+            else
+                reader.readUndefined();
+            return null;
+        }
+        // 子文档，适配器需要的是 DBObject
+        if (BsonType.DOCUMENT == bt) {
+            return ctx.decodeWithChildContext(registry.get(DBObject.class), reader);
+        }
+        // 数组，适配器需要的是 BasicDBList
+        if (BsonType.ARRAY == bt) {
+            List<Object> list = new BasicDBList();
+            reader.readStartArray();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                list.add(readValue(reader, ctx));
+            }
+            reader.readEndArray();
+            return list;
+        }
+        Object v = ctx.decodeWithChildContext(registry.get(bsonTypes.get(bt)), reader);
+        // 与 DBObject 的解码保持一致，普通二进制直接给 byte[]
+        if (v instanceof Binary && ((Binary) v).getType() == 0) {
+            return ((Binary) v).getData();
+        }
+        return v;
+    }
+
+}
@@ -0,0 +1,27 @@
+package org.nutz.mongo.codec;
+
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.nutz.lang.Mirror;
+import org.nutz.mongo.ZMo;
+
+import com.mongodb.DBObject;
+
+/**
+ * 为所有 POJO 类型提供 ZMoBsonCodec
+ * <p>
+ * Map, DBObject 以及简单类型都不处理，交给驱动默认的 Codec
+ */
+public class ZMoCodecProvider implements CodecProvider {
+
+    public <T> Codec<T> get(Class<T> clazz, CodecRegistry registry) {
+        if (DBObject.class.isAssignableFrom(clazz) || Bson.class.isAssignableFrom(clazz))
+            return null;
+        if (!Mirror.me(clazz).isPojo())
+            return null;
+        return new ZMoBsonCodec<T>(clazz, ZMo.me().getEntity(clazz), registry);
+    }
+
+}
@@ -0,0 +1,23 @@
+package org.nutz.mongo.codec;
+
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import com.mongodb.MongoClient;
+
+/**
+ * 持有包含了 ZMoCodecProvider 的 CodecRegistry
+ */
+public class ZMoCodecs {
+
+    private static final CodecRegistry _registry_ = CodecRegistries.fromRegistries(MongoClient.getDefaultCodecRegistry(),
+                                                                                      CodecRegistries.fromProviders(new ZMoCodecProvider()));
+
+    /**
+     * @return 驱动默认的 Codec 加上 POJO 的 Codec，驱动默认的优先
+     */
+    public static CodecRegistry registry() {
+        return _registry_;
+    }
+
+}
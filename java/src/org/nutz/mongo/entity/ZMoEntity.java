@@ -1,14 +1,16 @@
 package org.nutz.mongo.entity;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
+import org.bson.types.ObjectId;
 import org.nutz.lang.Lang;
 import org.nutz.lang.Mirror;
 import org.nutz.lang.Strings;
 import org.nutz.lang.born.Borning;
 import org.nutz.lang.eject.Ejecting;
+import org.nutz.mongo.adaptor.ZMoAs;
 
 /**
  * 描述了一个对象字段到 Mongo Document 之间的字段映射关系
@@ -58,9 +60,24 @@ public class ZMoEntity {
      */
     private ZMoField defaultField;
 
+    /**
+     * 预编译的编解码器，仅当 ZMoEntityMaker 开启了编解码器时才会有
+     */
+    private ZMoEntityCodec codec;
+
+    /**
+     * 冻结后的字段数组，顺序与字段加入的顺序一致，有字段加入时会被清空
+     */
+    private volatile ZMoField[] fields;
+
+    /**
+     * 与 fields 对应的 mongo 字段名开放寻址表，存放的是 fields 的下标 +1，0 表示空位
+     */
+    private volatile int[] mongoSlots;
+
     public ZMoEntity() {
-        byJava = new HashMap<String, ZMoField>();
-        byMongo = new HashMap<String, ZMoField>();
+        byJava = new LinkedHashMap<String, ZMoField>();
+        byMongo = new LinkedHashMap<String, ZMoField>();
         defaultField = null;
     }
 
@@ -117,7 +134,18 @@ public class ZMoEntity {
         return this;
     }
 
+    public ZMoEntityCodec getCodec() {
+        return codec;
+    }
+
+    public ZMoEntity setCodec(ZMoEntityCodec codec) {
+        this.codec = codec;
+        return this;
+    }
+
     public void addField(ZMoField fld) {
+        fields = null;
+        mongoSlots = null;
         fld.setParent(this);
         if (!Strings.isBlank(fld.getJavaName()))
             byJava.put(fld.getJavaName(), fld);
@@ -125,6 +153,69 @@ public class ZMoEntity {
             byMongo.put(fld.getMongoName(), fld);
     }
 
+    /**
+     * 获取全部映射字段，顺序与字段声明的顺序一致
+     * <p>
+     * 第一次调用时会把字段冻结成数组，之后可以按下标遍历，不需要再按名称查表
+     * 
+     * @return 字段数组，调用者不要修改它
+     */
+    public ZMoField[] getFields() {
+        ZMoField[] flds = fields;
+        if (null == flds) {
+            flds = freeze();
+        }
+        return flds;
+    }
+
+    /**
+     * 根据 mongo 字段名获取字段在 getFields() 中的下标
+     * 
+     * @param mongoName
+     *            mongo 字段名
+     * @return 下标，-1 表示没有这个字段
+     */
+    public int indexOfMongo(String mongoName) {
+        ZMoField[] flds = getFields();
+        int[] slots = mongoSlots;
+        int mask = slots.length - 1;
+        int i = mongoName.hashCode() & mask;
+        while (slots[i] != 0) {
+            int index = slots[i] - 1;
+            if (mongoName.equals(flds[index].getMongoName()))
+                return index;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 不加锁，并发冻结得到的数组内容相同，谁最后写入都一样
+     */
+    private ZMoField[] freeze() {
+        if (null != fields)
+            return fields;
+        ZMoField[] flds = byJava.values().toArray(new ZMoField[byJava.size()]);
+
+        // 容量取大于字段数两倍的 2 的幂，保证探测链足够短
+        int cap = 2;
+        while (cap < flds.length * 2)
+            cap <<= 1;
+        int[] slots = new int[cap];
+        for (int index = 0; index < flds.length; index++) {
+            String mongoName = flds[index].getMongoName();
+            if (Strings.isBlank(mongoName))
+                continue;
+            int i = mongoName.hashCode() & (cap - 1);
+            while (slots[i] != 0)
+                i = (i + 1) & (cap - 1);
+            slots[i] = index + 1;
+        }
+        mongoSlots = slots;
+        fields = flds;
+        return flds;
+    }
+
     public Set<String> getJavaNames(Object obj) {
         return byJava.keySet();
     }
@@ -226,6 +317,57 @@ public class ZMoEntity {
         javaField(javaName).getInjecting().inject(obj, value);
     }
 
+    /**
+     * 将一个 Java 字段值适配成文档字段值
+     * <p>
+     * ZMo，ZMoEntityCodec 和 ZMoBsonCodec 都通过这里转换，_id 的规则只有这一份
+     * 
+     * @param fld
+     *            字段
+     * @param mongoName
+     *            文档中的字段名，Map 实体的字段名不一定就是 fld 的名字
+     * @param v
+     *            Java 字段值
+     * @return 文档字段值
+     */
+    public static Object toMongoValue(ZMoField fld, String mongoName, Object v) {
+        // 空值
+        if (null == v)
+            return null;
+        // _id
+        if ("_id".equals(mongoName))
+            return idOf(v);
+        // 其他值适配
+        return fld.getAdaptor().toMongo(fld, v);
+    }
+
+    /**
+     * 将一个文档字段值适配成 Java 字段值，与 toMongoValue 对应
+     */
+    public static Object toJavaValue(ZMoField fld, String mongoName, Object v) {
+        // 空值
+        if (null == v)
+            return null;
+        // _id
+        if ("_id".equals(mongoName))
+            return ZMoAs.id().toJava(fld, v);
+        // 其他值适配
+        return fld.getAdaptor().toJava(fld, v);
+    }
+
+    /**
+     * ObjectId，布尔和整数原样保留，其他的都转成 ObjectId
+     * 
+     * @param v
+     *            _id 的 Java 值，不能为 null
+     * @return 文档中 _id 的值
+     */
+    public static Object idOf(Object v) {
+        if (v instanceof ObjectId || v instanceof Boolean || v instanceof Integer || v instanceof Long)
+            return v;
+        return new ObjectId(v.toString());
+    }
+
     public ZMoEntity clone() {
         ZMoEntity en = new ZMoEntity();
         en.setType(type);
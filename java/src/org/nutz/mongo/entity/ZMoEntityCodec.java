@@ -0,0 +1,122 @@
+package org.nutz.mongo.entity;
+
+import org.nutz.lang.Lang;
+import org.nutz.lang.eject.Ejecting;
+import org.nutz.lang.inject.Injecting;
+import org.nutz.mongo.ZMoDoc;
+import org.nutz.mongo.fieldfilter.ZMoFF;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * 为某一个 POJO 映射实体预先编译好的编解码器
+ * <p>
+ * 在构建的时候，会把实体的每个字段的名称和存取方法都展开成数组， 这样每次转换文档时只需要按下标顺序读写字段，不再需要按名称查映射表。 值的适配（包括 _id）与 ZMo 共用 ZMoEntity.toMongoValue/toJavaValue
+ * <p>
+ * 本对象创建后是只读的，可以被多个线程共享
+ */
+public class ZMoEntityCodec {
+
+    private ZMoEntity entity;
+
+    private ZMoField[] fields;
+
+    private String[] mongoNames;
+
+    private Ejecting[] ejectings;
+
+    private Injecting[] injectings;
+
+    public ZMoEntityCodec(ZMoEntity en) {
+        this.entity = en;
+        this.fields = en.getFields();
+        int n = fields.length;
+        mongoNames = new String[n];
+        ejectings = new Ejecting[n];
+        injectings = new Injecting[n];
+        for (int i = 0; i < n; i++) {
+            ZMoField fld = fields[i];
+            mongoNames[i] = fld.getMongoName();
+            ejectings[i] = fld.getEjecting();
+            injectings[i] = fld.getInjecting();
+        }
+    }
+
+    /**
+     * @return 编解码器对应的映射实体
+     */
+    public ZMoEntity getEntity() {
+        return entity;
+    }
+
+    /**
+     * 将一个 POJO 转换成文档
+     *
+     * @param obj
+     *            POJO 对象
+     * @param ff
+     *            字段过滤器，可以为 null
+     * @return 文档对象
+     */
+    public ZMoDoc toDoc(Object obj, ZMoFF ff) {
+        ZMoDoc doc = ZMoDoc.NEW().setDBobj(new BasicDBObject(fields.length));
+        for (int i = 0; i < fields.length; i++) {
+            Object v = ejectings[i].eject(obj);
+            // 是否需要过滤
+            if (null != ff && ff.isIgnore(fields[i], v)) {
+                continue;
+            }
+            doc.put(mongoNames[i], ZMoEntity.toMongoValue(fields[i], mongoNames[i], v));
+        }
+        return doc;
+    }
+
+    /**
+     * 将一个文档转换成 POJO
+     *
+     * @param dbobj
+     *            文档对象
+     * @return POJO 对象
+     */
+    public Object fromDoc(DBObject dbobj) {
+        Object obj = entity.born();
+        for (int i = 0; i < fields.length; i++)
+            inject(obj, i, dbobj);
+        return obj;
+    }
+
+    /**
+     * 将一个文档转换成 POJO，只设置给定的字段，其余字段保持对象创建时的默认值
+     *
+     * @param dbobj
+     *            文档对象
+     * @param only
+     *            要设置的字段，必须是本实体的字段
+     * @return POJO 对象
+     */
+    public Object fromDoc(DBObject dbobj, ZMoField[] only) {
+        Object obj = entity.born();
+        for (ZMoField fld : only)
+            inject(obj, indexOf(fld), dbobj);
+        return obj;
+    }
+
+    private int indexOf(ZMoField fld) {
+        for (int i = 0; i < fields.length; i++)
+            if (fields[i] == fld)
+                return i;
+        throw Lang.makeThrow("field %s is not in %s", fld.getJavaName(), entity.getType());
+    }
+
+    private void inject(Object obj, int i, DBObject dbobj) {
+        try {
+            Object v = dbobj.get(mongoNames[i]);
+            Object pojov = ZMoEntity.toJavaValue(fields[i], mongoNames[i], v);
+            injectings[i].inject(obj, pojov);
+        }
+        catch (Exception e) {
+            throw Lang.wrapThrow(e, "fail to set field %s#%s", entity.getType(), mongoNames[i]);
+        }
+    }
+}
@@ -1,35 +1,91 @@
 package org.nutz.mongo.entity;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.nutz.lang.Strings;
 
 /**
  * 缓存 ZMoEntity 对象
+ * <p>
+ * 内部是 ConcurrentHashMap，读取不需要加锁，可以被多个线程同时读写
+ * <p>
+ * 实体以字符串为键值保存，对于按类型查找的实体，另外有一个以 Class 为键的索引， 查找时用的是 Class 的 identityHashCode，不需要计算类名字符串的哈希
+ * <p>
+ * 替换或者删除实体时，整个类型索引都会被清空，之后按类型查找时再重新绑定。 这种操作很少，不值得为它维护反向索引
  * 
  * @author zozoh(zozohtnt@gmail.com)
  */
 public class ZMoEntityHolder {
 
-    private Map<String, ZMoEntity> ens;
+    private ConcurrentHashMap<String, ZMoEntity> ens;
+
+    private ConcurrentHashMap<Class<?>, ZMoEntity> byType;
 
     public ZMoEntityHolder() {
-        ens = new HashMap<String, ZMoEntity>();
+        ens = new ConcurrentHashMap<String, ZMoEntity>();
+        byType = new ConcurrentHashMap<Class<?>, ZMoEntity>();
     }
 
     public ZMoEntity get(String key) {
         return ens.get(key);
     }
 
+    /**
+     * @param type
+     *            对象类型
+     * @return 通过 bind 绑定到这个类型的实体
+     */
+    public ZMoEntity get(Class<?> type) {
+        return byType.get(type);
+    }
+
+    /**
+     * 将某个类型绑定到一个已经加入的实体，以便以后可以按类型快速查找
+     * <p>
+     * 如果绑定的同时，这个实体被另外的线程替换或者删除了，绑定会被撤销
+     * 
+     * @param type
+     *            对象类型
+     * @param en
+     *            实体
+     */
+    public void bind(Class<?> type, ZMoEntity en) {
+        if (null != type && null != en) {
+            byType.put(type, en);
+            // add/remove 是先改 ens 再清空 byType 的，所以放进去以后再检查一次：
+            // 要么被清掉了，要么这里能看到实体已经不是当前的那个
+            String key = en.getKey();
+            if (null == key || ens.get(key) != en)
+                byType.remove(type, en);
+        }
+    }
+
     public void add(String key, ZMoEntity en) {
         if (null != en && !Strings.isBlank(key)) {
             en.setKey(key);
             ens.put(key, en);
+            byType.clear();
         }
     }
 
+    /**
+     * 如果键值还没有对应的实体，则加入
+     * 
+     * @param key
+     *            键值
+     * @param en
+     *            实体
+     * @return 最终在 holder 中的实体，如果已经有了，就是已有的那个
+     */
+    public ZMoEntity addIfAbsent(String key, ZMoEntity en) {
+        if (null == en || Strings.isBlank(key))
+            return en;
+        en.setKey(key);
+        ZMoEntity old = ens.putIfAbsent(key, en);
+        return null == old ? en : old;
+    }
+
     public Set<String> keys() {
         return ens.keySet();
     }
@@ -39,10 +95,14 @@ public class ZMoEntityHolder {
     }
 
     public ZMoEntity remove(String key) {
-        return ens.remove(key);
+        ZMoEntity en = ens.remove(key);
+        if (null != en)
+            byType.clear();
+        return en;
     }
 
     public void clear() {
+        byType.clear();
         ens.clear();
     }
 
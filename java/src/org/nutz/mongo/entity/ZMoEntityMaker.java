@@ -43,6 +43,28 @@ import org.nutz.mongo.annotation.MoIgnore;
  */
 public class ZMoEntityMaker {
 
+    /**
+     * 是否为 POJO 实体生成预编译的编解码器
+     */
+    private boolean codecEnabled;
+
+    /**
+     * 开启后，每个 POJO 类型第一次被映射时会生成一个 ZMoEntityCodec，
+     * 之后的文档转换都直接走这个编解码器
+     * 
+     * @param codecEnabled
+     *            是否开启
+     * @return 自身
+     */
+    public ZMoEntityMaker setCodecEnabled(boolean codecEnabled) {
+        this.codecEnabled = codecEnabled;
+        return this;
+    }
+
+    public boolean isCodecEnabled() {
+        return codecEnabled;
+    }
+
     /**
      * 根据传入的参考对象，构建一个映射实体。
      * 
@@ -68,7 +90,11 @@ public class ZMoEntityMaker {
             // 否则传入的一定是个 Map 实例，根据内容来构建实体咯
             return makeMapEntity((Map<String, Object>) obj);
         }
-        return makePojoEntity(mi.getType());
+        ZMoEntity en = makePojoEntity(mi.getType());
+        if (codecEnabled) {
+            en.setCodec(new ZMoEntityCodec(en));
+        }
+        return en;
     }
 
     /**
@@ -36,6 +36,19 @@ public class ZMoGeneralMapEntity extends ZMoEntity {
         return false;
     }
 
+    /**
+     * 通用 Map 的字段由对象的内容决定，所以没有固定的字段数组
+     */
+    @Override
+    public ZMoField[] getFields() {
+        return null;
+    }
+
+    @Override
+    public int indexOfMongo(String mongoName) {
+        return -1;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public Set<String> getJavaNames(Object obj) {
@@ -1,11 +1,14 @@
 package org.nutz.mongo.fieldfilter;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.nutz.lang.util.Closer;
 import org.nutz.mongo.ZMo;
 import org.nutz.mongo.ZMoDoc;
+import org.nutz.mongo.entity.ZMoEntity;
 import org.nutz.mongo.entity.ZMoField;
 
 /**
@@ -102,6 +105,63 @@ public abstract class ZMoFF {
         return !asIgnore;
     }
 
+    /**
+     * 不看值，只根据名称判断一个字段是否会被保留，用来生成查询的字段投影
+     * 
+     * @param fld
+     *            当前字段
+     * @return 是否保留这个字段
+     */
+    public boolean isSelected(ZMoField fld) {
+        String key = byJava ? fld.getJavaName() : fld.getMongoName();
+        return match(key) ? !asIgnore : asIgnore;
+    }
+
+    /**
+     * @param en
+     *            映射实体
+     * @return 实体中会被保留的字段，实体不是固定字段的（比如 Map）则返回 null
+     */
+    public ZMoField[] select(ZMoEntity en) {
+        ZMoField[] flds = en.getFields();
+        if (null == flds)
+            return null;
+        List<ZMoField> list = new ArrayList<ZMoField>(flds.length);
+        for (ZMoField fld : flds)
+            if (isSelected(fld))
+                list.add(fld);
+        return list.toArray(new ZMoField[list.size()]);
+    }
+
+    /**
+     * 生成字段投影，只包括会被保留的字段。如果 _id 不保留，则显式排除； 一个字段都不保留时只取 _id，而不是排除 _id 以外全取
+     * 
+     * @param en
+     *            映射实体
+     * @return 字段投影，实体不是固定字段的则返回 null
+     */
+    public ZMoDoc projection(ZMoEntity en) {
+        ZMoField[] flds = select(en);
+        return null == flds ? null : projection(flds);
+    }
+
+    /**
+     * @param flds
+     *            要保留的字段
+     * @return 字段投影
+     */
+    public static ZMoDoc projection(ZMoField[] flds) {
+        // {_id:0} 会返回 _id 以外的全部字段
+        if (flds.length == 0)
+            return ZMoDoc.NEW("_id", 1);
+        ZMoDoc keys = ZMoDoc.NEW(flds.length + 1);
+        for (ZMoField fld : flds)
+            keys.put(fld.getMongoName(), 1);
+        if (!keys.containsField("_id"))
+            keys.put("_id", 0);
+        return keys;
+    }
+
     public ZMoFF asIgnore(boolean asActive) {
         this.asIgnore = asActive;
         return this;
@@ -1,5 +1,7 @@
 package org.nutz.mongo.interceptor;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.nutz.lang.Lang;
@@ -10,6 +12,12 @@ import com.mongodb.operation.OperationExecutor;
 import com.mongodb.operation.ReadOperation;
 import com.mongodb.operation.WriteOperation;
 
+/**
+ * 拦截器链，每次操作一个实例
+ * <p>
+ * ZOperationExecutor 创建的链直接按下标读共享的拦截器数组，拦截器调用 getInterceptors() 时才复制成一个列表， 修改这个列表不会影响别的操作；
+ * 上下文也只有拦截器真的调用 getContext() 时才会创建
+ */
 public class MongoInterceptorChain<T> {
 
     protected ReadOperation<T> readOperation;
@@ -20,10 +28,38 @@ public class MongoInterceptorChain<T> {
     protected OperationExecutor proxy;
     protected T result;
     protected Context context;
-    
+
+    /**
+     * ZOperationExecutor 共享的拦截器数组，只读。interceptors 不为 null 时以 interceptors 为准
+     */
+    private MongoInterceptor[] shared;
+
+    public MongoInterceptorChain() {
+        this.interceptors = new ArrayList<MongoInterceptor>();
+    }
+
+    MongoInterceptorChain(MongoInterceptor[] interceptors,
+                          OperationExecutor proxy,
+                          ReadOperation<T> readOperation,
+                          ReadPreference readPreference) {
+        this.shared = interceptors;
+        this.proxy = proxy;
+        this.readOperation = readOperation;
+        this.readPreference = readPreference;
+    }
+
+    MongoInterceptorChain(MongoInterceptor[] interceptors,
+                          OperationExecutor proxy,
+                          WriteOperation<T> writeOperation) {
+        this.shared = interceptors;
+        this.proxy = proxy;
+        this.writeOperation = writeOperation;
+    }
+
     public void doChain() {
-        if (interceptors.size() > index)
-            interceptors.get(index++).filter(this);
+        MongoInterceptor mi = next();
+        if (mi != null)
+            mi.filter(this);
         else {
             if (readOperation != null) {
                 result = proxy.execute(readOperation, readPreference);
@@ -33,6 +69,14 @@ public class MongoInterceptorChain<T> {
         }
     }
 
+    private MongoInterceptor next() {
+        if (interceptors != null)
+            return interceptors.size() > index ? interceptors.get(index++) : null;
+        if (shared != null && shared.length > index)
+            return shared[index++];
+        return null;
+    }
+
     public ReadOperation<T> getReadOperation() {
         return readOperation;
     }
@@ -58,6 +102,8 @@ public class MongoInterceptorChain<T> {
     }
 
     public List<MongoInterceptor> getInterceptors() {
+        if (interceptors == null && shared != null)
+            interceptors = new ArrayList<MongoInterceptor>(Arrays.asList(shared));
         return interceptors;
     }
 
@@ -89,12 +135,22 @@ public class MongoInterceptorChain<T> {
         this.result = result;
     }
 
+    /**
+     * @return 上下文，如果还没有则创建一个
+     */
     public Context getContext() {
         if (context == null)
             context = Lang.context();
         return context;
     }
 
+    /**
+     * @return 上下文，如果还没有创建过则返回 null，不会分配新对象
+     */
+    public Context peekContext() {
+        return context;
+    }
+
     public void setContext(Context context) {
         this.context = context;
     }
@@ -0,0 +1,38 @@
+package org.nutz.mongo.interceptor;
+
+import org.bson.BsonDocument;
+
+/**
+ * 从某一类驱动操作（ReadOperation/WriteOperation）中取出描述信息
+ * <p>
+ * 实现类需要是线程安全的，同一个实例会被所有同类的操作共享。 通过 MongoOperations.register 注册
+ *
+ * @see MongoOperations
+ */
+public interface MongoOperationDescriber {
+
+    /**
+     * @return 数据库名，取不到则为 null
+     */
+    String getDatabase(Object op);
+
+    /**
+     * @return 集合名，取不到则为 null
+     */
+    String getCollection(Object op);
+
+    /**
+     * @return 操作名，命令类操作为命令名，比如 "count"，其他为 "Find"，"Insert" 等
+     */
+    String getName(Object op);
+
+    /**
+     * @return 是否为命令类操作
+     */
+    boolean isCommand(Object op);
+
+    /**
+     * @return 命令文档，或者查询/更新/删除的过滤条件，取不到则为 null
+     */
+    BsonDocument getQuery(Object op);
+}
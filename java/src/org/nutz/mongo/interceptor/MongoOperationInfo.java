@@ -0,0 +1,82 @@
+package org.nutz.mongo.interceptor;
+
+import org.bson.BsonDocument;
+
+/**
+ * 一个驱动操作的描述，各项信息都是第一次访问时才取，取过之后缓存起来
+ * <p>
+ * 本对象不是线程安全的，一般只在一次拦截中使用
+ */
+public class MongoOperationInfo {
+
+    private Object op;
+
+    private MongoOperationDescriber describer;
+
+    private String database;
+
+    private String collection;
+
+    private String name;
+
+    private BsonDocument query;
+
+    private boolean queryLoaded;
+
+    public MongoOperationInfo(Object op, MongoOperationDescriber describer) {
+        this.op = op;
+        this.describer = describer;
+    }
+
+    public Object getOperation() {
+        return op;
+    }
+
+    public String getDatabase() {
+        if (null == database)
+            database = or(describer.getDatabase(op));
+        return database;
+    }
+
+    public String getCollection() {
+        if (null == collection)
+            collection = or(describer.getCollection(op));
+        return collection;
+    }
+
+    public String getName() {
+        if (null == name)
+            name = or(describer.getName(op));
+        return name;
+    }
+
+    public boolean isCommand() {
+        return describer.isCommand(op);
+    }
+
+    /**
+     * @return 命令文档或者过滤条件，可能为 null
+     */
+    public BsonDocument getQuery() {
+        if (!queryLoaded) {
+            query = describer.getQuery(op);
+            queryLoaded = true;
+        }
+        return query;
+    }
+
+    /**
+     * @return "db.collection#name" 形式的键，适合用来做统计分组
+     */
+    public String getKey() {
+        return getDatabase() + "." + getCollection() + "#" + getName();
+    }
+
+    public String toString() {
+        return getKey();
+    }
+
+    private static String or(String s) {
+        return null == s ? "?" : s;
+    }
+}
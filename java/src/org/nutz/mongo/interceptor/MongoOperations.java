@@ -0,0 +1,104 @@
+package org.nutz.mongo.interceptor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+
+/**
+ * 操作描述器的注册表
+ * <p>
+ * 每个操作类对应一个描述器，第一次遇到时创建并缓存。 没有显式注册的类使用基于反射的默认描述器，它认识驱动自带的各种操作 (FindOperation，InsertOperation，MixedBulkWriteOperation，AggregateOperation，CommandReadOperation 等)
+ *
+ * <pre>
+ * MongoOperationInfo info = MongoOperations.describe(chain.getReadOperation());
+ * info.getCollection();
+ * </pre>
+ */
+public abstract class MongoOperations {
+
+    private static final ConcurrentHashMap<Class<?>, MongoOperationDescriber> describers = new ConcurrentHashMap<Class<?>, MongoOperationDescriber>();
+
+    /**
+     * 为某个操作类注册描述器，会覆盖默认的
+     */
+    public static void register(Class<?> type, MongoOperationDescriber describer) {
+        describers.put(type, describer);
+    }
+
+    /**
+     * @return 某个操作类的描述器，不会为 null
+     */
+    public static MongoOperationDescriber describer(Class<?> type) {
+        MongoOperationDescriber d = describers.get(type);
+        if (null == d) {
+            d = new ReflectOperationDescriber(type);
+            MongoOperationDescriber old = describers.putIfAbsent(type, d);
+            if (null != old)
+                d = old;
+        }
+        return d;
+    }
+
+    /**
+     * @param op
+     *            驱动的读或者写操作
+     * @return 操作描述，op 为 null 则返回 null
+     */
+    public static MongoOperationInfo describe(Object op) {
+        if (null == op)
+            return null;
+        return new MongoOperationInfo(op, describer(op.getClass()));
+    }
+
+    /**
+     * @return 拦截链当前的操作的描述，没有操作则返回 null
+     */
+    public static MongoOperationInfo describe(MongoInterceptorChain<?> chain) {
+        Object op = chain.getReadOperation();
+        if (null == op)
+            op = chain.getWriteOperation();
+        return describe(op);
+    }
+
+    /**
+     * 保留文档的结构，值都换成 "?"，用于在日志里隐藏用户数据
+     * 
+     * @param doc
+     *            查询条件或者命令
+     * @param keepFirst
+     *            是否保留第一个键的字符串值，命令的第一个键的值通常是集合名
+     * @return 新的文档，原文档不变
+     */
+    public static BsonDocument redact(BsonDocument doc, boolean keepFirst) {
+        BsonDocument re = new BsonDocument();
+        boolean first = keepFirst;
+        for (Map.Entry<String, BsonValue> en : doc.entrySet()) {
+            if (first) {
+                re.put(en.getKey(), en.getValue().isString() ? en.getValue() : redact(en.getValue()));
+                first = false;
+            } else {
+                re.put(en.getKey(), redact(en.getValue()));
+            }
+        }
+        return re;
+    }
+
+    /**
+     * 文档和数组保留结构，其他值都换成 "?"
+     */
+    public static BsonValue redact(BsonValue v) {
+        if (v.isDocument())
+            return redact(v.asDocument(), false);
+        if (v.isArray()) {
+            BsonArray arr = new BsonArray();
+            for (BsonValue item : v.asArray())
+                arr.add(redact(item));
+            return arr;
+        }
+        return new BsonString("?");
+    }
+}
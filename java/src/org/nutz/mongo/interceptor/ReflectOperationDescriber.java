@@ -0,0 +1,143 @@
+package org.nutz.mongo.interceptor;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.bulk.DeleteRequest;
+import com.mongodb.bulk.UpdateRequest;
+
+/**
+ * 默认的描述器，构建时就把要用的字段找好并设为可访问，之后每次只是读字段
+ */
+class ReflectOperationDescriber implements MongoOperationDescriber {
+
+    private static final String[] REQUEST_FIELDS = {"writeRequests",
+                                                    "updateRequests",
+                                                    "deleteRequests",
+                                                    "insertRequests"};
+
+    private Field namespace;
+
+    private Field databaseName;
+
+    private Field command;
+
+    private Field filter;
+
+    private Field requests;
+
+    private Field pipeline;
+
+    private String name;
+
+    ReflectOperationDescriber(Class<?> type) {
+        namespace = field(type, "namespace");
+        databaseName = field(type, "databaseName");
+        command = field(type, "command");
+        filter = field(type, "filter");
+        for (String nm : REQUEST_FIELDS) {
+            requests = field(type, nm);
+            if (null != requests)
+                break;
+        }
+        pipeline = field(type, "pipeline");
+        name = type.getSimpleName();
+        if (name.endsWith("Operation"))
+            name = name.substring(0, name.length() - "Operation".length());
+    }
+
+    public String getDatabase(Object op) {
+        if (null != namespace) {
+            MongoNamespace ns = (MongoNamespace) get(namespace, op);
+            return null == ns ? null : ns.getDatabaseName();
+        }
+        if (null != databaseName)
+            return (String) get(databaseName, op);
+        return null;
+    }
+
+    public String getCollection(Object op) {
+        if (null != namespace) {
+            MongoNamespace ns = (MongoNamespace) get(namespace, op);
+            return null == ns ? null : ns.getCollectionName();
+        }
+        // 命令第一个键的值通常就是集合名
+        BsonDocument cmd = command(op);
+        if (null != cmd && !cmd.isEmpty()) {
+            String key = cmd.keySet().iterator().next();
+            if (cmd.get(key).isString())
+                return cmd.getString(key).getValue();
+        }
+        return null;
+    }
+
+    public String getName(Object op) {
+        BsonDocument cmd = command(op);
+        if (null != cmd && !cmd.isEmpty())
+            return cmd.keySet().iterator().next();
+        return name;
+    }
+
+    public boolean isCommand(Object op) {
+        return null != command;
+    }
+
+    public BsonDocument getQuery(Object op) {
+        if (null != command)
+            return command(op);
+        if (null != filter)
+            return (BsonDocument) get(filter, op);
+        if (null != requests) {
+            List<?> list = (List<?>) get(requests, op);
+            Object req = null == list || list.isEmpty() ? null : list.get(0);
+            if (req instanceof UpdateRequest)
+                return ((UpdateRequest) req).getFilter();
+            if (req instanceof DeleteRequest)
+                return ((DeleteRequest) req).getFilter();
+        }
+        if (null != pipeline) {
+            List<?> list = (List<?>) get(pipeline, op);
+            if (null != list) {
+                BsonArray arr = new BsonArray();
+                for (Object stage : list)
+                    if (stage instanceof BsonValue)
+                        arr.add((BsonValue) stage);
+                return new BsonDocument("pipeline", arr);
+            }
+        }
+        return null;
+    }
+
+    private BsonDocument command(Object op) {
+        return null == command ? null : (BsonDocument) get(command, op);
+    }
+
+    private static Object get(Field f, Object op) {
+        try {
+            return f.get(op);
+        }
+        catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static Field field(Class<?> type, String name) {
+        for (Class<?> c = type; null != c && Object.class != c; c = c.getSuperclass()) {
+            try {
+                Field f = c.getDeclaredField(name);
+                f.setAccessible(true);
+                return f;
+            }
+            catch (NoSuchFieldException e) {}
+            catch (SecurityException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -1,7 +1,7 @@
 package org.nutz.mongo.interceptor;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
 
 import com.mongodb.ReadPreference;
 import com.mongodb.operation.OperationExecutor;
@@ -12,6 +12,11 @@ public class ZOperationExecutor implements OperationExecutor {
     
     protected OperationExecutor proxy;
     protected List<MongoInterceptor> interceptors;
+
+    /**
+     * 拦截器列表的快照，所有操作共享，不必每次都复制列表。 每次操作前逐个比较列表和快照，列表被原地修改过就重新生成
+     */
+    private volatile Snapshot snapshot;
     
     protected ZOperationExecutor() {}
 
@@ -20,30 +25,81 @@ public class ZOperationExecutor implements OperationExecutor {
         this.interceptors = interceptors;
     }
 
+    /**
+     * 丢弃快照，下次操作时重新生成
+     * <p>
+     * 列表的修改在下次操作时会被自动发现，一般不需要调用本函数
+     */
+    public void refresh() {
+        snapshot = null;
+    }
+
+    /**
+     * 列表被替换或者内容变了就重新生成快照
+     */
+    private MongoInterceptor[] snapshot() {
+        List<MongoInterceptor> list = interceptors;
+        if (list == null || list.isEmpty())
+            return null;
+        Snapshot sn = snapshot;
+        if (sn == null || !sn.matches(list)) {
+            sn = new Snapshot(list);
+            snapshot = sn;
+        }
+        return sn.array;
+    }
+
+    private static class Snapshot {
+        List<MongoInterceptor> of;
+        MongoInterceptor[] array;
+
+        Snapshot(List<MongoInterceptor> list) {
+            of = list;
+            array = list.toArray(new MongoInterceptor[list.size()]);
+        }
 
+        /**
+         * 按位置逐个比较引用，拦截器一般只有几个，比复制一份列表便宜
+         */
+        boolean matches(List<MongoInterceptor> list) {
+            if (of != list || array.length != list.size())
+                return false;
+            if (list instanceof RandomAccess) {
+                for (int i = 0; i < array.length; i++)
+                    if (array[i] != list.get(i))
+                        return false;
+                return true;
+            }
+            int i = 0;
+            for (MongoInterceptor mi : list)
+                if (i >= array.length || array[i++] != mi)
+                    return false;
+            return i == array.length;
+        }
+    }
 
     public <T> T execute(ReadOperation<T> operation, ReadPreference readPreference) {
-        if (interceptors == null)
+        MongoInterceptor[] mis = snapshot();
+        if (mis == null)
             return proxy.execute(operation, readPreference);
         else {
-            MongoInterceptorChain<T> chain = new MongoInterceptorChain<T>();
-            chain.interceptors = new ArrayList<MongoInterceptor>(interceptors);
-            chain.proxy = proxy;
-            chain.readOperation = operation;
-            chain.readPreference = readPreference;
+            MongoInterceptorChain<T> chain = new MongoInterceptorChain<T>(mis,
+                                                                          proxy,
+                                                                          operation,
+                                                                          readPreference);
             chain.doChain();
             return chain.result;
         }
     }
 
     public <T> T execute(WriteOperation<T> operation) {
-        if (interceptors == null)
+        MongoInterceptor[] mis = snapshot();
+        if (mis == null)
             return proxy.execute(operation);
         else {
-            MongoInterceptorChain<T> chain = new MongoInterceptorChain<T>();
-            chain.interceptors = new ArrayList<MongoInterceptor>(interceptors);
-            chain.proxy = proxy;
-            chain.writeOperation = operation;
+            MongoInterceptorChain<T> chain = new MongoInterceptorChain<T>(mis,
+                                                                          proxy,
+                                                                          operation);
             chain.doChain();
             return chain.result;
         }
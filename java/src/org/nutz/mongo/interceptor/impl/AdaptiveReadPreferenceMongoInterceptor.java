@@ -0,0 +1,217 @@
+package org.nutz.mongo.interceptor.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.interceptor.MongoOperationInfo;
+import org.nutz.mongo.interceptor.MongoOperations;
+
+import com.mongodb.ReadPreference;
+
+/**
+ * 按操作改写读偏好
+ * <ul>
+ * <li>按集合设置读偏好，比如分析类集合总是读从库，会话类集合总是读主库
+ * <li>读己之写: 当前线程写过某个集合后，一段时间内对这个集合的读都走主库
+ * <li>自适应: 对声明为自适应的集合，如果观察到读从库明显比读主库慢，就暂时改读主库， 期间仍然按一定比例读从库，以便发现从库恢复；
+ * 从库不慢时，也按同样的比例读主库，保持主库耗时的统计
+ * </ul>
+ * 耗时只在读偏好明确指定了主库（primary）或者从库（secondary）时统计， secondaryPreferred 之类的模式可能由任何一方响应，统计了会把两边混在一起，
+ * 所以自适应的集合只对 secondary 模式生效
+ *
+ * <pre>
+ * AdaptiveReadPreferenceMongoInterceptor rp = new AdaptiveReadPreferenceMongoInterceptor();
+ * rp.policy("mydb", "report", ReadPreference.secondary())
+ *   .policy("mydb", "session", ReadPreference.primary())
+ *   .adaptive("mydb", "pet")
+ *   .setReadYourWritesMs(3000);
+ * </pre>
+ */
+public class AdaptiveReadPreferenceMongoInterceptor implements MongoInterceptor {
+
+    private static final double ALPHA = 0.2;
+
+    /**
+     * 一个集合分别读主库和从库的平均耗时（指数加权）
+     */
+    private static class Latency {
+        double primary;
+        double secondary;
+        int primaryN;
+        int secondaryN;
+        AtomicLong reads = new AtomicLong();
+
+        synchronized void record(boolean toPrimary, long micros) {
+            if (toPrimary) {
+                primary = primaryN++ == 0 ? micros : primary + ALPHA * (micros - primary);
+            } else {
+                secondary = secondaryN++ == 0 ? micros : secondary + ALPHA * (micros - secondary);
+            }
+        }
+
+        synchronized boolean secondarySlow(double factor, int minSamples) {
+            return primaryN >= minSamples
+                   && secondaryN >= minSamples
+                   && secondary > primary * factor;
+        }
+    }
+
+    private ConcurrentHashMap<String, ReadPreference> policies;
+
+    private ConcurrentHashMap<String, Latency> adaptives;
+
+    private ThreadLocal<Map<String, Long>> lastWrites;
+
+    private long readYourWritesMs;
+
+    private double slowFactor;
+
+    private int probeEvery;
+
+    public AdaptiveReadPreferenceMongoInterceptor() {
+        policies = new ConcurrentHashMap<String, ReadPreference>();
+        adaptives = new ConcurrentHashMap<String, Latency>();
+        lastWrites = new ThreadLocal<Map<String, Long>>();
+        slowFactor = 2.0;
+        probeEvery = 20;
+    }
+
+    /**
+     * 设置某个集合的读偏好
+     *
+     * @param collection
+     *            集合名，"*" 表示该数据库下全部集合
+     */
+    public AdaptiveReadPreferenceMongoInterceptor policy(String db,
+                                                         String collection,
+                                                         ReadPreference rp) {
+        policies.put(db + "." + collection, rp);
+        return this;
+    }
+
+    /**
+     * 声明某个集合为自适应，如果没有设置过读偏好，则默认为 secondary
+     * <p>
+     * 注意 secondary 模式在没有可用从库时会读失败，自适应只在 secondary 模式下生效
+     */
+    public AdaptiveReadPreferenceMongoInterceptor adaptive(String db, String collection) {
+        String ns = db + "." + collection;
+        if (!policies.containsKey(ns))
+            policies.put(ns, ReadPreference.secondary());
+        adaptives.putIfAbsent(ns, new Latency());
+        return this;
+    }
+
+    /**
+     * @param readYourWritesMs
+     *            当前线程写过某个集合后，多少毫秒内读这个集合都走主库，0 表示关闭，默认 0
+     */
+    public AdaptiveReadPreferenceMongoInterceptor setReadYourWritesMs(long readYourWritesMs) {
+        this.readYourWritesMs = Math.max(0, readYourWritesMs);
+        return this;
+    }
+
+    /**
+     * @param slowFactor
+     *            从库平均耗时超过主库的多少倍算慢，默认 2
+     */
+    public AdaptiveReadPreferenceMongoInterceptor setSlowFactor(double slowFactor) {
+        this.slowFactor = slowFactor;
+        return this;
+    }
+
+    /**
+     * @param probeEvery
+     *            从库慢的时候，每多少次读仍然发一次给从库；从库不慢的时候，每多少次读发一次给主库。默认 20
+     */
+    public AdaptiveReadPreferenceMongoInterceptor setProbeEvery(int probeEvery) {
+        this.probeEvery = Math.max(1, probeEvery);
+        return this;
+    }
+
+    public void filter(MongoInterceptorChain<?> chain) {
+        MongoOperationInfo info = MongoOperations.describe(chain);
+        if (null == info) {
+            chain.doChain();
+            return;
+        }
+        String ns = info.getDatabase() + "." + info.getCollection();
+        if (null == chain.getReadOperation()) {
+            chain.doChain();
+            if (readYourWritesMs > 0)
+                wrote(ns);
+            return;
+        }
+        ReadPreference rp = decide(info, ns, chain.getReadPreference());
+        chain.setReadPreference(rp);
+        Latency lat = adaptives.get(ns);
+        Boolean toPrimary = pinned(rp);
+        if (null == lat || null == toPrimary) {
+            chain.doChain();
+            return;
+        }
+        long start = System.nanoTime();
+        chain.doChain();
+        lat.record(toPrimary, (System.nanoTime() - start) / 1000);
+    }
+
+    /**
+     * @return 读偏好是否固定读主库，不能确定读哪一方则返回 null
+     */
+    private static Boolean pinned(ReadPreference rp) {
+        String nm = rp.getName();
+        if ("primary".equals(nm))
+            return Boolean.TRUE;
+        if ("secondary".equals(nm))
+            return Boolean.FALSE;
+        return null;
+    }
+
+    private ReadPreference decide(MongoOperationInfo info, String ns, ReadPreference current) {
+        if (readYourWritesMs > 0 && recentlyWrote(ns))
+            return ReadPreference.primary();
+        ReadPreference rp = policies.get(ns);
+        if (null == rp)
+            rp = policies.get(info.getDatabase() + ".*");
+        if (null == rp)
+            return current;
+        Latency lat = adaptives.get(ns);
+        if (null == lat || !Boolean.FALSE.equals(pinned(rp)))
+            return rp;
+        // 从库慢时大部分读主库，只有探测的读从库；不慢时反过来
+        boolean probe = lat.reads.incrementAndGet() % probeEvery == 0;
+        if (lat.secondarySlow(slowFactor, 5) != probe)
+            return ReadPreference.primary();
+        return rp;
+    }
+
+    private void wrote(String ns) {
+        Map<String, Long> map = lastWrites.get();
+        if (null == map) {
+            map = new HashMap<String, Long>();
+            lastWrites.set(map);
+        }
+        long now = System.currentTimeMillis();
+        map.put(ns, now);
+        // 顺便清理过期的记录
+        if (map.size() > 16) {
+            Iterator<Long> it = map.values().iterator();
+            while (it.hasNext())
+                if (now - it.next() > readYourWritesMs)
+                    it.remove();
+        }
+    }
+
+    private boolean recentlyWrote(String ns) {
+        Map<String, Long> map = lastWrites.get();
+        if (null == map)
+            return false;
+        Long t = map.get(ns);
+        return null != t && System.currentTimeMillis() - t <= readYourWritesMs;
+    }
+}
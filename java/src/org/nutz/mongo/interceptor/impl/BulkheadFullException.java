@@ -0,0 +1,21 @@
+package org.nutz.mongo.interceptor.impl;
+
+/**
+ * 舱壁已满，操作在等待超时后（或者等待队列已满）被拒绝
+ *
+ * @see BulkheadMongoInterceptor
+ */
+@SuppressWarnings("serial")
+public class BulkheadFullException extends RuntimeException {
+
+    private String key;
+
+    public BulkheadFullException(String key, String reason) {
+        super("bulkhead full : " + key + " : " + reason);
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
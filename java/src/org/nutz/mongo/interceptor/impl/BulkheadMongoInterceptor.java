@@ -0,0 +1,305 @@
+package org.nutz.mongo.interceptor.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nutz.lang.util.Closer;
+import org.nutz.lang.util.Context;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.interceptor.MongoOperationInfo;
+import org.nutz.mongo.interceptor.MongoOperations;
+
+import com.mongodb.operation.BatchCursor;
+
+/**
+ * 舱壁隔离，限制某个集合（或者某个标签）同时在执行的操作数，防止一类慢操作占满连接池
+ * <p>
+ * 操作归属的键按以下顺序决定:
+ * <ol>
+ * <li>拦截链上下文中的 CTX_TAG，由排在前面的拦截器设置
+ * <li>当前线程的标签，通过 BulkheadMongoInterceptor.tag(name, closer) 设置
+ * <li>"db.collection"
+ * </ol>
+ * 只有调用过 limit 的键，或者设置了默认并发数时，才会被限制。 查询的许可会一直占用到游标关闭或者读完，所以长时间打开的游标也计入并发数
+ *
+ * <pre>
+ * BulkheadMongoInterceptor bh = new BulkheadMongoInterceptor();
+ * bh.limit("report", 4).limit("mydb.session", 64);
+ * ...
+ * BulkheadMongoInterceptor.tag("report", new Closer&lt;List&lt;Pet&gt;&gt;() {
+ *     public List&lt;Pet&gt; invoke() {
+ *         return ...;
+ *     }
+ * });
+ * </pre>
+ */
+public class BulkheadMongoInterceptor implements MongoInterceptor {
+
+    /**
+     * 拦截链上下文中标签的名称
+     */
+    public static final String CTX_TAG = "bulkhead.tag";
+
+    private static ThreadLocal<String> _tags_ = new ThreadLocal<String>();
+
+    /**
+     * 在当前线程上用某个标签执行一段代码
+     * <p>
+     * 标签是线程变量，通过 ZMongo.submit 和 ZMoScope.fork 提交的任务会自动带上提交时的标签，自己提交到其他线程池的任务请用 wrap 包裹一下
+     */
+    public static <T> T tag(String tag, Closer<T> closer) {
+        String old = _tags_.get();
+        _tags_.set(tag);
+        try {
+            return closer.invoke();
+        }
+        finally {
+            if (null == old)
+                _tags_.remove();
+            else
+                _tags_.set(old);
+        }
+    }
+
+    /**
+     * @return 当前线程的标签，没有则为 null
+     */
+    public static String currentTag() {
+        return _tags_.get();
+    }
+
+    /**
+     * 包裹一个任务，让它在执行的线程上带上当前线程的标签
+     *
+     * @param task
+     *            任务
+     * @return 包裹后的任务，当前线程没有标签时原样返回
+     */
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        final String tag = _tags_.get();
+        if (null == tag)
+            return task;
+        return new Callable<T>() {
+            public T call() throws Exception {
+                String old = _tags_.get();
+                _tags_.set(tag);
+                try {
+                    return task.call();
+                }
+                finally {
+                    if (null == old)
+                        _tags_.remove();
+                    else
+                        _tags_.set(old);
+                }
+            }
+        };
+    }
+
+    private static class Bulkhead {
+        Semaphore permits;
+        int max;
+        AtomicInteger waiting = new AtomicInteger();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong timeouts = new AtomicLong();
+
+        Bulkhead(int max) {
+            this.max = max;
+            this.permits = new Semaphore(max, true);
+        }
+    }
+
+    private ConcurrentHashMap<String, Bulkhead> bulkheads;
+
+    private int defaultLimit;
+
+    private long waitMs;
+
+    private int maxWaiting;
+
+    private AtomicLong rejected;
+
+    public BulkheadMongoInterceptor() {
+        bulkheads = new ConcurrentHashMap<String, Bulkhead>();
+        waitMs = 1000;
+        maxWaiting = Integer.MAX_VALUE;
+        rejected = new AtomicLong();
+    }
+
+    /**
+     * 限制某个键的并发数
+     *
+     * @param key
+     *            标签，或者 "db.collection"
+     * @param maxConcurrent
+     *            最多同时执行的操作数
+     * @return 自身
+     */
+    public BulkheadMongoInterceptor limit(String key, int maxConcurrent) {
+        bulkheads.put(key, new Bulkhead(Math.max(1, maxConcurrent)));
+        return this;
+    }
+
+    /**
+     * @param defaultLimit
+     *            没有单独设置过的键的并发数，0 表示不限制，默认 0
+     */
+    public BulkheadMongoInterceptor setDefaultLimit(int defaultLimit) {
+        this.defaultLimit = Math.max(0, defaultLimit);
+        return this;
+    }
+
+    /**
+     * @param waitMs
+     *            没有空位时最多等待的毫秒数，0 表示不等待，默认 1000
+     */
+    public BulkheadMongoInterceptor setWaitMs(long waitMs) {
+        this.waitMs = Math.max(0, waitMs);
+        return this;
+    }
+
+    /**
+     * @param maxWaiting
+     *            每个键最多允许多少个操作在排队，超过的直接拒绝，默认不限
+     */
+    public BulkheadMongoInterceptor setMaxWaiting(int maxWaiting) {
+        this.maxWaiting = Math.max(0, maxWaiting);
+        return this;
+    }
+
+    /**
+     * @return 全部被拒绝的操作数
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return 某个键被拒绝的操作数
+     */
+    public long getRejected(String key) {
+        Bulkhead bh = bulkheads.get(key);
+        return null == bh ? 0 : bh.rejected.get();
+    }
+
+    /**
+     * @return 某个键当前正在执行的操作数
+     */
+    public int getInFlight(String key) {
+        Bulkhead bh = bulkheads.get(key);
+        return null == bh ? 0 : bh.max - bh.permits.availablePermits();
+    }
+
+    /**
+     * @return 每个键一行的状态报告
+     */
+    public List<String> report() {
+        List<String> keys = new ArrayList<String>(bulkheads.keySet());
+        Collections.sort(keys);
+        List<String> list = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            Bulkhead bh = bulkheads.get(key);
+            list.add(String.format("%s : inflight=%d/%d waiting=%d rejected=%d timeouts=%d",
+                                   key,
+                                   bh.max - bh.permits.availablePermits(),
+                                   bh.max,
+                                   bh.waiting.get(),
+                                   bh.rejected.get(),
+                                   bh.timeouts.get()));
+        }
+        return list;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void filter(MongoInterceptorChain<?> chain) {
+        String key = keyOf(chain);
+        Bulkhead bh = null == key ? null : bulkheadOf(key);
+        if (null == bh) {
+            chain.doChain();
+            return;
+        }
+        acquire(key, bh);
+        boolean hold = false;
+        try {
+            chain.doChain();
+            // 查询返回的是游标，许可要一直占到游标关闭或者读完，后续的 getMore 才在限制之内
+            Object re = chain.getResult();
+            if (re instanceof BatchCursor) {
+                hold = true;
+                setResult(chain, new PermitBatchCursor((BatchCursor) re, bh.permits));
+            }
+        }
+        finally {
+            if (!hold)
+                bh.permits.release();
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void setResult(MongoInterceptorChain chain, Object re) {
+        chain.setResult(re);
+    }
+
+    private void acquire(String key, Bulkhead bh) {
+        if (bh.permits.tryAcquire())
+            return;
+        if (waitMs <= 0)
+            throw reject(key, bh, "no permit");
+        if (bh.waiting.incrementAndGet() > maxWaiting) {
+            bh.waiting.decrementAndGet();
+            throw reject(key, bh, "queue full");
+        }
+        try {
+            if (!bh.permits.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+                bh.timeouts.incrementAndGet();
+                throw reject(key, bh, "wait " + waitMs + "ms timeout");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject(key, bh, "interrupted");
+        }
+        finally {
+            bh.waiting.decrementAndGet();
+        }
+    }
+
+    private BulkheadFullException reject(String key, Bulkhead bh, String reason) {
+        bh.rejected.incrementAndGet();
+        rejected.incrementAndGet();
+        return new BulkheadFullException(key, reason);
+    }
+
+    private String keyOf(MongoInterceptorChain<?> chain) {
+        Context ctx = chain.peekContext();
+        if (null != ctx) {
+            Object tag = ctx.get(CTX_TAG);
+            if (null != tag)
+                return tag.toString();
+        }
+        String tag = _tags_.get();
+        if (null != tag)
+            return tag;
+        MongoOperationInfo info = MongoOperations.describe(chain);
+        return null == info ? null : info.getDatabase() + "." + info.getCollection();
+    }
+
+    private Bulkhead bulkheadOf(String key) {
+        Bulkhead bh = bulkheads.get(key);
+        if (null == bh && defaultLimit > 0) {
+            bh = new Bulkhead(defaultLimit);
+            Bulkhead old = bulkheads.putIfAbsent(key, bh);
+            if (null != old)
+                bh = old;
+        }
+        return bh;
+    }
+}
@@ -0,0 +1,462 @@
+package org.nutz.mongo.interceptor.impl;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonElement;
+import org.bson.BsonValue;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.interceptor.MongoOperationInfo;
+import org.nutz.mongo.interceptor.MongoOperations;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CursorType;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.operation.AggregateOperation;
+import com.mongodb.operation.BatchCursor;
+import com.mongodb.operation.CommandReadOperation;
+import com.mongodb.operation.FindOperation;
+
+/**
+ * 客户端的查询结果缓存，适合那些读多写少，查询条件又高度重复的集合，比如配置数据
+ * <p>
+ * 只缓存显式声明过的集合:
+ *
+ * <pre>
+ * CachingMongoInterceptor cache = new CachingMongoInterceptor(10000);
+ * cache.cache("mydb", "config", 60000).cache("mydb", "dict", 300000);
+ * ZMoDB db = mongo.db("mydb", Lang.list((MongoInterceptor) cache));
+ * </pre>
+ *
+ * <ul>
+ * <li>缓存的键为 集合 + 查询条件 + 字段 + 排序 + skip/limit + 解码器 + 读偏好
+ * <li>按 LRU 淘汰，分段加锁
+ * <li>经过同一个 ZOperationExecutor 的写操作会让对应集合的缓存全部失效，写命令会让全部缓存失效。
+ * 带 $out/$merge 的聚合会让目标集合的缓存失效
+ * <li>其他进程或者其他 ZMongo 实例的写入感知不到，只能靠过期时间兜底
+ * <li>命中时直接返回，排在本拦截器后面的拦截器不会被调用
+ * <li>返回的 DBObject/BsonDocument 是缓存的拷贝，可以随意修改。
+ * 只有 BasicDBObject 和 BsonDocument 能安全的拷贝，结果里有其他类型的文档 (比如自定义的 objectClass，懒加载的文档) 就不缓存
+ * </ul>
+ */
+public class CachingMongoInterceptor implements MongoInterceptor {
+
+    private static final int SEGMENTS = 16;
+
+    private static Field cr_decoder;
+    static {
+        try {
+            cr_decoder = CommandReadOperation.class.getDeclaredField("decoder");
+            cr_decoder.setAccessible(true);
+        }
+        catch (Exception e) {
+            cr_decoder = null;
+        }
+    }
+
+    private static class Entry {
+        Object value;
+        boolean cursor;
+        ServerAddress address;
+        long gen;
+        long globalGen;
+        long expireAt;
+    }
+
+    @SuppressWarnings("serial")
+    private static class Segment extends LinkedHashMap<String, Entry> {
+        private int max;
+
+        Segment(int max) {
+            super(16, 0.75f, true);
+            this.max = max;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > max;
+        }
+    }
+
+    private Segment[] segments;
+
+    private ConcurrentHashMap<String, Long> ttls;
+
+    private ConcurrentHashMap<String, AtomicLong> gens;
+
+    private AtomicLong globalGen;
+
+    private int maxDocs;
+
+    private AtomicLong hits;
+
+    private AtomicLong misses;
+
+    private AtomicLong invalidations;
+
+    public CachingMongoInterceptor() {
+        this(10000);
+    }
+
+    /**
+     * @param maxEntries
+     *            最多缓存多少个查询结果
+     */
+    public CachingMongoInterceptor(int maxEntries) {
+        segments = new Segment[SEGMENTS];
+        int per = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(per);
+        ttls = new ConcurrentHashMap<String, Long>();
+        gens = new ConcurrentHashMap<String, AtomicLong>();
+        globalGen = new AtomicLong();
+        maxDocs = 1000;
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        invalidations = new AtomicLong();
+    }
+
+    /**
+     * 声明某个集合需要缓存
+     *
+     * @param db
+     *            数据库名
+     * @param collection
+     *            集合名，"*" 表示该数据库下全部集合
+     * @param ttl
+     *            缓存的毫秒数
+     * @return 自身
+     */
+    public CachingMongoInterceptor cache(String db, String collection, long ttl) {
+        ttls.put(db + "." + collection, ttl);
+        return this;
+    }
+
+    /**
+     * @param maxDocs
+     *            一个查询最多缓存多少条文档，超过的不缓存，默认 1000
+     */
+    public CachingMongoInterceptor setMaxDocs(int maxDocs) {
+        this.maxDocs = Math.max(1, maxDocs);
+        return this;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public int size() {
+        int n = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                n += seg.size();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 让某个集合的缓存全部失效
+     */
+    public void invalidate(String db, String collection) {
+        genOf(db + "." + collection).incrementAndGet();
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * 清空全部缓存
+     */
+    public void clear() {
+        globalGen.incrementAndGet();
+        invalidations.incrementAndGet();
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                seg.clear();
+            }
+        }
+    }
+
+    public void filter(MongoInterceptorChain<?> chain) {
+        if (null == chain.getReadOperation()) {
+            write(chain);
+            return;
+        }
+        Object op = chain.getReadOperation();
+        MongoOperationInfo info = MongoOperations.describe(op);
+        Long ttl = ttlOf(info);
+        // 没声明缓存的集合直接放行，只有聚合才可能借 $out/$merge 写到别的集合里
+        if (null == ttl && !info.isCommand() && !(op instanceof AggregateOperation)) {
+            chain.doChain();
+            return;
+        }
+        // 带 $out/$merge 的聚合其实是写操作
+        if (null != outOf(info)) {
+            write(chain);
+            return;
+        }
+        String ns = info.getDatabase() + "." + info.getCollection();
+        String key = null == ttl ? null : keyOf(ns, op, chain.getReadPreference());
+        if (null == key) {
+            chain.doChain();
+            return;
+        }
+        Segment seg = segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+        // 先记下执行前的版本，执行期间如果有写入，存进去的结果就直接是过期的
+        long gen = genOf(ns).get();
+        long g0 = globalGen.get();
+        Entry en;
+        synchronized (seg) {
+            en = seg.get(key);
+        }
+        if (null != en
+            && en.gen == gen
+            && en.globalGen == g0
+            && en.expireAt > System.currentTimeMillis()) {
+            hits.incrementAndGet();
+            hit(chain, en);
+            return;
+        }
+        misses.incrementAndGet();
+        chain.doChain();
+
+        en = new Entry();
+        en.gen = gen;
+        en.globalGen = g0;
+        en.expireAt = System.currentTimeMillis() + ttl;
+        if (!fill(chain, en))
+            return;
+        synchronized (seg) {
+            seg.put(key, en);
+        }
+    }
+
+    private void write(MongoInterceptorChain<?> chain) {
+        MongoOperationInfo info = MongoOperations.describe(chain);
+        if (null == info) {
+            chain.doChain();
+            return;
+        }
+        String out = outOf(info);
+        boolean all = "*".equals(out)
+                      || (null == out && (info.isCommand() || "?".equals(info.getCollection())));
+        String ns = info.getDatabase() + "." + info.getCollection();
+        // 写之前和写之后各作废一次，避免并发的读在写入期间把旧数据放进缓存
+        if (all) {
+            globalGen.incrementAndGet();
+        } else {
+            genOf(ns).incrementAndGet();
+            if (null != out)
+                genOf(out).incrementAndGet();
+        }
+        try {
+            chain.doChain();
+        }
+        finally {
+            if (all) {
+                clear();
+            } else {
+                invalidate(info.getDatabase(), info.getCollection());
+                if (null != out) {
+                    genOf(out).incrementAndGet();
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 聚合管道最后的 $out/$merge 阶段写入的 "db.collection"，认不出目标时返回 "*"，没有则返回 null
+     */
+    static String outOf(MongoOperationInfo info) {
+        BsonDocument q = info.getQuery();
+        if (null == q || !q.isArray("pipeline"))
+            return null;
+        BsonArray pipeline = q.getArray("pipeline");
+        if (pipeline.isEmpty() || !pipeline.get(pipeline.size() - 1).isDocument())
+            return null;
+        BsonDocument stage = pipeline.get(pipeline.size() - 1).asDocument();
+        BsonValue v = stage.get("$out");
+        if (null == v) {
+            v = stage.get("$merge");
+            // {$merge: {into: ...}}
+            if (null != v && v.isDocument())
+                v = v.asDocument().get("into");
+        }
+        if (null == v)
+            return null;
+        if (v.isString())
+            return info.getDatabase() + "." + v.asString().getValue();
+        // {db: "x", coll: "y"}
+        if (v.isDocument()) {
+            BsonDocument d = v.asDocument();
+            String db = d.isString("db") ? d.getString("db").getValue() : info.getDatabase();
+            if (d.isString("coll"))
+                return db + "." + d.getString("coll").getValue();
+        }
+        // 认不出目标，当作全部失效
+        return "*";
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private boolean fill(MongoInterceptorChain chain, Entry en) {
+        Object re = chain.getResult();
+        if (null == re)
+            return false;
+        if (!(re instanceof BatchCursor)) {
+            if (!copyable(re))
+                return false;
+            en.value = copy(re);
+            return true;
+        }
+        BatchCursor cur = (BatchCursor) re;
+        ServerAddress addr = cur.getServerAddress();
+        List<List> batches = new ArrayList<List>();
+        int n = 0;
+        while (cur.hasNext()) {
+            List batch = cur.next();
+            batches.add(batch);
+            n += batch.size();
+            // 太大了或者不能拷贝，不缓存，读过的几批连同剩下的游标还给调用者
+            if (n > maxDocs || !copyable(batch)) {
+                chain.setResult(new ReplayBatchCursor(batches, cur, addr));
+                return false;
+            }
+        }
+        cur.close();
+        en.cursor = true;
+        en.address = addr;
+        en.value = copyBatches(batches);
+        chain.setResult(new ReplayBatchCursor(batches, null, addr));
+        return true;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void hit(MongoInterceptorChain chain, Entry en) {
+        if (en.cursor)
+            chain.setResult(new ReplayBatchCursor(copyBatches((List<List>) en.value),
+                                                  null,
+                                                  en.address));
+        else
+            chain.setResult(copy(en.value));
+    }
+
+    private Long ttlOf(MongoOperationInfo info) {
+        Long ttl = ttls.get(info.getDatabase() + "." + info.getCollection());
+        if (null == ttl)
+            ttl = ttls.get(info.getDatabase() + ".*");
+        return ttl;
+    }
+
+    private AtomicLong genOf(String ns) {
+        AtomicLong gen = gens.get(ns);
+        if (null == gen) {
+            gen = new AtomicLong();
+            AtomicLong old = gens.putIfAbsent(ns, gen);
+            if (null != old)
+                gen = old;
+        }
+        return gen;
+    }
+
+    /**
+     * @return 缓存的键，不能缓存的操作返回 null
+     */
+    static String keyOf(String ns, Object op, ReadPreference rp) {
+        StringBuilder sb = new StringBuilder(ns);
+        sb.append("|rp:").append(rp);
+        if (op instanceof FindOperation) {
+            FindOperation<?> fo = (FindOperation<?>) op;
+            if (fo.getCursorType() != CursorType.NonTailable)
+                return null;
+            sb.append("|find|").append(fo.getDecoder().getClass().getName());
+            sb.append("|f:").append(normalize(fo.getFilter()));
+            sb.append("|p:").append(normalize(fo.getProjection()));
+            sb.append("|s:").append(fo.getSort());
+            sb.append("|m:").append(fo.getModifiers());
+            sb.append("|").append(fo.getSkip()).append("|").append(fo.getLimit());
+            return sb.toString();
+        }
+        if (op instanceof CommandReadOperation) {
+            sb.append("|cmd|");
+            if (null != cr_decoder) {
+                try {
+                    sb.append(cr_decoder.get(op).getClass().getName());
+                }
+                catch (Exception e) {
+                    return null;
+                }
+            }
+            sb.append("|").append(MongoOperations.describe(op).getQuery());
+            return sb.toString();
+        }
+        return null;
+    }
+
+    /**
+     * 顶层键的顺序不影响查询结果，排个序让等价的条件得到同一个键
+     */
+    static String normalize(BsonDocument doc) {
+        if (null == doc || doc.size() < 2)
+            return String.valueOf(doc);
+        TreeMap<String, BsonValue> map = new TreeMap<String, BsonValue>(doc);
+        List<BsonElement> list = new ArrayList<BsonElement>(map.size());
+        for (Map.Entry<String, BsonValue> en : map.entrySet())
+            list.add(new BsonElement(en.getKey(), en.getValue()));
+        return new BsonDocument(list).toString();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static List<List> copyBatches(List<List> batches) {
+        List<List> re = new ArrayList<List>(batches.size());
+        for (List batch : batches) {
+            List<Object> list = new ArrayList<Object>(batch.size());
+            for (Object o : batch)
+                list.add(copy(o));
+            re.add(list);
+        }
+        return re;
+    }
+
+    /**
+     * BasicDBObject.copy() 会深拷贝，但是返回的总是 BasicDBObject，所以它的子类也不能缓存
+     */
+    static boolean copyable(Object o) {
+        if (o instanceof List) {
+            for (Object e : (List<?>) o)
+                if (!copyable(e))
+                    return false;
+            return true;
+        }
+        return null == o
+               || o.getClass() == BasicDBObject.class
+               || o instanceof BsonDocument
+               || o instanceof String
+               || o instanceof Number
+               || o instanceof Boolean;
+    }
+
+    private static Object copy(Object o) {
+        if (o instanceof BasicDBObject)
+            return ((BasicDBObject) o).copy();
+        if (o instanceof BsonDocument)
+            return ((BsonDocument) o).clone();
+        return o;
+    }
+}
@@ -0,0 +1,404 @@
+package org.nutz.mongo.interceptor.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nutz.log.Log;
+import org.nutz.log.Logs;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.interceptor.MongoOperationInfo;
+import org.nutz.mongo.interceptor.MongoOperations;
+
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+
+/**
+ * 熔断器，按集合（或者集合+操作类型）统计最近一段时间的失败率和慢调用率，超过阈值就打开熔断， 之后的操作不再发给服务器，直接抛出 CircuitOpenException 或者返回 Fallback 给出的结果
+ * <p>
+ * 打开一段时间后进入半开状态，放几个探测请求过去，都成功了就关闭熔断，否则重新打开。
+ * 只有半开时放行的探测请求才会被计入，之前放行的调用晚些完成的结果会被忽略； 探测请求超过慢调用的阈值还没返回，就让出它占的名额
+ * <p>
+ * 应该把它放在拦截器列表的最后，这样它就紧挨着真正发给服务器的调用
+ */
+public class CircuitBreakerMongoInterceptor implements MongoInterceptor {
+
+    private static final Log log = Logs.get();
+
+    public static enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 熔断打开时的替代结果
+     */
+    public static interface Fallback {
+
+        /**
+         * @param chain
+         *            被拒绝的操作
+         * @param key
+         *            熔断的键
+         * @return 替代的结果，返回 null 则抛出 CircuitOpenException
+         */
+        Object fallback(MongoInterceptorChain<?> chain, String key);
+    }
+
+    private ConcurrentHashMap<String, Breaker> breakers;
+
+    private boolean byOperation;
+
+    private int windowSeconds;
+
+    private int minCalls;
+
+    private double failureRate;
+
+    private double slowRate;
+
+    private long slowMs;
+
+    private long openMs;
+
+    private int probes;
+
+    private Fallback fallback;
+
+    private AtomicLong rejected;
+
+    public CircuitBreakerMongoInterceptor() {
+        breakers = new ConcurrentHashMap<String, Breaker>();
+        windowSeconds = 10;
+        minCalls = 20;
+        failureRate = 0.5;
+        slowRate = 1.0;
+        slowMs = 1000;
+        openMs = 5000;
+        probes = 3;
+        rejected = new AtomicLong();
+    }
+
+    /**
+     * @param byOperation
+     *            true 表示按 集合+操作类型 分别熔断，默认 false 只按集合
+     */
+    public CircuitBreakerMongoInterceptor setByOperation(boolean byOperation) {
+        this.byOperation = byOperation;
+        return this;
+    }
+
+    /**
+     * @param windowSeconds
+     *            滑动窗口的秒数，默认 10
+     */
+    public CircuitBreakerMongoInterceptor setWindowSeconds(int windowSeconds) {
+        this.windowSeconds = Math.max(1, windowSeconds);
+        return this;
+    }
+
+    /**
+     * @param minCalls
+     *            窗口内至少多少次调用才开始判断，默认 20
+     */
+    public CircuitBreakerMongoInterceptor setMinCalls(int minCalls) {
+        this.minCalls = Math.max(1, minCalls);
+        return this;
+    }
+
+    /**
+     * @param failureRate
+     *            失败率达到多少就打开熔断，默认 0.5
+     */
+    public CircuitBreakerMongoInterceptor setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * @param slowMs
+     *            超过多少毫秒算慢调用，默认 1000
+     * @param slowRate
+     *            慢调用率达到多少就打开熔断，默认 1.0 即窗口内全部都慢才熔断
+     */
+    public CircuitBreakerMongoInterceptor setSlow(long slowMs, double slowRate) {
+        this.slowMs = slowMs;
+        this.slowRate = slowRate;
+        return this;
+    }
+
+    /**
+     * @param openMs
+     *            熔断打开多少毫秒后进入半开状态，默认 5000
+     */
+    public CircuitBreakerMongoInterceptor setOpenMs(long openMs) {
+        this.openMs = openMs;
+        return this;
+    }
+
+    /**
+     * @param probes
+     *            半开状态下放行的探测请求数，全部成功才关闭熔断，默认 3
+     */
+    public CircuitBreakerMongoInterceptor setProbes(int probes) {
+        this.probes = Math.max(1, probes);
+        return this;
+    }
+
+    public CircuitBreakerMongoInterceptor setFallback(Fallback fallback) {
+        this.fallback = fallback;
+        return this;
+    }
+
+    /**
+     * @return 被熔断拒绝的操作总数
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return 某个键当前的状态
+     */
+    public State getState(String key) {
+        Breaker b = breakers.get(key);
+        return null == b ? State.CLOSED : b.state(now());
+    }
+
+    /**
+     * @return 全部键的状态，按键排序
+     */
+    public Map<String, State> getStates() {
+        long now = now();
+        Map<String, State> map = new LinkedHashMap<String, State>();
+        for (Map.Entry<String, Breaker> en : new TreeMap<String, Breaker>(breakers).entrySet())
+            map.put(en.getKey(), en.getValue().state(now));
+        return map;
+    }
+
+    /**
+     * 强制把全部熔断器恢复成关闭状态
+     */
+    public void reset() {
+        breakers.clear();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void filter(MongoInterceptorChain<?> chain) {
+        MongoOperationInfo info = MongoOperations.describe(chain);
+        if (null == info) {
+            chain.doChain();
+            return;
+        }
+        String key = byOperation ? info.getKey()
+                                 : info.getDatabase() + "." + info.getCollection();
+        Breaker b = breakerOf(key);
+        Ticket t = b.acquire(now());
+        if (null == t) {
+            rejected.incrementAndGet();
+            Object re = null == fallback ? null : fallback.fallback(chain, key);
+            if (null == re)
+                throw new CircuitOpenException(key);
+            ((MongoInterceptorChain) chain).setResult(re);
+            return;
+        }
+        boolean failure = false;
+        try {
+            chain.doChain();
+        }
+        catch (RuntimeException e) {
+            failure = isFailure(e);
+            throw e;
+        }
+        finally {
+            long now = now();
+            State old = b.state;
+            State st = b.record(now, t, failure, now - t.at >= slowMs);
+            if (old != st)
+                log.warnf("circuit %s : %s -> %s", key, old, st);
+        }
+    }
+
+    /**
+     * @return 当前的毫秒数，测试时可以覆盖成假的时钟
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 判断一个异常是否说明服务器有问题。业务上的错误（比如主键冲突）不算
+     */
+    protected boolean isFailure(RuntimeException e) {
+        return e instanceof MongoSocketException
+               || e instanceof MongoTimeoutException
+               || e instanceof MongoExecutionTimeoutException;
+    }
+
+    private Breaker breakerOf(String key) {
+        Breaker b = breakers.get(key);
+        if (null == b) {
+            b = new Breaker(windowSeconds, probes);
+            Breaker old = breakers.putIfAbsent(key, b);
+            if (null != old)
+                b = old;
+        }
+        return b;
+    }
+
+    /**
+     * 一次放行的凭据，记下放行时的代数，熔断器每次切换状态代数都会加一
+     */
+    private static class Ticket {
+        long gen;
+        /**
+         * 探测请求占的名额下标，-1 表示不是探测请求
+         */
+        int slot;
+        long at;
+
+        Ticket(long gen, int slot, long at) {
+            this.gen = gen;
+            this.slot = slot;
+            this.at = at;
+        }
+    }
+
+    /**
+     * 一个键的熔断器，滑动窗口按秒分桶
+     */
+    private class Breaker {
+
+        volatile State state;
+
+        private long gen;
+
+        private long openedAt;
+
+        /**
+         * 每个探测名额被占用的凭据，null 表示空闲
+         */
+        private Ticket[] probing;
+
+        private int probeOk;
+
+        private long[] seconds;
+
+        private int[] calls;
+
+        private int[] fails;
+
+        private int[] slows;
+
+        Breaker(int n, int probes) {
+            state = State.CLOSED;
+            probing = new Ticket[probes];
+            seconds = new long[n];
+            calls = new int[n];
+            fails = new int[n];
+            slows = new int[n];
+        }
+
+        synchronized State state(long now) {
+            if (State.OPEN == state && now - openedAt >= openMs)
+                return State.HALF_OPEN;
+            return state;
+        }
+
+        /**
+         * @return 放行的凭据，null 表示拒绝
+         */
+        synchronized Ticket acquire(long now) {
+            switch (state) {
+            case CLOSED:
+                return new Ticket(gen, -1, now);
+            case OPEN:
+                if (now - openedAt < openMs)
+                    return null;
+                transit(State.HALF_OPEN);
+            default:
+                for (int i = 0; i < probing.length; i++) {
+                    Ticket p = probing[i];
+                    // 空闲的名额，或者探测太久还没返回的名额
+                    if (null == p || now - p.at >= slowMs) {
+                        probing[i] = new Ticket(gen, i, now);
+                        return probing[i];
+                    }
+                }
+                return null;
+            }
+        }
+
+        synchronized State record(long now, Ticket t, boolean failure, boolean slow) {
+            // 放行之后状态已经变过了，结果作废
+            if (t.gen != gen)
+                return state;
+            if (State.HALF_OPEN == state) {
+                if (t.slot < 0)
+                    return state;
+                if (probing[t.slot] == t)
+                    probing[t.slot] = null;
+                if (failure || slow) {
+                    open(now);
+                } else if (++probeOk >= probing.length) {
+                    transit(State.CLOSED);
+                    clearWindow();
+                }
+                return state;
+            }
+            if (State.OPEN == state)
+                return state;
+
+            long sec = now / 1000;
+            int i = (int) (sec % seconds.length);
+            if (seconds[i] != sec) {
+                seconds[i] = sec;
+                calls[i] = 0;
+                fails[i] = 0;
+                slows[i] = 0;
+            }
+            calls[i]++;
+            if (failure)
+                fails[i]++;
+            if (slow)
+                slows[i]++;
+
+            int c = 0, f = 0, s = 0;
+            for (int j = 0; j < seconds.length; j++) {
+                if (sec - seconds[j] < seconds.length) {
+                    c += calls[j];
+                    f += fails[j];
+                    s += slows[j];
+                }
+            }
+            if (c >= minCalls && ((double) f / c >= failureRate || (double) s / c >= slowRate))
+                open(now);
+            return state;
+        }
+
+        private void open(long now) {
+            transit(State.OPEN);
+            openedAt = now;
+        }
+
+        private void transit(State st) {
+            state = st;
+            gen++;
+            probeOk = 0;
+            for (int i = 0; i < probing.length; i++)
+                probing[i] = null;
+        }
+
+        private void clearWindow() {
+            for (int j = 0; j < seconds.length; j++) {
+                seconds[j] = 0;
+                calls[j] = 0;
+                fails[j] = 0;
+                slows[j] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.nutz.mongo.interceptor.impl;
+
+/**
+ * 熔断器处于打开状态，操作没有发给服务器就直接失败了
+ *
+ * @see CircuitBreakerMongoInterceptor
+ */
+@SuppressWarnings("serial")
+public class CircuitOpenException extends RuntimeException {
+
+    private String key;
+
+    public CircuitOpenException(String key) {
+        super("circuit open : " + key);
+        this.key = key;
+    }
+
+    /**
+     * @return 熔断的键，"db.collection" 或者 "db.collection#name"
+     */
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,78 @@
+package org.nutz.mongo.interceptor.impl;
+
+import java.util.List;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.operation.BatchCursor;
+
+/**
+ * 包裹驱动返回的游标，在取回每一批数据时统计文档数（以及可选的字节数）
+ */
+class CountingBatchCursor<T> implements BatchCursor<T> {
+
+    private BatchCursor<T> cursor;
+
+    private OpMetrics metrics;
+
+    private boolean countBytes;
+
+    CountingBatchCursor(BatchCursor<T> cursor, OpMetrics metrics, boolean countBytes) {
+        this.cursor = cursor;
+        this.metrics = metrics;
+        this.countBytes = countBytes;
+    }
+
+    public void close() {
+        cursor.close();
+    }
+
+    public boolean hasNext() {
+        return cursor.hasNext();
+    }
+
+    public List<T> next() {
+        return count(cursor.next());
+    }
+
+    public List<T> tryNext() {
+        return count(cursor.tryNext());
+    }
+
+    public void setBatchSize(int batchSize) {
+        cursor.setBatchSize(batchSize);
+    }
+
+    public int getBatchSize() {
+        return cursor.getBatchSize();
+    }
+
+    public ServerCursor getServerCursor() {
+        return cursor.getServerCursor();
+    }
+
+    public ServerAddress getServerAddress() {
+        return cursor.getServerAddress();
+    }
+
+    public void remove() {
+        cursor.remove();
+    }
+
+    private List<T> count(List<T> list) {
+        if (null != list && !list.isEmpty()) {
+            long bytes = 0;
+            if (countBytes) {
+                BasicBSONEncoder enc = new BasicBSONEncoder();
+                for (T o : list)
+                    if (o instanceof BSONObject)
+                        bytes += enc.encode((BSONObject) o).length;
+            }
+            metrics.returned(list.size(), bytes);
+        }
+        return list;
+    }
+}
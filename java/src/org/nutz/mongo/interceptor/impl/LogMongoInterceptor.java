@@ -3,21 +3,45 @@ package org.nutz.mongo.interceptor.impl;
 import java.lang.reflect.Field;
 
 import org.bson.BsonDocument;
+import org.bson.BsonValue;
 import org.nutz.log.Log;
 import org.nutz.log.Logs;
 import org.nutz.mongo.interceptor.MongoInterceptor;
 import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.interceptor.MongoOperationInfo;
+import org.nutz.mongo.interceptor.MongoOperations;
 
 import com.mongodb.operation.CommandReadOperation;
 import com.mongodb.operation.CommandWriteOperation;
 
+/**
+ * 在 debug 级别输出每个操作，格式为 "R : db=xxx : cmd=xxx"
+ * <p>
+ * 命令的 cmd 是命令第一个键的值（通常是集合名），其他操作是 "操作名(集合名)"，比如 "Find(pet)"
+ */
 public class LogMongoInterceptor implements MongoInterceptor {
 
     protected static final Log log = Logs.get();
 
+    /**
+     * @deprecated 操作信息已经改由 MongoOperations 获取，这几个字段只为兼容子类而保留
+     */
+    @Deprecated
     protected static Field cr_command;
+    /**
+     * @deprecated 同 cr_command
+     */
+    @Deprecated
     protected static Field cr_databaseName;
+    /**
+     * @deprecated 同 cr_command
+     */
+    @Deprecated
     protected static Field cw_command;
+    /**
+     * @deprecated 同 cr_command
+     */
+    @Deprecated
     protected static Field cw_databaseName;
     static {
         try {
@@ -25,44 +49,56 @@ public class LogMongoInterceptor implements MongoInterceptor {
             cw_command = CommandWriteOperation.class.getDeclaredField("command");
             cr_databaseName = CommandReadOperation.class.getDeclaredField("databaseName");
             cw_databaseName = CommandWriteOperation.class.getDeclaredField("databaseName");
-            
+
             cr_command.setAccessible(true);
             cw_command.setAccessible(true);
             cr_databaseName.setAccessible(true);
             cw_databaseName.setAccessible(true);
         }
         catch (Exception e) {
-            throw new RuntimeException(e);
+            // 本类已经不用它们了，驱动改了字段名也不影响日志
+            log.debug("fail to access command fields", e);
         }
     }
 
-    @SuppressWarnings("rawtypes")
+    private boolean redact;
+
+    /**
+     * @param redact
+     *            命令第一个键的值是文档或者数组时，是否把里面的值都换成 "?"，只保留结构，默认 false
+     */
+    public LogMongoInterceptor setRedact(boolean redact) {
+        this.redact = redact;
+        return this;
+    }
+
     public void filter(MongoInterceptorChain<?> chain) {
         if (log.isDebugEnabled()) {
             try {
-                BsonDocument command = null;
-                String databaseName = "";
-                String tag = "";
-                if (chain.getReadOperation() != null && chain.getReadOperation() instanceof CommandReadOperation) {
-                    CommandReadOperation cr = (CommandReadOperation)chain.getReadOperation();
-                    command = (BsonDocument) cr_command.get(cr);
-                    databaseName = (String) cr_databaseName.get(cr);
-                    tag = "R";
-                } else if (chain.getWriteOperation() != null && chain.getWriteOperation() instanceof CommandWriteOperation) {
-                    CommandWriteOperation cr = (CommandWriteOperation)chain.getReadOperation();
-                    command = (BsonDocument) cw_command.get(cr);
-                    databaseName = (String) cw_databaseName.get(cr);
-                    tag = "W";
-                }
-                if (command != null) {
-                    log.debugf("%s : db=%s : cmd=%s", tag, databaseName, command.values().iterator().next());
-                }
+                MongoOperationInfo info = MongoOperations.describe(chain);
+                if (info != null)
+                    log.debug(message(chain, info));
             }
             catch (Exception e) {
-                e.printStackTrace();
+                log.debug("fail to describe operation", e);
             }
         }
         chain.doChain();
     }
 
+    String message(MongoInterceptorChain<?> chain, MongoOperationInfo info) {
+        Object cmd;
+        BsonDocument query = info.getQuery();
+        if (info.isCommand() && null != query && !query.isEmpty()) {
+            BsonValue v = query.values().iterator().next();
+            cmd = redact && (v.isDocument() || v.isArray()) ? MongoOperations.redact(v) : v;
+        } else {
+            cmd = info.getName() + "(" + info.getCollection() + ")";
+        }
+        return String.format("%s : db=%s : cmd=%s",
+                             chain.getReadOperation() != null ? "R" : "W",
+                             info.getDatabase(),
+                             cmd);
+    }
+
 }
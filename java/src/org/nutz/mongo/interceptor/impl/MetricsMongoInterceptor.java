@@ -0,0 +1,183 @@
+package org.nutz.mongo.interceptor.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.nutz.lang.Lang;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.interceptor.MongoOperationInfo;
+import org.nutz.mongo.interceptor.MongoOperations;
+
+import com.mongodb.operation.BatchCursor;
+
+/**
+ * 按 数据库/集合/操作类型 统计耗时，错误数，返回的文档数和字节数
+ * <p>
+ * 用法:
+ *
+ * <pre>
+ * MetricsMongoInterceptor metrics = new MetricsMongoInterceptor();
+ * ZMoDB db = mongo.db("abc", Lang.list((MongoInterceptor) metrics));
+ * ...
+ * for (OpMetrics.Snapshot sn : metrics.snapshot().values())
+ *     System.out.println(sn);
+ * </pre>
+ *
+ * 耗时只包括操作本身（对于查询就是第一批数据），游标后续的 getMore 不计入，但取回的文档数会一直累加
+ */
+public class MetricsMongoInterceptor implements MongoInterceptor, MetricsMongoInterceptorMBean {
+
+    private ConcurrentHashMap<String, OpMetrics> metrics;
+
+    private boolean countBytes;
+
+    public MetricsMongoInterceptor() {
+        this.metrics = new ConcurrentHashMap<String, OpMetrics>();
+    }
+
+    /**
+     * @param countBytes
+     *            是否统计返回的字节数。驱动不提供原始大小，需要把文档重新编码一次，比较耗费，默认关闭
+     * @return 自身
+     */
+    public MetricsMongoInterceptor setCountBytes(boolean countBytes) {
+        this.countBytes = countBytes;
+        return this;
+    }
+
+    public boolean isCountBytes() {
+        return countBytes;
+    }
+
+    public void filter(MongoInterceptorChain<?> chain) {
+        MongoOperationInfo info = MongoOperations.describe(chain);
+        if (null == info) {
+            chain.doChain();
+            return;
+        }
+        OpMetrics m = metricsOf(info);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            chain.doChain();
+            error = false;
+        }
+        finally {
+            m.record((System.nanoTime() - start) / 1000, error);
+        }
+        wrapResult(chain, m);
+    }
+
+    /**
+     * 取得某一项的统计数据
+     *
+     * @return 统计数据，没有则为 null
+     */
+    public OpMetrics get(String db, String collection, String type) {
+        return metrics.get(keyOf(db, collection, type));
+    }
+
+    /**
+     * @return 全部统计项的快照，按键排序
+     */
+    public Map<String, OpMetrics.Snapshot> snapshot() {
+        List<String> keys = new ArrayList<String>(metrics.keySet());
+        Collections.sort(keys);
+        Map<String, OpMetrics.Snapshot> map = new LinkedHashMap<String, OpMetrics.Snapshot>();
+        for (String key : keys) {
+            OpMetrics m = metrics.get(key);
+            if (null != m)
+                map.put(key, m.snapshot());
+        }
+        return map;
+    }
+
+    public String[] getKeys() {
+        String[] keys = metrics.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    public String[] getReport() {
+        Map<String, OpMetrics.Snapshot> map = snapshot();
+        String[] re = new String[map.size()];
+        int i = 0;
+        for (OpMetrics.Snapshot sn : map.values())
+            re[i++] = sn.toString();
+        return re;
+    }
+
+    public long getTotalCount() {
+        long n = 0;
+        for (OpMetrics m : metrics.values())
+            n += m.getCount();
+        return n;
+    }
+
+    public long getTotalErrors() {
+        long n = 0;
+        for (OpMetrics m : metrics.values())
+            n += m.getErrors();
+        return n;
+    }
+
+    /**
+     * 清空全部统计数据
+     */
+    public void reset() {
+        metrics.clear();
+    }
+
+    /**
+     * 注册到平台的 MBeanServer，对象名为 "org.nutz.mongo:type=Metrics,name=${name}"
+     *
+     * @return 自身
+     */
+    public MetricsMongoInterceptor registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName("org.nutz.mongo:type=Metrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(on))
+                server.unregisterMBean(on);
+            server.registerMBean(this, on);
+            return this;
+        }
+        catch (Exception e) {
+            throw Lang.wrapThrow(e);
+        }
+    }
+
+    protected OpMetrics metricsOf(MongoOperationInfo info) {
+        String key = info.getKey();
+        OpMetrics m = metrics.get(key);
+        if (null == m) {
+            m = new OpMetrics(info.getDatabase(), info.getCollection(), info.getName());
+            OpMetrics old = metrics.putIfAbsent(key, m);
+            if (null != old)
+                m = old;
+        }
+        return m;
+    }
+
+    private static String keyOf(String db, String collection, String type) {
+        return db + "." + collection + "#" + type;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void wrapResult(MongoInterceptorChain chain, OpMetrics m) {
+        Object re = chain.getResult();
+        if (re instanceof BatchCursor) {
+            chain.setResult(new CountingBatchCursor((BatchCursor) re, m, countBytes));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.nutz.mongo.interceptor.impl;
+
+/**
+ * MetricsMongoInterceptor 的 JMX 接口
+ */
+public interface MetricsMongoInterceptorMBean {
+
+    /**
+     * @return 全部统计项的键，格式为 "db.collection#type"
+     */
+    String[] getKeys();
+
+    /**
+     * @return 每个统计项一行的文本报告
+     */
+    String[] getReport();
+
+    long getTotalCount();
+
+    long getTotalErrors();
+
+    void reset();
+}
@@ -0,0 +1,265 @@
+package org.nutz.mongo.interceptor.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 某一个 数据库/集合/操作类型 的统计数据
+ * <p>
+ * 耗时记录在一个对数-线性分桶的直方图里（思路同 HdrHistogram）: 16 微秒以内每微秒一个桶，之后每个 2 的幂区间再均分 8 个桶， 相对误差不超过 12.5%，一共 480 个桶，记录时只有几次原子操作，不加锁
+ */
+public class OpMetrics {
+
+    private static final int SUB_BITS = 3;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private static final int LINEAR = SUB_COUNT << 1;
+
+    private static final long MAX_VALUE = (1L << 62) - 1;
+
+    static final int BUCKETS = LINEAR + (62 - SUB_BITS - 1) * SUB_COUNT;
+
+    private String db;
+
+    private String collection;
+
+    private String type;
+
+    private AtomicLongArray buckets;
+
+    private AtomicLong count;
+
+    private AtomicLong errors;
+
+    private AtomicLong totalMicros;
+
+    private AtomicLong maxMicros;
+
+    private AtomicLong docs;
+
+    private AtomicLong bytes;
+
+    public OpMetrics(String db, String collection, String type) {
+        this.db = db;
+        this.collection = collection;
+        this.type = type;
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.count = new AtomicLong();
+        this.errors = new AtomicLong();
+        this.totalMicros = new AtomicLong();
+        this.maxMicros = new AtomicLong();
+        this.docs = new AtomicLong();
+        this.bytes = new AtomicLong();
+    }
+
+    /**
+     * 记录一次操作
+     *
+     * @param micros
+     *            耗时（微秒）
+     * @param error
+     *            是否出错
+     */
+    public void record(long micros, boolean error) {
+        if (micros < 0)
+            micros = 0;
+        buckets.incrementAndGet(indexOf(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        if (error)
+            errors.incrementAndGet();
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros))
+            max = maxMicros.get();
+    }
+
+    /**
+     * 记录返回的文档数和字节数
+     */
+    public void returned(long docs, long bytes) {
+        if (docs > 0)
+            this.docs.addAndGet(docs);
+        if (bytes > 0)
+            this.bytes.addAndGet(bytes);
+    }
+
+    public String getDb() {
+        return db;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return 操作次数，直接读计数器，不需要做快照
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return 出错次数，直接读计数器，不需要做快照
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return 当前数据的一个快照，快照内各数值之间不保证严格一致
+     */
+    public Snapshot snapshot() {
+        Snapshot sn = new Snapshot();
+        sn.db = db;
+        sn.collection = collection;
+        sn.type = type;
+        sn.count = count.get();
+        sn.errors = errors.get();
+        sn.totalMicros = totalMicros.get();
+        sn.maxMicros = maxMicros.get();
+        sn.docs = docs.get();
+        sn.bytes = bytes.get();
+        sn.buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            sn.buckets[i] = buckets.get(i);
+        return sn;
+    }
+
+    /**
+     * 清空全部数据
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets.set(i, 0);
+        count.set(0);
+        errors.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+        docs.set(0);
+        bytes.set(0);
+    }
+
+    static int indexOf(long v) {
+        if (v < LINEAR)
+            return (int) v;
+        if (v > MAX_VALUE)
+            v = MAX_VALUE;
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (e - SUB_BITS)) & (SUB_COUNT - 1);
+        return LINEAR + (e - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * @return 桶内最大的值
+     */
+    static long upperOf(int index) {
+        if (index < LINEAR)
+            return index;
+        int e = (index - LINEAR) / SUB_COUNT + SUB_BITS + 1;
+        int sub = (index - LINEAR) % SUB_COUNT;
+        long width = 1L << (e - SUB_BITS);
+        return (SUB_COUNT + sub) * width + width - 1;
+    }
+
+    /**
+     * 统计快照
+     */
+    public static class Snapshot {
+
+        private String db;
+        private String collection;
+        private String type;
+        private long count;
+        private long errors;
+        private long totalMicros;
+        private long maxMicros;
+        private long docs;
+        private long bytes;
+        private long[] buckets;
+
+        public String getDb() {
+            return db;
+        }
+
+        public String getCollection() {
+            return collection;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getTotalMicros() {
+            return totalMicros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getMeanMicros() {
+            return count == 0 ? 0 : totalMicros / count;
+        }
+
+        public long getDocs() {
+            return docs;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @param p
+         *            百分位，如 0.99
+         * @return 对应百分位的耗时（微秒），取所在桶的上限，但不超过最大值
+         */
+        public long percentile(double p) {
+            long total = 0;
+            for (long n : buckets)
+                total += n;
+            if (total == 0)
+                return 0;
+            long rank = (long) Math.ceil(Math.min(Math.max(p, 0), 1) * total);
+            if (rank < 1)
+                rank = 1;
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank)
+                    return Math.min(upperOf(i), maxMicros);
+            }
+            return maxMicros;
+        }
+
+        public String toString() {
+            return String.format("%s.%s#%s count=%d err=%d mean=%dus p50=%dus p90=%dus p99=%dus p999=%dus max=%dus docs=%d bytes=%d",
+                                 db,
+                                 collection,
+                                 type,
+                                 count,
+                                 errors,
+                                 getMeanMicros(),
+                                 percentile(0.5),
+                                 percentile(0.9),
+                                 percentile(0.99),
+                                 percentile(0.999),
+                                 maxMicros,
+                                 docs,
+                                 bytes);
+        }
+    }
+}
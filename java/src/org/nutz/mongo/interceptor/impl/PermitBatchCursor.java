@@ -0,0 +1,92 @@
+package org.nutz.mongo.interceptor.impl;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.operation.BatchCursor;
+
+/**
+ * 包裹驱动返回的游标，游标关闭或者读完时才归还舱壁的许可，这样后续的 getMore 也在限制之内
+ * <p>
+ * 取到一批以后，如果服务器端的游标已经没有了，就不会再有 getMore，马上归还。 像 DBCollection.findOne 这样只读一批、不关闭游标的调用，也不会一直占着许可
+ */
+class PermitBatchCursor<T> implements BatchCursor<T> {
+
+    private BatchCursor<T> cursor;
+
+    private Semaphore permits;
+
+    private AtomicBoolean released;
+
+    PermitBatchCursor(BatchCursor<T> cursor, Semaphore permits) {
+        this.cursor = cursor;
+        this.permits = permits;
+        this.released = new AtomicBoolean();
+    }
+
+    public void close() {
+        try {
+            cursor.close();
+        }
+        finally {
+            release();
+        }
+    }
+
+    public boolean hasNext() {
+        boolean re = false;
+        try {
+            re = cursor.hasNext();
+            return re;
+        }
+        finally {
+            if (!re)
+                release();
+        }
+    }
+
+    public List<T> next() {
+        return check(cursor.next());
+    }
+
+    public List<T> tryNext() {
+        return check(cursor.tryNext());
+    }
+
+    public void setBatchSize(int batchSize) {
+        cursor.setBatchSize(batchSize);
+    }
+
+    public int getBatchSize() {
+        return cursor.getBatchSize();
+    }
+
+    public ServerCursor getServerCursor() {
+        return cursor.getServerCursor();
+    }
+
+    public ServerAddress getServerAddress() {
+        return cursor.getServerAddress();
+    }
+
+    public void remove() {
+        cursor.remove();
+    }
+
+    private List<T> check(List<T> list) {
+        if (null != list && null == cursor.getServerCursor())
+            release();
+        return list;
+    }
+
+    /**
+     * 只归还一次
+     */
+    void release() {
+        if (released.compareAndSet(false, true))
+            permits.release();
+    }
+}
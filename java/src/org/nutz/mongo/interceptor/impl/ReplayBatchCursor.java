@@ -0,0 +1,74 @@
+package org.nutz.mongo.interceptor.impl;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.operation.BatchCursor;
+
+/**
+ * 先依次返回已经取到内存里的若干批数据，然后（如果有的话）接着读原来的游标
+ */
+class ReplayBatchCursor<T> implements BatchCursor<T> {
+
+    private Iterator<List<T>> batches;
+
+    private BatchCursor<T> tail;
+
+    private ServerAddress address;
+
+    private int batchSize;
+
+    ReplayBatchCursor(List<List<T>> batches, BatchCursor<T> tail, ServerAddress address) {
+        this.batches = batches.iterator();
+        this.tail = tail;
+        this.address = address;
+    }
+
+    public void close() {
+        if (null != tail)
+            tail.close();
+    }
+
+    public boolean hasNext() {
+        return batches.hasNext() || (null != tail && tail.hasNext());
+    }
+
+    public List<T> next() {
+        if (batches.hasNext())
+            return batches.next();
+        if (null == tail)
+            throw new NoSuchElementException();
+        return tail.next();
+    }
+
+    public List<T> tryNext() {
+        if (batches.hasNext())
+            return batches.next();
+        return null == tail ? null : tail.tryNext();
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        if (null != tail)
+            tail.setBatchSize(batchSize);
+    }
+
+    public int getBatchSize() {
+        return null == tail ? batchSize : tail.getBatchSize();
+    }
+
+    public ServerCursor getServerCursor() {
+        return null == tail ? null : tail.getServerCursor();
+    }
+
+    public ServerAddress getServerAddress() {
+        return address;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
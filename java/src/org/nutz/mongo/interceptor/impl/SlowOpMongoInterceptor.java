@@ -0,0 +1,172 @@
+package org.nutz.mongo.interceptor.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.BsonDocument;
+import org.nutz.log.Log;
+import org.nutz.log.Logs;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.interceptor.MongoOperationInfo;
+import org.nutz.mongo.interceptor.MongoOperations;
+
+/**
+ * 慢操作日志，只有操作耗时超过阈值时才输出一条 WARN 日志
+ * <p>
+ * 为了防止大量慢操作时刷屏，支持抽样（每 N 条慢操作记录 1 条）和限流（每秒最多记录多少条）， 被忽略的条数会在下一条日志里一并报告
+ * <p>
+ * 默认会把命令和查询条件中的值都替换成 "?"，只保留结构，避免把用户数据写进日志
+ */
+public class SlowOpMongoInterceptor implements MongoInterceptor {
+
+    private static final Log log = Logs.get();
+
+    private long thresholdMs;
+
+    private int sampleEvery;
+
+    private int maxPerSecond;
+
+    private boolean redact;
+
+    private AtomicInteger sampleCounter;
+
+    private AtomicLong window;
+
+    private AtomicInteger windowCount;
+
+    private AtomicLong suppressed;
+
+    public SlowOpMongoInterceptor() {
+        this(100);
+    }
+
+    /**
+     * @param thresholdMs
+     *            超过多少毫秒算慢操作
+     */
+    public SlowOpMongoInterceptor(long thresholdMs) {
+        this.thresholdMs = thresholdMs;
+        this.sampleEvery = 1;
+        this.maxPerSecond = 10;
+        this.redact = true;
+        this.sampleCounter = new AtomicInteger();
+        this.window = new AtomicLong();
+        this.windowCount = new AtomicInteger();
+        this.suppressed = new AtomicLong();
+    }
+
+    public SlowOpMongoInterceptor setThresholdMs(long thresholdMs) {
+        this.thresholdMs = thresholdMs;
+        return this;
+    }
+
+    /**
+     * @param sampleEvery
+     *            每多少条慢操作记录一条，默认 1，即都记录
+     */
+    public SlowOpMongoInterceptor setSampleEvery(int sampleEvery) {
+        this.sampleEvery = Math.max(1, sampleEvery);
+        return this;
+    }
+
+    /**
+     * @param maxPerSecond
+     *            每秒最多记录的条数，默认 10，小于等于 0 表示不限
+     */
+    public SlowOpMongoInterceptor setMaxPerSecond(int maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+        return this;
+    }
+
+    /**
+     * @param redact
+     *            是否隐藏命令中的值，默认 true
+     */
+    public SlowOpMongoInterceptor setRedact(boolean redact) {
+        this.redact = redact;
+        return this;
+    }
+
+    /**
+     * @return 因为抽样或者限流而没有输出的慢操作数，每次输出日志后清零。WARN 日志关闭时不计数
+     */
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    public void filter(MongoInterceptorChain<?> chain) {
+        long start = System.nanoTime();
+        Throwable err = null;
+        try {
+            chain.doChain();
+        }
+        catch (RuntimeException e) {
+            err = e;
+            throw e;
+        }
+        catch (Error e) {
+            err = e;
+            throw e;
+        }
+        finally {
+            long ms = (System.nanoTime() - start) / 1000000;
+            if (ms >= thresholdMs)
+                slow(chain, ms, err);
+        }
+    }
+
+    private void slow(MongoInterceptorChain<?> chain, long ms, Throwable err) {
+        // 日志不输出时不必抽样计数，也不累计被忽略的条数
+        if (!log.isWarnEnabled())
+            return;
+        if (!acquire()) {
+            suppressed.incrementAndGet();
+            return;
+        }
+        log.warn(message(chain, ms, err, suppressed.getAndSet(0)));
+    }
+
+    /**
+     * 取不到操作描述时也输出一条，只是没有集合和条件
+     */
+    String message(MongoInterceptorChain<?> chain, long ms, Throwable err, long suppressed) {
+        String key = "?";
+        Object q = "-";
+        try {
+            MongoOperationInfo info = MongoOperations.describe(chain);
+            if (null != info) {
+                key = info.getKey();
+                BsonDocument query = info.getQuery();
+                if (null != query)
+                    q = redact ? MongoOperations.redact(query, info.isCommand()) : query;
+            }
+        }
+        catch (Exception e) {
+            log.debug("fail to describe slow op", e);
+        }
+        return String.format("slow %s : %dms : %s : %s%s%s",
+                             null == chain.getReadOperation() ? "W" : "R",
+                             ms,
+                             key,
+                             q,
+                             null == err ? "" : " : " + err,
+                             suppressed > 0 ? " (" + suppressed + " suppressed)" : "");
+    }
+
+    /**
+     * 先抽样再限流
+     */
+    private boolean acquire() {
+        if (sampleEvery > 1 && sampleCounter.incrementAndGet() % sampleEvery != 0)
+            return false;
+        if (maxPerSecond <= 0)
+            return true;
+        long sec = System.currentTimeMillis() / 1000;
+        long w = window.get();
+        if (w != sec && window.compareAndSet(w, sec))
+            windowCount.set(0);
+        return windowCount.incrementAndGet() <= maxPerSecond;
+    }
+}
@@ -0,0 +1,117 @@
+package org.nutz.mongo.interceptor.impl;
+
+import java.util.List;
+
+import org.nutz.mongo.trace.MongoSpan;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.operation.BatchCursor;
+
+/**
+ * 游标读完或者关闭时结束跨度，并标记读到的文档数
+ * <p>
+ * 取到一批以后，如果服务器端的游标已经没有了，说明这就是最后一批，马上结束跨度。 调用者读完最后一批就不再调用 hasNext 或者 close 时，跨度也不会一直挂着
+ */
+class TracingBatchCursor<T> implements BatchCursor<T> {
+
+    private BatchCursor<T> cursor;
+
+    private MongoSpan span;
+
+    private long docs;
+
+    private int batches;
+
+    private boolean done;
+
+    TracingBatchCursor(BatchCursor<T> cursor, MongoSpan span) {
+        this.cursor = cursor;
+        this.span = span;
+    }
+
+    public void close() {
+        try {
+            cursor.close();
+        }
+        finally {
+            finish();
+        }
+    }
+
+    public boolean hasNext() {
+        try {
+            boolean re = cursor.hasNext();
+            if (!re)
+                finish();
+            return re;
+        }
+        catch (RuntimeException e) {
+            throw fail(e);
+        }
+    }
+
+    public List<T> next() {
+        try {
+            return count(cursor.next());
+        }
+        catch (RuntimeException e) {
+            throw fail(e);
+        }
+    }
+
+    public List<T> tryNext() {
+        try {
+            return count(cursor.tryNext());
+        }
+        catch (RuntimeException e) {
+            throw fail(e);
+        }
+    }
+
+    public void setBatchSize(int batchSize) {
+        cursor.setBatchSize(batchSize);
+    }
+
+    public int getBatchSize() {
+        return cursor.getBatchSize();
+    }
+
+    public ServerCursor getServerCursor() {
+        return cursor.getServerCursor();
+    }
+
+    public ServerAddress getServerAddress() {
+        return cursor.getServerAddress();
+    }
+
+    public void remove() {
+        cursor.remove();
+    }
+
+    private List<T> count(List<T> list) {
+        if (null != list) {
+            docs += list.size();
+            batches++;
+            if (null == cursor.getServerCursor())
+                finish();
+        }
+        return list;
+    }
+
+    private RuntimeException fail(RuntimeException e) {
+        if (!done)
+            span.error(e);
+        finish();
+        return e;
+    }
+
+    private void finish() {
+        if (done)
+            return;
+        done = true;
+        span.tag("mongo.docs", docs);
+        span.tag("mongo.batches", batches);
+        span.finish();
+    }
+}
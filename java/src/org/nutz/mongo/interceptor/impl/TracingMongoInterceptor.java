@@ -0,0 +1,102 @@
+package org.nutz.mongo.interceptor.impl;
+
+import org.nutz.lang.util.Context;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.interceptor.MongoOperationInfo;
+import org.nutz.mongo.interceptor.MongoOperations;
+import org.nutz.mongo.trace.MongoSpan;
+import org.nutz.mongo.trace.MongoTracer;
+
+import com.mongodb.WriteConcernResult;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.operation.BatchCursor;
+
+/**
+ * 为每次 MongoDB 调用创建一个跨度，标记数据库，集合，操作名，以及返回或者影响的文档数
+ * <p>
+ * 查询类操作的跨度在游标读完或者关闭时才结束，其他操作在调用返回时结束。 父跨度可以通过拦截链上下文中的 CTX_PARENT 指定， 否则由 MongoTracer 的实现自己决定
+ * <p>
+ * 没有设置追踪器时直接调用下一个拦截器，几乎没有开销
+ */
+public class TracingMongoInterceptor implements MongoInterceptor {
+
+    /**
+     * 拦截链上下文中父跨度的名称
+     */
+    public static final String CTX_PARENT = "trace.parent";
+
+    private volatile MongoTracer tracer;
+
+    public TracingMongoInterceptor() {}
+
+    public TracingMongoInterceptor(MongoTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    public MongoTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * @param tracer
+     *            追踪器，null 表示关闭追踪
+     */
+    public TracingMongoInterceptor setTracer(MongoTracer tracer) {
+        this.tracer = tracer;
+        return this;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void filter(MongoInterceptorChain<?> chain) {
+        MongoTracer tracer = this.tracer;
+        MongoOperationInfo info = null == tracer ? null : MongoOperations.describe(chain);
+        if (null == info) {
+            chain.doChain();
+            return;
+        }
+        Context ctx = chain.peekContext();
+        MongoSpan span = tracer.start("mongo." + info.getName(),
+                                      null == ctx ? null : ctx.get(CTX_PARENT));
+        span.tag("db.type", "mongodb");
+        span.tag("db.instance", info.getDatabase());
+        span.tag("mongo.collection", info.getCollection());
+        span.tag("mongo.command", info.getName());
+        span.tag("mongo.rw", null == chain.getReadOperation() ? "W" : "R");
+        try {
+            chain.doChain();
+        }
+        catch (RuntimeException e) {
+            span.error(e);
+            span.finish();
+            throw e;
+        }
+        catch (Error e) {
+            span.error(e);
+            span.finish();
+            throw e;
+        }
+        Object re = chain.getResult();
+        if (re instanceof BatchCursor) {
+            ((MongoInterceptorChain) chain).setResult(new TracingBatchCursor((BatchCursor) re,
+                                                                             span));
+            return;
+        }
+        if (re instanceof WriteConcernResult) {
+            WriteConcernResult wr = (WriteConcernResult) re;
+            if (wr.wasAcknowledged())
+                span.tag("mongo.docs", wr.getCount());
+        } else if (re instanceof BulkWriteResult) {
+            BulkWriteResult br = (BulkWriteResult) re;
+            if (br.wasAcknowledged())
+                span.tag("mongo.docs",
+                         br.getInsertedCount()
+                                       + br.getMatchedCount()
+                                       + br.getDeletedCount()
+                                       + br.getUpserts().size());
+        } else if (re instanceof Number) {
+            span.tag("mongo.count", ((Number) re).longValue());
+        }
+        span.finish();
+    }
+}
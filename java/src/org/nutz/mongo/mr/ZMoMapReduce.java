@@ -8,7 +8,7 @@ public class ZMoMapReduce {
 
     private String init;
 
-    private ZMoDoc _init_obj;
+    private volatile ZMoDoc _init_obj;
 
     private String reduceFunc;
 
@@ -25,14 +25,13 @@ public class ZMoMapReduce {
     }
 
     public ZMoDoc getInitObj() {
-        if (null == _init_obj) {
-            synchronized (this) {
-                if (null == _init_obj) {
-                    _init_obj = ZMoDoc.NEW(init);
-                }
-            }
+        // 解析是幂等的，并发时多解析一次也无妨，不必加锁
+        ZMoDoc obj = _init_obj;
+        if (null == obj) {
+            obj = ZMoDoc.NEW(init);
+            _init_obj = obj;
         }
-        return _init_obj;
+        return obj;
     }
 
     public void setInit(String initObj) {
@@ -3,8 +3,8 @@ package org.nutz.mongo.mr;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.nutz.lang.Files;
 import org.nutz.lang.Lang;
@@ -13,14 +13,20 @@ import org.nutz.lang.Strings;
 
 public class ZMoMapReduceManager {
 
-    private Map<String, ZMoMapReduce> map;
+    private ConcurrentHashMap<String, ZMoMapReduce> map;
+
+    /**
+     * 读文件时持有，用 ReentrantLock 而不是 synchronized，虚拟线程阻塞在 IO 上时不会钉住载体线程
+     */
+    private ReentrantLock lock;
 
     private String home;
 
     public ZMoMapReduceManager(String home) {
         this.home = (home.endsWith("/") ? home.substring(0, home.length() - 1)
                                        : home).replaceAll("[.\\\\]", "/");
-        this.map = new HashMap<String, ZMoMapReduce>();
+        this.map = new ConcurrentHashMap<String, ZMoMapReduce>();
+        this.lock = new ReentrantLock();
     }
 
     public ZMoMapReduce get(String key) {
@@ -31,17 +37,27 @@ public class ZMoMapReduceManager {
         return mr;
     }
 
-    private synchronized ZMoMapReduce syncGet(String key) {
+    private ZMoMapReduce syncGet(String key) {
+        lock.lock();
+        try {
+            return load(key);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private ZMoMapReduce load(String key) {
         ZMoMapReduce mr;
         mr = map.get(key);
         if (null == mr) {
             File f = Files.findFile(home + "/" + key + ".js");
             if (null != f) {
+                BufferedReader br = Streams.buffr(Streams.fileInr(f));
                 try {
                     StringBuilder sb = new StringBuilder();
                     mr = new ZMoMapReduce();
                     mr.setKey(key);
-                    BufferedReader br = Streams.buffr(Streams.fileInr(f));
                     String line;
                     // 首先得到 init obj
                     while (null != (line = br.readLine())) {
@@ -67,6 +83,9 @@ public class ZMoMapReduceManager {
                 catch (IOException e) {
                     throw Lang.wrapThrow(e);
                 }
+                finally {
+                    Streams.safeClose(br);
+                }
             }
         }
         return mr;
@@ -0,0 +1,123 @@
+package org.nutz.mongo.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 把跨度记录在内存里的追踪器，用于测试或者调试
+ */
+public class MemoryMongoTracer implements MongoTracer {
+
+    public static class Span implements MongoSpan {
+
+        private MemoryMongoTracer tracer;
+
+        private String name;
+
+        private Object parent;
+
+        private Map<String, Object> tags;
+
+        private Throwable error;
+
+        private long startNanos;
+
+        private long endNanos;
+
+        private AtomicBoolean finished;
+
+        Span(MemoryMongoTracer tracer, String name, Object parent) {
+            this.tracer = tracer;
+            this.name = name;
+            this.parent = parent;
+            this.tags = Collections.synchronizedMap(new LinkedHashMap<String, Object>());
+            this.startNanos = System.nanoTime();
+            this.finished = new AtomicBoolean();
+        }
+
+        public MongoSpan tag(String key, String value) {
+            tags.put(key, value);
+            return this;
+        }
+
+        public MongoSpan tag(String key, long value) {
+            tags.put(key, value);
+            return this;
+        }
+
+        public void error(Throwable e) {
+            this.error = e;
+        }
+
+        public void finish() {
+            if (finished.compareAndSet(false, true)) {
+                endNanos = System.nanoTime();
+                tracer.finished(this);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Object getParent() {
+            return parent;
+        }
+
+        public Map<String, Object> getTags() {
+            return tags;
+        }
+
+        public Object getTag(String key) {
+            return tags.get(key);
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isFinished() {
+            return finished.get();
+        }
+
+        /**
+         * @return 耗时（纳秒），尚未结束则为 -1
+         */
+        public long getDurationNanos() {
+            return isFinished() ? endNanos - startNanos : -1;
+        }
+
+        public String toString() {
+            return name + tags + (null == error ? "" : " ! " + error);
+        }
+    }
+
+    private List<Span> spans;
+
+    public MemoryMongoTracer() {
+        spans = new ArrayList<Span>();
+    }
+
+    public MongoSpan start(String name, Object parent) {
+        return new Span(this, name, parent);
+    }
+
+    /**
+     * @return 已经结束的跨度，按结束的顺序
+     */
+    public synchronized List<Span> getSpans() {
+        return new ArrayList<Span>(spans);
+    }
+
+    public synchronized void clear() {
+        spans.clear();
+    }
+
+    synchronized void finished(Span span) {
+        spans.add(span);
+    }
+}
@@ -0,0 +1,23 @@
+package org.nutz.mongo.trace;
+
+/**
+ * 一次 MongoDB 调用对应的跨度，由 MongoTracer 创建
+ * <p>
+ * finish 可能被调用多次，实现需要保证只有第一次生效
+ */
+public interface MongoSpan {
+
+    MongoSpan tag(String key, String value);
+
+    MongoSpan tag(String key, long value);
+
+    /**
+     * 记录调用失败的异常
+     */
+    void error(Throwable e);
+
+    /**
+     * 结束跨度
+     */
+    void finish();
+}
@@ -0,0 +1,22 @@
+package org.nutz.mongo.trace;
+
+/**
+ * 链路追踪的扩展点，通过实现本接口接入任意的追踪库
+ * <p>
+ * 实现需要是线程安全的
+ *
+ * @see org.nutz.mongo.interceptor.impl.TracingMongoInterceptor
+ */
+public interface MongoTracer {
+
+    /**
+     * 开始一个跨度
+     *
+     * @param name
+     *            跨度名，比如 "mongo.find"
+     * @param parent
+     *            父跨度的上下文，为 null 时由实现自己决定（一般是当前线程上活动的跨度）
+     * @return 跨度，不能为 null
+     */
+    MongoSpan start(String name, Object parent);
+}
@@ -2,7 +2,47 @@ package org.nutz.mongo;
 
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
+import org.nutz.mongo.codec.ZMoBsonCodecTest;
+import org.nutz.mongo.entity.ZMoEntityHolderTest;
+import org.nutz.mongo.fieldfilter.ZMoFFTest;
+import org.nutz.mongo.interceptor.MongoInterceptorChainTest;
+import org.nutz.mongo.interceptor.MongoOperationsTest;
+import org.nutz.mongo.interceptor.impl.AdaptiveReadPreferenceMongoInterceptorTest;
+import org.nutz.mongo.interceptor.impl.BulkheadMongoInterceptorTest;
+import org.nutz.mongo.interceptor.impl.CachingMongoInterceptorTest;
+import org.nutz.mongo.interceptor.impl.CircuitBreakerMongoInterceptorTest;
+import org.nutz.mongo.interceptor.impl.LogMongoInterceptorTest;
+import org.nutz.mongo.interceptor.impl.MetricsMongoInterceptorTest;
+import org.nutz.mongo.interceptor.impl.OpMetricsTest;
+import org.nutz.mongo.interceptor.impl.SlowOpMongoInterceptorTest;
+import org.nutz.mongo.interceptor.impl.TracingMongoInterceptorTest;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ZMoDocTest.class, ZMoPetTest.class})
+@Suite.SuiteClasses({ZMoDocTest.class,
+                     ZMoEntityCodecTest.class,
+                     ZMoPetTest.class,
+                     ZMoDocComparatorTest.class,
+                     ZMoBulkWriterTest.class,
+                     ZMoWriteBehindTest.class,
+                     ZMoBsonCodecTest.class,
+                     OpMetricsTest.class,
+                     CachingMongoInterceptorTest.class,
+                     BulkheadMongoInterceptorTest.class,
+                     CircuitBreakerMongoInterceptorTest.class,
+                     MongoInterceptorChainTest.class,
+                     MongoOperationsTest.class,
+                     LogMongoInterceptorTest.class,
+                     ZMoPageTest.class,
+                     ZMongoDBCacheTest.class,
+                     ZMoScopeTest.class,
+                     ZMoExecutorsTest.class,
+                     ZMoMergeCursorTest.class,
+                     ZMoFFTest.class,
+                     SlowOpMongoInterceptorTest.class,
+                     AdaptiveReadPreferenceMongoInterceptorTest.class,
+                     ZMoAsyncClientTest.class,
+                     ZMoAsyncCoTest.class,
+                     ZMoEntityHolderTest.class,
+                     TracingMongoInterceptorTest.class,
+                     MetricsMongoInterceptorTest.class})
 public class AllZMoTest {}
@@ -0,0 +1,71 @@
+package org.nutz.mongo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCredential;
+import com.mongodb.ServerAddress;
+import com.mongodb.async.client.MongoClientSettings;
+import com.mongodb.connection.ClusterConnectionMode;
+
+public class ZMoAsyncClientTest {
+
+    @Test
+    public void test_settings() {
+        MongoClientOptions mopt = MongoClientOptions.builder()
+                                                    .connectionsPerHost(20)
+                                                    .minConnectionsPerHost(2)
+                                                    .threadsAllowedToBlockForConnectionMultiplier(3)
+                                                    .maxWaitTime(1500)
+                                                    .connectTimeout(3000)
+                                                    .socketTimeout(4000)
+                                                    .heartbeatFrequency(7000)
+                                                    .serverSelectionTimeout(5000)
+                                                    .build();
+        MongoClientSettings s = ZMoAsyncClient.settings(Arrays.asList(new ServerAddress("localhost")),
+                                                        Arrays.<MongoCredential> asList(),
+                                                        mopt);
+        assertEquals(ClusterConnectionMode.SINGLE, s.getClusterSettings().getMode());
+        assertEquals(5000,
+                     s.getClusterSettings().getServerSelectionTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(20, s.getConnectionPoolSettings().getMaxSize());
+        assertEquals(2, s.getConnectionPoolSettings().getMinSize());
+        assertEquals(60, s.getConnectionPoolSettings().getMaxWaitQueueSize());
+        assertEquals(1500, s.getConnectionPoolSettings().getMaxWaitTime(TimeUnit.MILLISECONDS));
+        assertEquals(3000, s.getSocketSettings().getConnectTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(4000, s.getSocketSettings().getReadTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(3000, s.getHeartbeatSocketSettings().getReadTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(7000, s.getServerSettings().getHeartbeatFrequency(TimeUnit.MILLISECONDS));
+        assertFalse(s.getSslSettings().isEnabled());
+    }
+
+    @Test
+    public void test_replica_set() {
+        MongoClientOptions mopt = MongoClientOptions.builder().requiredReplicaSetName("rs0").build();
+        MongoClientSettings s = ZMoAsyncClient.settings(Arrays.asList(new ServerAddress("localhost")),
+                                                        Arrays.<MongoCredential> asList(),
+                                                        mopt);
+        assertEquals(ClusterConnectionMode.MULTIPLE, s.getClusterSettings().getMode());
+        assertEquals("rs0", s.getClusterSettings().getRequiredReplicaSetName());
+    }
+
+    @Test
+    public void test_ssl_without_netty() {
+        MongoClientOptions mopt = MongoClientOptions.builder().sslEnabled(true).build();
+        // 测试的 classpath 中没有 netty
+        try {
+            ZMoAsyncClient.settings(Arrays.asList(new ServerAddress("localhost")),
+                                    Arrays.<MongoCredential> asList(),
+                                    mopt);
+            fail();
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("netty"));
+        }
+    }
+}
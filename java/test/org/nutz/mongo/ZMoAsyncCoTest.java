@@ -0,0 +1,92 @@
+package org.nutz.mongo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nutz.mongo.ZMoAsyncCo.Batch;
+
+public class ZMoAsyncCoTest {
+
+    private ZMongo zmo;
+
+    private ZMoAsyncCo co;
+
+    @Before
+    public void before() throws Exception {
+        zmo = ZMongo.me("localhost");
+        co = zmo.db("nutzmongo").ac("async_test");
+        co.drop().get(10, TimeUnit.SECONDS);
+        List<ZMoDoc> list = new ArrayList<ZMoDoc>();
+        for (int i = 0; i < 7; i++)
+            list.add(ZMoDoc.NEW("n", i));
+        co.insert(list).get(10, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void after() {
+        zmo.close();
+    }
+
+    @Test
+    public void test_find_and_count() throws Exception {
+        assertEquals(7L, co.count(null).get(10, TimeUnit.SECONDS).longValue());
+        List<ZMoDoc> list = co.find(ZMoDoc.NEW("n", ZMoDoc.NEW("$gte", 5)))
+                              .get(10, TimeUnit.SECONDS);
+        assertEquals(2, list.size());
+        assertEquals(3, co.findOne(ZMoDoc.NEW("n", 3)).get(10, TimeUnit.SECONDS).getInt("n"));
+        assertNull(co.findOne(ZMoDoc.NEW("n", 100)).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_each_all() throws Exception {
+        final List<Integer> sizes = new ArrayList<Integer>();
+        final List<Integer> ns = new ArrayList<Integer>();
+        long n = co.each(null, null, ZMoDoc.NEW("n", 1), 0, 2, new Batch() {
+            public boolean handle(List<ZMoDoc> docs) {
+                sizes.add(docs.size());
+                for (ZMoDoc doc : docs)
+                    ns.add(doc.getInt("n"));
+                return true;
+            }
+        }).get(10, TimeUnit.SECONDS);
+        assertEquals(7, n);
+        assertEquals("[0, 1, 2, 3, 4, 5, 6]", ns.toString());
+        for (int size : sizes)
+            assertTrue(size <= 2);
+    }
+
+    @Test
+    public void test_each_stop() throws Exception {
+        final int[] calls = new int[1];
+        long n = co.each(null, null, ZMoDoc.NEW("n", 1), 0, 2, new Batch() {
+            public boolean handle(List<ZMoDoc> docs) {
+                calls[0]++;
+                return false;
+            }
+        }).get(10, TimeUnit.SECONDS);
+        assertEquals(1, calls[0]);
+        assertTrue(n > 0 && n <= 2);
+    }
+
+    @Test
+    public void test_each_handler_error() throws Exception {
+        try {
+            co.each(null, null, null, 0, 2, new Batch() {
+                public boolean handle(List<ZMoDoc> docs) {
+                    throw new IllegalStateException("boom");
+                }
+            }).get(10, TimeUnit.SECONDS);
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
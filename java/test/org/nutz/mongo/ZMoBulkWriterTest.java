@@ -0,0 +1,136 @@
+package org.nutz.mongo;
+
+import static org.junit.Assert.*;
+
+import org.bson.BasicBSONEncoder;
+import org.junit.Test;
+import org.nutz.lang.Lang;
+import org.nutz.mongo.pojo.Pet;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+
+public class ZMoBulkWriterTest extends ZMoBaseTest {
+
+    private ZMoCo c;
+
+    @Override
+    protected void prepare() {
+        c = db.cc(Pet.CNAME, false);
+        c.remove(ZMoDoc.NEW());
+    }
+
+    @Test
+    public void test_mixed_ops() {
+        ZMoBulkWriter bw = c.bulk(true).maxCount(2);
+        bw.insert(Pet.NEW("A").setAge(1));
+        bw.insert(ZMoDoc.NEW("nm", "B").putv("age", 2));
+        bw.insert(Lang.map("{nm:'C', age:3}"));
+        bw.update(ZMoDoc.NEW("nm", "A"), ZMoDoc.SET("age", 10));
+        bw.updateMulti(ZMoDoc.NEW(), ZMoDoc.NEW("$inc", ZMoDoc.NEW("age", 1)));
+        // 操作符文档，更新
+        bw.upsert(ZMoDoc.NEW("nm", "D"), ZMoDoc.SET("age", 4));
+        // POJO，替换
+        bw.upsert(ZMoDoc.NEW("nm", "E"), Pet.NEW("E").setAge(5));
+        bw.removeOne(ZMoDoc.NEW("nm", "B"));
+        ZMoBulkResult re = bw.execute();
+
+        assertFalse(re.hasErrors());
+        assertEquals(8, re.getOps().size());
+        // maxCount 为 2，8 个操作分 4 批
+        assertEquals(4, re.getBatchCount());
+        assertEquals(3, re.getInsertedCount());
+        assertEquals(4, re.getMatchedCount());
+        assertEquals(2, re.getUpsertedCount());
+        assertEquals(1, re.getRemovedCount());
+        assertNotNull(re.getOp(5).getUpsertedId());
+        assertNotNull(re.getOp(6).getUpsertedId());
+
+        assertEquals(11, c.findOne(ZMoDoc.NEW("nm", "A")).getInt("age"));
+        assertEquals(4, c.findOne(ZMoDoc.NEW("nm", "C")).getInt("age"));
+        assertEquals(5, c.findOne(ZMoDoc.NEW("nm", "E")).getInt("age"));
+        assertNull(c.findOne(ZMoDoc.NEW("nm", "B")));
+        assertEquals(4, c.count());
+    }
+
+    @Test
+    public void test_ordered_stop_on_error() {
+        ZMoDoc doc = ZMoDoc.NEW("nm", "A").genID();
+        ZMoBulkWriter bw = c.bulk(true);
+        bw.insert(doc);
+        bw.insert(doc.clone());
+        bw.insert(ZMoDoc.NEW("nm", "B"));
+        ZMoBulkResult re = bw.execute();
+
+        assertTrue(re.hasErrors());
+        assertEquals(ZMoBulkResult.Status.OK, re.getOp(0).getStatus());
+        assertEquals(ZMoBulkResult.Status.FAILED, re.getOp(1).getStatus());
+        assertEquals(ZMoBulkResult.Status.SKIPPED, re.getOp(2).getStatus());
+        assertEquals(1, c.count());
+    }
+
+    @Test
+    public void test_pending_and_drain() {
+        ZMoBulkWriter bw = c.bulk(false).maxCount(10);
+        bw.insert(ZMoDoc.NEW("nm", "A"));
+        bw.insert(ZMoDoc.NEW("nm", "B"));
+        ZMoBulkResult re = bw.execute();
+        assertEquals(ZMoBulkResult.Status.OK, re.getOp(1).getStatus());
+
+        // 上次 execute 的结果已经取走了
+        bw.insert(ZMoDoc.NEW("nm", "C"));
+        re = bw.execute();
+        assertEquals(1, re.getOps().size());
+        assertEquals(2, re.getOp(0).getIndex());
+        assertEquals(0, bw.execute().getOps().size());
+        assertEquals(3, c.count());
+    }
+
+    @Test
+    public void test_batch_fail() {
+        // 连不上的服务器，整批发送失败
+        MongoClient mc = new MongoClient(new ServerAddress("localhost", 1),
+                                         MongoClientOptions.builder()
+                                                           .serverSelectionTimeout(100)
+                                                           .build());
+        try {
+            ZMoCo bad = new ZMoCo(mc.getDB("nutzmongo").getCollection("bulk"));
+            ZMoBulkWriter bw = bad.bulk(true).maxCount(2);
+            bw.insert(ZMoDoc.NEW("nm", "A"));
+            // 还没发送
+            bw.insert(ZMoDoc.NEW("nm", "B"));
+            bw.insert(ZMoDoc.NEW("nm", "C"));
+            ZMoBulkResult re = bw.execute();
+
+            assertTrue(re.hasErrors());
+            assertEquals(ZMoBulkResult.Status.FAILED, re.getOp(0).getStatus());
+            assertEquals(ZMoBulkResult.Status.FAILED, re.getOp(1).getStatus());
+            assertTrue(re.getOp(0).getCause() instanceof MongoException);
+            // 有序模式，后面的批次不再执行
+            assertEquals(ZMoBulkResult.Status.SKIPPED, re.getOp(2).getStatus());
+            assertEquals(0, re.getBatchCount());
+        }
+        finally {
+            mc.close();
+        }
+    }
+
+    @Test
+    public void test_size_estimate() {
+        ZMoDoc doc = ZMoDoc.NEW("nm", "xiaobai")
+                           .putv("age", 10)
+                           .putv("labels", Lang.array("a", "b"))
+                           .putv("master", ZMoDoc.NEW("nm", "zozoh"))
+                           .genID();
+        int real = new BasicBSONEncoder().encode(doc).length;
+        int est = ZMoBulkWriter.sizeOf(doc);
+        // 估算不需要精确，差不多就行
+        assertTrue(est + " vs " + real, Math.abs(est - real) < real / 4);
+
+        // 懒加载的文档直接用原始字节的长度
+        byte[] bytes = new BasicBSONEncoder().encode(doc);
+        assertEquals(bytes.length, ZMoBulkWriter.sizeOf(ZMoDoc.LAZY(bytes)));
+    }
+}
@@ -0,0 +1,106 @@
+package org.nutz.mongo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.nutz.lang.Times;
+
+public class ZMoDocComparatorTest {
+
+    @Test
+    public void test_sort_with_tiebreak() {
+        List<ZMoDoc> list = new ArrayList<ZMoDoc>();
+        list.add(ZMoDoc.NEW("age", 3).putv("_id", 2));
+        list.add(ZMoDoc.NEW("age", 5L).putv("_id", 1));
+        list.add(ZMoDoc.NEW("age", 3.0).putv("_id", 1));
+        list.add(ZMoDoc.NEW("_id", 9));
+        Collections.sort(list, new ZMoDocComparator(ZMoDoc.NEW("age", -1).putv("_id", 1)));
+
+        assertEquals(1, list.get(0).getInt("_id"));
+        assertEquals(5, list.get(0).getInt("age"));
+        assertEquals(1, list.get(1).getInt("_id"));
+        assertEquals(2, list.get(2).getInt("_id"));
+        // 没有 age 的当作 null，降序时排最后
+        assertEquals(9, list.get(3).getInt("_id"));
+    }
+
+    @Test
+    public void test_type_order_and_path() {
+        assertTrue(ZMoDocComparator.compareValue(null, 1) < 0);
+        assertTrue(ZMoDocComparator.compareValue(100, "1") < 0);
+        assertTrue(ZMoDocComparator.compareValue("z", new ObjectId()) < 0);
+        assertTrue(ZMoDocComparator.compareValue(true, Times.now()) < 0);
+
+        ZMoDoc doc = ZMoDoc.NEW("master", ZMoDoc.NEW("name", "zozoh"));
+        assertEquals("zozoh", ZMoDocComparator.valueOf(doc, "master.name"));
+        assertNull(ZMoDocComparator.valueOf(doc, "master.age"));
+    }
+
+    @Test
+    public void test_number() {
+        // NaN 比所有数字都小，-0.0 等于 0.0
+        assertTrue(ZMoDocComparator.compareValue(Double.NaN, Double.NEGATIVE_INFINITY) < 0);
+        assertTrue(ZMoDocComparator.compareValue(Double.NaN, Long.MIN_VALUE) < 0);
+        assertEquals(0, ZMoDocComparator.compareValue(Double.NaN, Float.NaN));
+        assertEquals(0, ZMoDocComparator.compareValue(-0.0, 0.0));
+        assertEquals(0, ZMoDocComparator.compareValue(-0.0, 0));
+        // 超过 2^53 的长整数不能经过 double 比较
+        assertTrue(ZMoDocComparator.compareValue(9007199254740993L, 9007199254740992.0) > 0);
+        assertTrue(ZMoDocComparator.compareValue(9007199254740992.0, 9007199254740993L) < 0);
+        assertTrue(ZMoDocComparator.compareValue(2, 2.5) < 0);
+        assertTrue(ZMoDocComparator.compareValue(-2, -2.5) > 0);
+        assertTrue(ZMoDocComparator.compareValue(Long.MAX_VALUE, 1e19) < 0);
+    }
+
+    @Test
+    public void test_string_binary_order() {
+        // U+FF5E 的 UTF-16 比代理对大，但码点比 U+1F600 小
+        assertTrue("\uFF5E".compareTo("\uD83D\uDE00") > 0);
+        assertTrue(ZMoDocComparator.compareValue("\uFF5E", "\uD83D\uDE00") < 0);
+        assertTrue(ZMoDocComparator.compareValue("ab", "abc") < 0);
+        assertTrue(ZMoDocComparator.compareValue("B", "a") < 0);
+    }
+
+    @Test
+    public void test_object_and_array() {
+        assertTrue(ZMoDocComparator.compareValue(ZMoDoc.NEW("a", 1), ZMoDoc.NEW("a", 2)) < 0);
+        assertTrue(ZMoDocComparator.compareValue(ZMoDoc.NEW("a", 9), ZMoDoc.NEW("b", 1)) < 0);
+        // 先比值的类型
+        assertTrue(ZMoDocComparator.compareValue(ZMoDoc.NEW("b", 1), ZMoDoc.NEW("a", "x")) < 0);
+        assertTrue(ZMoDocComparator.compareValue(ZMoDoc.NEW("a", 1),
+                                                 ZMoDoc.NEW("a", 1).putv("b", 1)) < 0);
+        // 数组逐个元素比较，而不是比 toString()
+        assertTrue(ZMoDocComparator.compareValue(Arrays.asList(2), Arrays.asList(10)) < 0);
+        assertTrue(ZMoDocComparator.compareValue(Arrays.asList(1, 2), Arrays.asList(1, 2, 0)) < 0);
+    }
+
+    @Test
+    public void test_array_sort_key() {
+        List<ZMoDoc> list = new ArrayList<ZMoDoc>();
+        list.add(ZMoDoc.NEW("_id", 1).putv("n", Arrays.asList(5, 1)));
+        list.add(ZMoDoc.NEW("_id", 2).putv("n", 3));
+        list.add(ZMoDoc.NEW("_id", 3).putv("n", new ArrayList<Object>()));
+        list.add(ZMoDoc.NEW("_id", 4));
+
+        // 升序取最小元素，空数组比 null 还小
+        Collections.sort(list, new ZMoDocComparator(ZMoDoc.NEW("n", 1)));
+        assertEquals("[3, 4, 1, 2]", ids(list));
+
+        // 降序取最大元素
+        Collections.sort(list, new ZMoDocComparator(ZMoDoc.NEW("n", -1)));
+        assertEquals("[1, 2, 4, 3]", ids(list));
+    }
+
+    private static String ids(List<ZMoDoc> list) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (ZMoDoc doc : list)
+            ids.add(doc.getInt("_id"));
+        return ids.toString();
+    }
+}
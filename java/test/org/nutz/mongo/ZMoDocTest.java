@@ -2,6 +2,10 @@ package org.nutz.mongo;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+
+import org.bson.BasicBSONEncoder;
+import org.bson.io.BasicOutputBuffer;
 import org.bson.types.ObjectId;
 import org.junit.Test;
 import org.nutz.lang.Lang;
@@ -13,6 +17,7 @@ import org.nutz.mongo.pojo.Pet;
 import org.nutz.mongo.pojo.PetType;
 
 import com.mongodb.BasicDBList;
+import com.mongodb.DBObject;
 
 public class ZMoDocTest {
 
@@ -63,4 +68,35 @@ public class ZMoDocTest {
         assertEquals("521c6ffa3004c3c9cbfe59d3", id.toString());
     }
 
+    @Test
+    public void test_lazy_doc() {
+        ZMoDoc src = ZMoDoc.NEW("nm", "xiaobai").putv("age", 10).putv("master", ZMoDoc.NEW("nm", "zozoh"));
+        byte[] bytes = new BasicBSONEncoder().encode(src);
+
+        ZMoDoc doc = ZMoDoc.LAZY(bytes);
+        assertTrue(doc.isLazy());
+        assertEquals("xiaobai", doc.getString("nm"));
+        assertEquals(10, doc.getInt("age"));
+        assertNull(doc.get("nothing"));
+        assertTrue(doc.containsField("master"));
+        assertEquals(3, doc.size());
+
+        // 未修改，原样写出
+        BasicOutputBuffer buf = new BasicOutputBuffer();
+        new ZMoLazyEncoder().writeObject(buf, doc);
+        assertTrue(Arrays.equals(bytes, buf.toByteArray()));
+
+        // 修改后完整解码，重新编码
+        doc.put("age", 11);
+        assertNull(doc.getRawBytes());
+        assertEquals(11, doc.getInt("age"));
+        assertEquals("zozoh", ((DBObject) doc.get("master")).get("nm"));
+
+        buf = new BasicOutputBuffer();
+        new ZMoLazyEncoder().writeObject(buf, doc);
+        ZMoDoc doc2 = ZMoDoc.LAZY(buf.toByteArray());
+        assertEquals(11, doc2.getInt("age"));
+        assertEquals("xiaobai", doc2.getString("nm"));
+    }
+
 }
@@ -0,0 +1,66 @@
+package org.nutz.mongo;
+
+import static org.junit.Assert.*;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.nutz.lang.Lang;
+import org.nutz.lang.Times;
+import org.nutz.mongo.entity.ZMoEntity;
+import org.nutz.mongo.entity.ZMoEntityMaker;
+import org.nutz.mongo.entity.ZMoField;
+import org.nutz.mongo.pojo.Human;
+import org.nutz.mongo.pojo.Pet;
+import org.nutz.mongo.pojo.PetColor;
+import org.nutz.mongo.pojo.PetType;
+
+public class ZMoEntityCodecTest {
+
+    private static Pet pet() {
+        Pet pet = Pet.NEW("xiaobai")
+                     .setAge(3)
+                     .setBornAt(Times.D("2013-04-21 12:45:21"))
+                     .setColor(PetColor.BLUE)
+                     .setType(PetType.CAT)
+                     .setLabels(Lang.array("x", "y"))
+                     .setFriends(Lang.array(new ObjectId()));
+        pet.set_id(new ObjectId().toString());
+        pet.setMaster(Human.NEW("zozoh").setAge(30));
+        return pet;
+    }
+
+    @Test
+    public void test_codec_same_as_reflect() {
+        ZMoEntity en = new ZMoEntityMaker().setCodecEnabled(true).make(Pet.class);
+        assertNotNull(en.getCodec());
+
+        Pet pet = pet();
+        ZMoDoc expect = ZMo.me().toDoc(pet, new ZMoEntityMaker().make(Pet.class));
+        ZMoDoc doc = ZMo.me().toDoc(pet, en);
+        assertEquals(expect.toString(), doc.toString());
+
+        Pet p2 = (Pet) ZMo.me().fromDoc(doc, en);
+        assertEquals(pet.get_id(), p2.get_id());
+        assertEquals(pet.getName(), p2.getName());
+        assertEquals(pet.getAge(), p2.getAge());
+        assertEquals(pet.getColor(), p2.getColor());
+        assertEquals(pet.getType(), p2.getType());
+        assertEquals("zozoh", p2.getMaster().getName());
+        assertEquals(2, p2.getLabels().length);
+        assertEquals(pet.getFriends()[0], p2.getFriends()[0]);
+    }
+
+    @Test
+    public void test_fields_index() {
+        ZMoEntity en = ZMo.me().getEntity(Pet.class);
+        ZMoField[] flds = en.getFields();
+        assertEquals(9, flds.length);
+        for (int i = 0; i < flds.length; i++) {
+            assertEquals(i, en.indexOfMongo(flds[i].getMongoName()));
+        }
+        assertEquals(-1, en.indexOfMongo("comment"));
+        assertEquals(-1, en.indexOfMongo("name"));
+        assertTrue(en.indexOfMongo("nm") >= 0);
+    }
+
+}
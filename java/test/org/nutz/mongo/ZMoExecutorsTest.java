@@ -0,0 +1,92 @@
+package org.nutz.mongo;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.mongodb.MongoClient;
+
+public class ZMoExecutorsTest {
+
+    @Test
+    public void test_virtual_or_fallback() throws Exception {
+        boolean virtual;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            virtual = true;
+        }
+        catch (NoSuchMethodException e) {
+            virtual = false;
+        }
+        ExecutorService vt = ZMoExecutors.newVirtualThreadPerTask();
+        assertEquals(virtual, null != vt);
+        if (null != vt)
+            vt.shutdown();
+
+        ExecutorService es = ZMoExecutors.newDefault();
+        try {
+            Thread t = es.submit(new Callable<Thread>() {
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            }).get();
+            // 退回普通线程池时，线程不能阻止 JVM 退出
+            if (!virtual) {
+                assertTrue(t.isDaemon());
+                assertTrue(t.getName().startsWith("zmo-exec-"));
+            }
+        }
+        finally {
+            es.shutdown();
+        }
+    }
+
+    @Test
+    public void test_close_only_own_executor() {
+        // 不会真的连接数据库
+        ExecutorService mine = Executors.newSingleThreadExecutor();
+        try {
+            ZMongo zmo = ZMongo.me(new MongoClient("localhost")).setExecutor(mine);
+            zmo.close();
+            assertFalse(mine.isShutdown());
+        }
+        finally {
+            mine.shutdown();
+        }
+
+        ZMongo zmo = ZMongo.me(new MongoClient("localhost"));
+        ExecutorService dft = zmo.getExecutor();
+        zmo.close();
+        assertTrue(dft.isShutdown());
+    }
+
+    @Test
+    public void test_co_executor() throws Exception {
+        MongoClient mc = new MongoClient("localhost");
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        try {
+            ZMoCo co = new ZMoCo(mc.getDB("nutzmongo").getCollection("exec"));
+            try {
+                co.getExecutor();
+                fail();
+            }
+            catch (RuntimeException e) {}
+
+            co.setExecutor(es);
+            assertSame(es, co.getExecutor());
+            assertEquals("ok", co.submit(new Callable<String>() {
+                public String call() {
+                    return "ok";
+                }
+            }).get());
+        }
+        finally {
+            es.shutdown();
+            mc.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.nutz.mongo;
+
+import static org.junit.Assert.*;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+public class ZMoMergeCursorTest {
+
+    /**
+     * 内存中的游标，第一次 hasNext 模拟一次网络往返
+     */
+    private class MemCursor implements Iterator<DBObject>, Closeable {
+        private Iterator<DBObject> it;
+        private boolean fetched;
+        boolean closed;
+
+        MemCursor(int... ns) {
+            List<DBObject> list = new ArrayList<DBObject>();
+            for (int n : ns)
+                list.add(new BasicDBObject("n", n));
+            it = list.iterator();
+        }
+
+        public boolean hasNext() {
+            if (!fetched) {
+                fetched = true;
+                int now = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    if (now > maxInFlight.get())
+                        maxInFlight.set(now);
+                }
+                try {
+                    Thread.sleep(20);
+                }
+                catch (InterruptedException e) {}
+                inFlight.decrementAndGet();
+            }
+            return it.hasNext();
+        }
+
+        public DBObject next() {
+            return it.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private AtomicInteger inFlight;
+
+    private AtomicInteger maxInFlight;
+
+    private ExecutorService es;
+
+    @Before
+    public void before() {
+        inFlight = new AtomicInteger();
+        maxInFlight = new AtomicInteger();
+        es = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void after() {
+        es.shutdownNow();
+    }
+
+    @Test
+    public void test_merge_order() {
+        List<MemCursor> cs = new ArrayList<MemCursor>();
+        cs.add(new MemCursor(1, 4, 7));
+        cs.add(new MemCursor(2, 5, 8, 9));
+        cs.add(new MemCursor());
+        cs.add(new MemCursor(3, 6));
+        ZMoMergeCursor mc = new ZMoMergeCursor(cs, new BasicDBObject("n", 1), 0, es, 2);
+        List<Integer> ns = new ArrayList<Integer>();
+        for (ZMoDoc doc : mc)
+            ns.add(doc.getInt("n"));
+        assertEquals("[1, 2, 3, 4, 5, 6, 7, 8, 9]", ns.toString());
+        for (MemCursor c : cs)
+            assertTrue(c.closed);
+        // 同时最多 2 个查询在路上
+        assertTrue(maxInFlight.get() <= 2);
+    }
+
+    @Test
+    public void test_desc_and_limit() {
+        List<MemCursor> cs = new ArrayList<MemCursor>();
+        cs.add(new MemCursor(9, 5, 1));
+        cs.add(new MemCursor(8, 7, 6));
+        ZMoMergeCursor mc = new ZMoMergeCursor(cs, new BasicDBObject("n", -1), 4, null, 1);
+        List<Integer> ns = new ArrayList<Integer>();
+        while (mc.hasNext())
+            ns.add(mc.next().getInt("n"));
+        assertEquals("[9, 8, 7, 6]", ns.toString());
+        // 取满 limit 条就关闭全部游标
+        for (MemCursor c : cs)
+            assertTrue(c.closed);
+        assertFalse(mc.hasNext());
+    }
+}
@@ -0,0 +1,122 @@
+package org.nutz.mongo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+
+public class ZMoPageTest {
+
+    @Test
+    public void test_token_round_trip() {
+        ZMoDoc by = ZMoPage.sortOf(ZMoDoc.NEW("ct", -1));
+        String token = ZMoPage.encodeToken(by.toString(), Arrays.<Object> asList(100L, "abc"));
+        // URL 安全
+        assertFalse(token.contains("+") || token.contains("/") || token.contains("="));
+
+        List<?> vs = ZMoPage.decodeToken(by.toString(), token);
+        assertEquals(Arrays.asList(100L, "abc"), vs);
+    }
+
+    @Test
+    public void test_token_invalid() {
+        String sortKeys = ZMoPage.sortOf(null).toString();
+        for (String token : new String[]{"", "!!", "abcd"}) {
+            try {
+                ZMoPage.decodeToken(sortKeys, token);
+                fail(token);
+            }
+            catch (RuntimeException e) {
+                assertTrue(e.getMessage().startsWith("invalid page token"));
+            }
+        }
+        // 令牌与排序不匹配
+        String token = ZMoPage.encodeToken(sortKeys, Arrays.<Object> asList(1));
+        String other = ZMoPage.sortOf(ZMoDoc.NEW("a", 1)).toString();
+        try {
+            ZMoPage.decodeToken(other, token);
+            fail();
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("page token is for sort"));
+        }
+    }
+
+    @Test
+    public void test_sort() {
+        assertEquals(ZMoDoc.NEW("_id", 1).toString(), ZMoPage.sortOf(null).toString());
+        ZMoDoc by = ZMoPage.sortOf(ZMoDoc.NEW("a", -5).putv("b", 1L));
+        assertEquals(ZMoDoc.NEW("a", -1).putv("b", 1).putv("_id", 1).toString(), by.toString());
+        assertEquals(ZMoDoc.NEW("a", -1).putv("_id", -1).toString(),
+                     ZMoPage.sortOf(ZMoDoc.NEW("a", -1)).toString());
+        try {
+            ZMoPage.sortOf(ZMoDoc.NEW("score", ZMoDoc.NEW("$meta", "textScore")));
+            fail();
+        }
+        catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void test_seek() {
+        ZMoDoc by = ZMoPage.sortOf(ZMoDoc.NEW("a", -1).putv("b", 1));
+        // 值本身是带 $ 键的文档，也只能按相等比较
+        BasicDBObject tricky = new BasicDBObject("$ne", 0);
+        ZMoDoc seek = ZMoPage.seekOf(by, Arrays.asList(tricky, 2, "x"));
+        BasicDBObject or0 = new BasicDBObject("a", new BasicDBObject("$lt", tricky));
+        BasicDBObject or1 = new BasicDBObject("a", new BasicDBObject("$eq", tricky));
+        or1.append("b", new BasicDBObject("$gt", 2));
+        BasicDBObject or2 = new BasicDBObject("a", new BasicDBObject("$eq", tricky));
+        or2.append("b", new BasicDBObject("$eq", 2));
+        or2.append("_id", new BasicDBObject("$gt", "x"));
+        BasicDBObject expect = new BasicDBObject("$or", Arrays.asList(or0, or1, or2));
+        assertEquals(expect.toString(), seek.toString());
+
+        // _id 是 ObjectId 也一样
+        ObjectId id = new ObjectId();
+        seek = ZMoPage.seekOf(ZMoPage.sortOf(null), Arrays.asList(id));
+        BasicDBObject byId = new BasicDBObject("_id", new BasicDBObject("$gt", id));
+        assertEquals(new BasicDBObject("$or", Arrays.asList(byId)).toString(), seek.toString());
+    }
+
+    @Test
+    public void test_page_all() {
+        ZMongo zmo = ZMongo.me("localhost");
+        try {
+            ZMoCo co = zmo.db("nutzmongo").cc("page_test", true);
+            // n 有重复，需要靠 _id 区分
+            for (int i = 0; i < 10; i++)
+                co.insert(ZMoDoc.NEW("n", i / 3).putv("i", i));
+
+            List<Integer> is = new ArrayList<Integer>();
+            Set<Integer> seen = new HashSet<Integer>();
+            String after = null;
+            int pages = 0;
+            do {
+                ZMoPage<ZMoDoc> page = co.page(null, ZMoDoc.NEW("n", -1), after, 4);
+                for (ZMoDoc doc : page.getList())
+                {
+                    is.add(doc.getInt("n"));
+                    seen.add(doc.getInt("i"));
+                }
+                after = page.getNext();
+                pages++;
+            } while (null != after);
+
+            assertEquals(3, pages);
+            assertEquals("[3, 2, 2, 2, 1, 1, 1, 0, 0, 0]", is.toString());
+            // 没有重复，也没有遗漏
+            assertEquals(10, seen.size());
+        }
+        finally {
+            zmo.close();
+        }
+    }
+}
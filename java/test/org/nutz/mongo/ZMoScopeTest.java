@@ -0,0 +1,109 @@
+package org.nutz.mongo;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZMoScopeTest {
+
+    private ExecutorService es;
+
+    @Before
+    public void before() {
+        es = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void after() {
+        es.shutdownNow();
+    }
+
+    @Test
+    public void test_join_all() throws Exception {
+        ZMoScope scope = new ZMoScope(es);
+        try {
+            Future<Integer> a = scope.fork(value(1, 30));
+            Future<Integer> b = scope.fork(value(2, 0));
+            scope.join(5000);
+            assertTrue(a.isDone() && b.isDone());
+            assertEquals(1, a.get().intValue());
+            assertEquals(2, b.get().intValue());
+        }
+        finally {
+            scope.close();
+        }
+    }
+
+    @Test
+    public void test_fail_cancel_others() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ZMoScope scope = new ZMoScope(es);
+        Future<Integer> slow = scope.fork(hang(interrupted));
+        scope.fork(new Callable<Integer>() {
+            public Integer call() {
+                throw new IllegalStateException("boom");
+            }
+        });
+        try {
+            scope.join(5000);
+            fail();
+        }
+        catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+        assertTrue(slow.isCancelled());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_timeout_cancel() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ZMoScope scope = new ZMoScope(es);
+        Future<Integer> slow = scope.fork(hang(interrupted));
+        try {
+            scope.join(50);
+            fail();
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("timeout"));
+        }
+        assertTrue(slow.isCancelled());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    private static Callable<Integer> value(final int v, final long sleep) {
+        return new Callable<Integer>() {
+            public Integer call() throws Exception {
+                if (sleep > 0)
+                    Thread.sleep(sleep);
+                return v;
+            }
+        };
+    }
+
+    /**
+     * 一直等到被中断
+     */
+    private static Callable<Integer> hang(final CountDownLatch interrupted) {
+        return new Callable<Integer>() {
+            public Integer call() {
+                try {
+                    Thread.sleep(60000);
+                }
+                catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return 0;
+            }
+        };
+    }
+}
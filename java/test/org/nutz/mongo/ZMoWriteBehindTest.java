@@ -0,0 +1,79 @@
+package org.nutz.mongo;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nutz.mongo.ZMoWriteBehind.Policy;
+
+import com.mongodb.MongoClient;
+
+public class ZMoWriteBehindTest {
+
+    private MongoClient mc;
+
+    private ZMoCo co;
+
+    @Before
+    public void before() {
+        // 不会真的写数据库，只是需要一个集合名
+        mc = new MongoClient("localhost");
+        co = new ZMoCo(mc.getDB("nutzmongo").getCollection("wb"));
+    }
+
+    @After
+    public void after() {
+        mc.close();
+    }
+
+    @Test
+    public void test_insert_while_closing_block() throws Exception {
+        insert_while_closing(Policy.BLOCK);
+    }
+
+    @Test
+    public void test_insert_while_closing_drop() throws Exception {
+        insert_while_closing(Policy.DROP);
+    }
+
+    private void insert_while_closing(Policy policy) throws Exception {
+        final AtomicLong written = new AtomicLong();
+        final AtomicLong submitted = new AtomicLong();
+        final ZMoWriteBehind wb = new ZMoWriteBehind(co) {
+            void write(List<ZMoDoc> docs) {
+                written.addAndGet(docs.size());
+            }
+        }.capacity(16).maxBatchCount(4).flushInterval(1).threads(2).policy(policy).start();
+
+        Thread[] ts = new Thread[4];
+        for (int i = 0; i < ts.length; i++) {
+            ts[i] = new Thread() {
+                public void run() {
+                    for (int n = 0;; n++) {
+                        try {
+                            wb.insert(ZMoDoc.NEW("n", n));
+                        }
+                        catch (RuntimeException e) {
+                            return;
+                        }
+                        submitted.incrementAndGet();
+                    }
+                }
+            };
+            ts[i].start();
+        }
+        Thread.sleep(20);
+        wb.close();
+        for (Thread t : ts)
+            t.join();
+
+        assertTrue(submitted.get() > 0);
+        assertEquals(0, wb.queueSize());
+        assertEquals(submitted.get(), written.get() + wb.getDroppedCount());
+    }
+
+}
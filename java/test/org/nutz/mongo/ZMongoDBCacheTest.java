@@ -0,0 +1,100 @@
+package org.nutz.mongo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.interceptor.MongoOperations;
+import org.nutz.mongo.pojo.Pet;
+
+public class ZMongoDBCacheTest {
+
+    private static final String DB_NAME = "nutzmongo";
+
+    /**
+     * 数一数 listCollections 的次数
+     */
+    private static class Counter implements MongoInterceptor {
+        AtomicInteger n = new AtomicInteger();
+
+        public void filter(MongoInterceptorChain<?> chain) {
+            if ("ListCollections".equals(MongoOperations.describe(chain).getName()))
+                n.incrementAndGet();
+            chain.doChain();
+        }
+    }
+
+    private ZMongo zmo;
+
+    private Counter counter;
+
+    @Before
+    public void before() {
+        zmo = ZMongo.me("localhost");
+        counter = new Counter();
+    }
+
+    @After
+    public void after() {
+        zmo.close();
+    }
+
+    @Test
+    public void test_same_db() {
+        assertSame(zmo.db(DB_NAME), zmo.db(DB_NAME));
+        assertSame(zmo.db(DB_NAME), zmo.db(DB_NAME, null));
+        assertSame(zmo.db(DB_NAME), zmo.db(DB_NAME, new ArrayList<MongoInterceptor>()));
+
+        // 带拦截器的不缓存，否则每次传入新的拦截器会让缓存一直增长
+        List<MongoInterceptor> mis = Arrays.<MongoInterceptor> asList(counter);
+        ZMoDB db = zmo.db(DB_NAME, mis);
+        assertNotSame(db, zmo.db(DB_NAME, mis));
+        assertNotSame(db, zmo.db(DB_NAME));
+    }
+
+    @Test
+    public void test_c_no_list_collections() {
+        zmo.db(DB_NAME).cc(Pet.CNAME, false);
+        ZMoDB db = zmo.db(DB_NAME, Arrays.<MongoInterceptor> asList(counter));
+        db.c(Pet.CNAME);
+        assertEquals(1, counter.n.get());
+
+        // 持有同一个数据库对象，集合句柄是缓存的
+        for (int i = 0; i < 5; i++)
+            db.c(Pet.CNAME);
+        assertEquals(1, counter.n.get());
+    }
+
+    @Test
+    public void test_close_clear() {
+        ZMongo other = ZMongo.me("localhost");
+        ZMoDB db = other.db(DB_NAME);
+        other.close();
+        assertNotSame(db, other.db(DB_NAME));
+    }
+
+    @Test
+    public void test_rename_uncache() {
+        ZMoDB db = zmo.db(DB_NAME);
+        db.cc("rename_a", true).insert(ZMoDoc.NEW("x", 1));
+        if (db.cExists("rename_b"))
+            db.c("rename_b").drop();
+        ZMoCo a = db.c("rename_a");
+        a.rename("rename_b");
+        // 旧名字不再从缓存里返回
+        try {
+            db.c("rename_a");
+            fail();
+        }
+        catch (RuntimeException e) {}
+        assertEquals(1, db.c("rename_b").count());
+    }
+}
@@ -0,0 +1,115 @@
+package org.nutz.mongo.bench;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.nutz.lang.util.Closer;
+import org.nutz.mongo.ZMo;
+import org.nutz.mongo.ZMoDoc;
+import org.nutz.mongo.fieldfilter.ZMoFF;
+import org.nutz.mongo.fieldfilter.ZMoRegexFF;
+import org.nutz.mongo.fieldfilter.ZMoSimpleFF;
+import org.nutz.mongo.pojo.Human;
+import org.nutz.mongo.pojo.Pet;
+import org.nutz.mongo.pojo.PetColor;
+import org.nutz.mongo.pojo.PetType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * ZMoDoc 存取以及字段过滤转换的基准测试
+ * <p>
+ * 运行: mvn -Pbench test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZMoDocBenchmark {
+
+    private ZMoDoc doc;
+
+    private Pet pet;
+
+    private ZMoFF simpleFF;
+
+    private ZMoFF regexFF;
+
+    private Date now;
+
+    @Setup
+    public void setup() {
+        now = new Date();
+        doc = ZMoDoc.NEW()
+                    .putv("nm", "xiaobai")
+                    .putv("age", 3)
+                    .putv("w", 4.5)
+                    .putv("n", 123456789L)
+                    .putv("ok", true)
+                    .putv("ba", now)
+                    .putv("tp", PetType.CAT);
+        doc.genID();
+
+        pet = Pet.NEW("xiaobai")
+                 .setAge(3)
+                 .setBornAt(now)
+                 .setType(PetType.CAT)
+                 .setColor(PetColor.BLUE);
+        pet.setMaster(Human.NEW("zozoh"));
+
+        simpleFF = new ZMoSimpleFF("name", "age");
+        regexFF = new ZMoRegexFF("nm|tp").byJava(false);
+    }
+
+    @Benchmark
+    public ZMoDoc put() {
+        return ZMoDoc.NEW()
+                     .putv("nm", "xiaobai")
+                     .putv("age", 3)
+                     .putv("ba", now)
+                     .putv("tp", PetType.CAT);
+    }
+
+    @Benchmark
+    public void get_typed(Blackhole bh) {
+        bh.consume(doc.getString("nm"));
+        bh.consume(doc.getInt("age"));
+        bh.consume(doc.getDouble("w"));
+        bh.consume(doc.getLong("n"));
+        bh.consume(doc.getBoolean("ok"));
+        bh.consume(doc.getTime("ba"));
+        bh.consume(doc.getEnum("tp", PetType.class));
+        bh.consume(doc.getId());
+    }
+
+    @Benchmark
+    public ZMoDoc new_json() {
+        return ZMoDoc.NEW("{nm:'xiaobai', age:{$gt:3}, tp:'CAT', labels:['a','b']}");
+    }
+
+    @Benchmark
+    public ZMoDoc toDoc_simple_ff() {
+        return simpleFF.toDoc(pet);
+    }
+
+    @Benchmark
+    public ZMoDoc toDoc_regex_ff() {
+        return regexFF.run(new Closer<ZMoDoc>() {
+            public ZMoDoc invoke() {
+                return ZMo.me().toDoc(pet);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,163 @@
+package org.nutz.mongo.bench;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.types.ObjectId;
+import org.nutz.lang.Lang;
+import org.nutz.mongo.ZMo;
+import org.nutz.mongo.ZMoDoc;
+import org.nutz.mongo.entity.ZMoEntity;
+import org.nutz.mongo.entity.ZMoEntityMaker;
+import org.nutz.mongo.pojo.Human;
+import org.nutz.mongo.pojo.Pet;
+import org.nutz.mongo.pojo.Pet2;
+import org.nutz.mongo.pojo.PetColor;
+import org.nutz.mongo.pojo.PetType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ZMo 映射引擎的基准测试，覆盖 平铺/嵌套/数组/集合/枚举 几种字段
+ * <p>
+ * 运行: mvn -Pbench test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZMoMappingBenchmark {
+
+    private ZMo mo;
+
+    /**
+     * 只有简单字段和枚举
+     */
+    private Pet flat;
+
+    /**
+     * 带一个嵌套的 POJO
+     */
+    private Pet nested;
+
+    /**
+     * 带字符串数组和 ObjectId 数组
+     */
+    private Pet arrays;
+
+    /**
+     * 带一个 POJO 的集合
+     */
+    private Pet2 coll;
+
+    private ZMoDoc flatDoc;
+
+    private ZMoDoc nestedDoc;
+
+    private ZMoDoc arraysDoc;
+
+    private ZMoDoc collDoc;
+
+    private ZMoEntity petEn;
+
+    private ZMoEntity petCodecEn;
+
+    @Setup
+    public void setup() {
+        mo = ZMo.me();
+
+        flat = Pet.NEW("xiaobai")
+                  .setAge(3)
+                  .setBornAt(new Date())
+                  .setType(PetType.CAT)
+                  .setColor(PetColor.BLUE);
+        flat.set_id(new ObjectId().toString());
+
+        nested = Pet.NEW("xiaohei").setAge(5).setType(PetType.DOG);
+        nested.setMaster(Human.NEW("zozoh").setAge(30));
+
+        arrays = Pet.NEW("xiaohua")
+                    .setLabels(Lang.array("a", "b", "c", "d"))
+                    .setFriends(Lang.array(new ObjectId(), new ObjectId()));
+
+        coll = new Pet2();
+        coll.setName("group");
+        coll.setAge(1);
+        coll.setPets(Arrays.asList(Pet.ARR("A", "B", "C", "D", "E")));
+
+        flatDoc = mo.toDoc(flat);
+        nestedDoc = mo.toDoc(nested);
+        arraysDoc = mo.toDoc(arrays);
+        collDoc = mo.toDoc(coll);
+
+        petEn = mo.getEntity(Pet.class);
+        petCodecEn = new ZMoEntityMaker().setCodecEnabled(true).make(Pet.class);
+    }
+
+    @Benchmark
+    public ZMoDoc toDoc_flat() {
+        return mo.toDoc(flat);
+    }
+
+    @Benchmark
+    public ZMoDoc toDoc_flat_codec() {
+        return mo.toDoc(flat, petCodecEn);
+    }
+
+    @Benchmark
+    public ZMoDoc toDoc_nested() {
+        return mo.toDoc(nested);
+    }
+
+    @Benchmark
+    public ZMoDoc toDoc_arrays() {
+        return mo.toDoc(arrays);
+    }
+
+    @Benchmark
+    public ZMoDoc toDoc_collection() {
+        return mo.toDoc(coll);
+    }
+
+    @Benchmark
+    public Object fromDoc_flat() {
+        return mo.fromDoc(flatDoc, petEn);
+    }
+
+    @Benchmark
+    public Object fromDoc_flat_codec() {
+        return mo.fromDoc(flatDoc, petCodecEn);
+    }
+
+    @Benchmark
+    public Object fromDoc_nested() {
+        return mo.fromDoc(nestedDoc, petEn);
+    }
+
+    @Benchmark
+    public Object fromDoc_arrays() {
+        return mo.fromDoc(arraysDoc, petEn);
+    }
+
+    @Benchmark
+    public Object fromDoc_collection() {
+        return mo.fromDocToObj(collDoc, Pet2.class);
+    }
+
+    @Benchmark
+    public ZMoEntity getEntity() {
+        return mo.getEntity(Pet.class);
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.nutz.mongo.codec;
+
+import static org.junit.Assert.*;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.nutz.mongo.ZMo;
+import org.nutz.mongo.pojo.Pet;
+import org.nutz.mongo.pojo.Seq;
+
+public class ZMoBsonCodecTest {
+
+    @Test
+    public void test_objectid_string_id() {
+        ObjectId id = new ObjectId();
+        Pet pet = Pet.NEW("xiaobai").setAge(3);
+        pet.set_id(id.toString());
+
+        ZMoBsonCodec<Pet> codec = codec(Pet.class);
+        BsonDocument doc = encode(codec, pet);
+        assertEquals(new BsonObjectId(id), doc.get("_id"));
+        assertEquals(doc.get("_id"), codec.getDocumentId(pet));
+        assertEquals(id, ZMo.me().toDoc(pet).get("_id"));
+
+        Pet p2 = decode(codec, doc);
+        assertEquals(pet.get_id(), p2.get_id());
+        assertEquals("xiaobai", p2.getName());
+        assertEquals(3, p2.getAge());
+    }
+
+    @Test
+    public void test_null_id() {
+        Pet pet = Pet.NEW("xiaobai");
+        ZMoBsonCodec<Pet> codec = codec(Pet.class);
+        BsonDocument doc = encode(codec, pet);
+        // 与 ZMo.toDoc 一样，空的 _id 不输出
+        assertFalse(doc.containsKey("_id"));
+        assertFalse(ZMo.me().toDoc(pet).containsField("_id"));
+        assertFalse(codec.documentHasId(pet));
+    }
+
+    @Test
+    public void test_number_id() {
+        ZMoBsonCodec<Seq> codec = codec(Seq.class);
+
+        Seq seq = new Seq();
+        seq.set_id(5);
+        seq.setName("a");
+        BsonDocument doc = encode(codec, seq);
+        assertEquals(new BsonInt32(5), doc.get("_id"));
+        assertEquals(doc.get("_id"), codec.getDocumentId(seq));
+        assertEquals(5, ZMo.me().toDoc(seq).get("_id"));
+        assertEquals(5, decode(codec, doc).get_id());
+
+        seq.set_id(5L);
+        doc = encode(codec, seq);
+        assertEquals(new BsonInt64(5L), doc.get("_id"));
+        assertEquals(doc.get("_id"), codec.getDocumentId(seq));
+        assertEquals(5L, decode(codec, doc).get_id());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ZMoBsonCodec<T> codec(Class<T> type) {
+        return (ZMoBsonCodec<T>) ZMoCodecs.registry().get(type);
+    }
+
+    private static <T> BsonDocument encode(ZMoBsonCodec<T> codec, T obj) {
+        BsonDocument doc = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(doc), obj, EncoderContext.builder().build());
+        return doc;
+    }
+
+    private static <T> T decode(ZMoBsonCodec<T> codec, BsonDocument doc) {
+        return codec.decode(new BsonDocumentReader(doc), DecoderContext.builder().build());
+    }
+}
@@ -0,0 +1,55 @@
+package org.nutz.mongo.entity;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nutz.mongo.pojo.Pet;
+
+public class ZMoEntityHolderTest {
+
+    private ZMoEntityHolder holder;
+
+    @Before
+    public void before() {
+        holder = new ZMoEntityHolder();
+    }
+
+    @Test
+    public void test_bind_and_replace() {
+        ZMoEntity a = new ZMoGeneralMapEntity();
+        holder.add("pet", a);
+        holder.bind(Pet.class, a);
+        assertSame(a, holder.get(Pet.class));
+
+        // 替换以后，按类型查找不能再拿到旧的
+        ZMoEntity b = new ZMoGeneralMapEntity();
+        holder.add("pet", b);
+        assertNull(holder.get(Pet.class));
+        holder.bind(Pet.class, b);
+        assertSame(b, holder.get(Pet.class));
+
+        holder.remove("pet");
+        assertNull(holder.get(Pet.class));
+    }
+
+    @Test
+    public void test_bind_stale() {
+        // 先查到了旧的实体，绑定之前它被替换掉了
+        ZMoEntity a = new ZMoGeneralMapEntity();
+        holder.add("pet", a);
+        ZMoEntity b = new ZMoGeneralMapEntity();
+        holder.add("pet", b);
+        holder.bind(Pet.class, a);
+        assertNull(holder.get(Pet.class));
+
+        // 被删掉的也一样
+        holder.remove("pet");
+        holder.bind(Pet.class, b);
+        assertNull(holder.get(Pet.class));
+
+        // 没有加入过的实体不能绑定
+        holder.bind(Pet.class, new ZMoGeneralMapEntity());
+        assertNull(holder.get(Pet.class));
+    }
+}
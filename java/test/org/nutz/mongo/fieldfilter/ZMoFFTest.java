@@ -0,0 +1,66 @@
+package org.nutz.mongo.fieldfilter;
+
+import static org.junit.Assert.*;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.nutz.mongo.ZMo;
+import org.nutz.mongo.ZMoDoc;
+import org.nutz.mongo.entity.ZMoEntity;
+import org.nutz.mongo.entity.ZMoEntityMaker;
+import org.nutz.mongo.entity.ZMoField;
+import org.nutz.mongo.pojo.Human;
+import org.nutz.mongo.pojo.Pet;
+
+public class ZMoFFTest {
+
+    private static Pet pet() {
+        Pet pet = Pet.NEW("xiaobai").setAge(3);
+        pet.set_id(new ObjectId().toString());
+        pet.setMaster(Human.NEW("zozoh").setAge(30));
+        return pet;
+    }
+
+    @Test
+    public void test_projection() {
+        ZMoEntity en = ZMo.me().getEntity(Pet.class);
+        ZMoDoc keys = new ZMoSimpleFF("name", "age").projection(en);
+        assertEquals(1, keys.getInt("nm"));
+        assertEquals(1, keys.getInt("age"));
+        assertEquals(0, keys.getInt("_id"));
+        assertEquals(3, keys.keySet().size());
+
+        // 保留 _id 时不再显式排除
+        keys = new ZMoSimpleFF("_id", "name").projection(en);
+        assertEquals(1, keys.getInt("_id"));
+        assertEquals(2, keys.keySet().size());
+    }
+
+    @Test
+    public void test_projection_empty() {
+        ZMoEntity en = ZMo.me().getEntity(Pet.class);
+        ZMoDoc keys = new ZMoSimpleFF("nothing").projection(en);
+        // 不能是 {_id:0}，那样会取回 _id 以外的全部字段
+        assertEquals(1, keys.keySet().size());
+        assertEquals(1, keys.getInt("_id"));
+    }
+
+    @Test
+    public void test_from_doc_only() {
+        from_doc_only(new ZMoEntityMaker().make(Pet.class));
+        ZMoEntity en = new ZMoEntityMaker().setCodecEnabled(true).make(Pet.class);
+        assertNotNull(en.getCodec());
+        from_doc_only(en);
+    }
+
+    private void from_doc_only(ZMoEntity en) {
+        ZMoSimpleFF ff = new ZMoSimpleFF("name", "age");
+        ZMoField[] only = ff.select(en);
+        assertEquals(2, only.length);
+        Pet p = (Pet) ZMo.me().fromDoc(ZMo.me().toDoc(pet(), en), en, only);
+        assertEquals("xiaobai", p.getName());
+        assertEquals(3, p.getAge());
+        assertNull(p.get_id());
+        assertNull(p.getMaster());
+    }
+}
@@ -0,0 +1,146 @@
+package org.nutz.mongo.interceptor;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.ReadPreference;
+import com.mongodb.operation.FindOperation;
+import com.mongodb.operation.OperationExecutor;
+import com.mongodb.operation.ReadOperation;
+import com.mongodb.operation.WriteOperation;
+
+public class MongoInterceptorChainTest {
+
+    /**
+     * 读操作返回 "result"，并记下执行的顺序
+     */
+    private class FakeExecutor implements OperationExecutor {
+        @SuppressWarnings("unchecked")
+        public <T> T execute(ReadOperation<T> operation, ReadPreference readPreference) {
+            trace.add("exec");
+            return (T) "result";
+        }
+
+        public <T> T execute(WriteOperation<T> operation) {
+            return null;
+        }
+    }
+
+    /**
+     * 前后各记一笔，并把自己的名字追加到上下文里
+     */
+    private class Named implements MongoInterceptor {
+        private String name;
+
+        Named(String name) {
+            this.name = name;
+        }
+
+        public void filter(MongoInterceptorChain<?> chain) {
+            trace.add(name + ">");
+            String path = chain.getContext().getString("path", "");
+            chain.getContext().set("path", path + name);
+            chain.doChain();
+            trace.add("<" + name + ":" + chain.getResult());
+        }
+    }
+
+    private List<String> trace;
+
+    private List<MongoInterceptor> list;
+
+    private ZOperationExecutor exe;
+
+    @Before
+    public void before() {
+        trace = new ArrayList<String>();
+        list = new ArrayList<MongoInterceptor>();
+        list.add(new Named("a"));
+        list.add(new Named("b"));
+        exe = new ZOperationExecutor(new FakeExecutor(), list);
+    }
+
+    @Test
+    public void test_order_and_context() {
+        final String[] path = new String[1];
+        list.add(new MongoInterceptor() {
+            public void filter(MongoInterceptorChain<?> chain) {
+                path[0] = chain.getContext().getString("path");
+                chain.doChain();
+            }
+        });
+        assertEquals("result", exe.execute(find(), ReadPreference.primary()));
+        assertEquals("[a>, b>, exec, <b:result, <a:result]", trace.toString());
+        assertEquals("ab", path[0]);
+    }
+
+    @Test
+    public void test_chain_list_mutable() {
+        // 拦截器在链上追加一个拦截器，只影响这一次操作
+        list.add(0, new MongoInterceptor() {
+            public void filter(MongoInterceptorChain<?> chain) {
+                if (chain.getInterceptors().size() == 3)
+                    chain.getInterceptors().add(new Named("x"));
+                chain.doChain();
+            }
+        });
+        exe.execute(find(), ReadPreference.primary());
+        assertEquals("[a>, b>, x>, exec, <x:result, <b:result, <a:result]", trace.toString());
+
+        trace.clear();
+        exe.execute(find(), ReadPreference.primary());
+        assertEquals("[a>, b>, x>, exec, <x:result, <b:result, <a:result]", trace.toString());
+        assertEquals(3, list.size());
+    }
+
+    @Test
+    public void test_executor_list_change() {
+        exe.execute(find(), ReadPreference.primary());
+        assertEquals("[a>, b>, exec, <b:result, <a:result]", trace.toString());
+
+        // 执行器的列表修改后，后续操作看得到
+        list.remove(0);
+        trace.clear();
+        exe.execute(find(), ReadPreference.primary());
+        assertEquals("[b>, exec, <b:result]", trace.toString());
+
+        // 原地替换，长度不变，也不需要 refresh
+        list.set(0, new Named("c"));
+        trace.clear();
+        exe.execute(find(), ReadPreference.primary());
+        assertEquals("[c>, exec, <c:result]", trace.toString());
+
+        // 加一个再删掉另一个，长度不变
+        list.add(new Named("d"));
+        list.remove(0);
+        trace.clear();
+        exe.execute(find(), ReadPreference.primary());
+        assertEquals("[d>, exec, <d:result]", trace.toString());
+    }
+
+    @Test
+    public void test_manual_chain() {
+        MongoInterceptorChain<String> chain = new MongoInterceptorChain<String>();
+        chain.getInterceptors().add(new Named("m"));
+        chain.setProxy(new FakeExecutor());
+        chain.setReadOperation(MongoInterceptorChainTest.<String> find());
+        chain.setReadPreference(ReadPreference.primary());
+        chain.doChain();
+        assertEquals("result", chain.getResult());
+        assertEquals("[m>, exec, <m:result]", trace.toString());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> ReadOperation<T> find() {
+        return (ReadOperation) new FindOperation<BsonDocument>(new MongoNamespace("db", "c"),
+                                                               new BsonDocumentCodec());
+    }
+}
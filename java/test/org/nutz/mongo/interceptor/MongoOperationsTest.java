@@ -0,0 +1,137 @@
+package org.nutz.mongo.interceptor;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.Test;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.DeleteRequest;
+import com.mongodb.bulk.InsertRequest;
+import com.mongodb.operation.AggregateOperation;
+import com.mongodb.operation.CommandReadOperation;
+import com.mongodb.operation.DeleteOperation;
+import com.mongodb.operation.FindOperation;
+import com.mongodb.operation.InsertOperation;
+
+public class MongoOperationsTest {
+
+    private static final MongoNamespace NS = new MongoNamespace("db", "c");
+
+    @Test
+    public void test_find() {
+        FindOperation<BsonDocument> op = new FindOperation<BsonDocument>(NS,
+                                                                         new BsonDocumentCodec());
+        op.filter(BsonDocument.parse("{a:1}"));
+        MongoOperationInfo info = MongoOperations.describe(op);
+        assertEquals("db", info.getDatabase());
+        assertEquals("c", info.getCollection());
+        assertEquals("Find", info.getName());
+        assertEquals("db.c#Find", info.getKey());
+        assertFalse(info.isCommand());
+        assertEquals(BsonDocument.parse("{a:1}"), info.getQuery());
+    }
+
+    @Test
+    public void test_command() {
+        BsonDocument cmd = new BsonDocument("count", new BsonString("c"));
+        cmd.put("query", BsonDocument.parse("{b:2}"));
+        CommandReadOperation<BsonDocument> op = new CommandReadOperation<BsonDocument>("db",
+                                                                                       cmd,
+                                                                                       new BsonDocumentCodec());
+        MongoOperationInfo info = MongoOperations.describe(op);
+        assertEquals("db", info.getDatabase());
+        assertEquals("c", info.getCollection());
+        assertEquals("count", info.getName());
+        assertTrue(info.isCommand());
+        assertEquals(cmd, info.getQuery());
+    }
+
+    @Test
+    public void test_write_requests() {
+        DeleteOperation del = new DeleteOperation(NS,
+                                                  true,
+                                                  WriteConcern.ACKNOWLEDGED,
+                                                  Arrays.asList(new DeleteRequest(BsonDocument.parse("{x:1}"))));
+        MongoOperationInfo info = MongoOperations.describe(del);
+        assertEquals("db.c#Delete", info.getKey());
+        assertEquals(BsonDocument.parse("{x:1}"), info.getQuery());
+
+        InsertOperation ins = new InsertOperation(NS,
+                                                  true,
+                                                  WriteConcern.ACKNOWLEDGED,
+                                                  Arrays.asList(new InsertRequest(new BsonDocument())));
+        info = MongoOperations.describe(ins);
+        assertEquals("db.c#Insert", info.getKey());
+        assertNull(info.getQuery());
+    }
+
+    @Test
+    public void test_pipeline() {
+        AggregateOperation<BsonDocument> op = new AggregateOperation<BsonDocument>(NS,
+                                                                                   Arrays.asList(BsonDocument.parse("{$match:{y:1}}")),
+                                                                                   new BsonDocumentCodec());
+        MongoOperationInfo info = MongoOperations.describe(op);
+        assertEquals("db.c#Aggregate", info.getKey());
+        assertEquals(BsonDocument.parse("{pipeline:[{$match:{y:1}}]}"), info.getQuery());
+    }
+
+    @Test
+    public void test_null_and_register() {
+        assertNull(MongoOperations.describe((Object) null));
+
+        class MyOp {}
+        MongoOperationInfo info = MongoOperations.describe(new MyOp());
+        assertEquals("?.?#MyOp", info.getKey());
+
+        MongoOperations.register(MyOp.class, new MongoOperationDescriber() {
+            public String getDatabase(Object op) {
+                return "d";
+            }
+
+            public String getCollection(Object op) {
+                return "x";
+            }
+
+            public String getName(Object op) {
+                return "my";
+            }
+
+            public boolean isCommand(Object op) {
+                return false;
+            }
+
+            public BsonDocument getQuery(Object op) {
+                return null;
+            }
+        });
+        assertEquals("d.x#my", MongoOperations.describe(new MyOp()).getKey());
+    }
+
+    @Test
+    public void test_redact() {
+        BsonDocument q = BsonDocument.parse("{name:'zozoh', age:{$gt:3}, tags:['a', {x:1}]}");
+        BsonDocument re = MongoOperations.redact(q, false);
+        assertEquals(BsonDocument.parse("{name:'?', age:{$gt:'?'}, tags:['?', {x:'?'}]}"), re);
+        // 原文档不变
+        assertEquals("zozoh", q.getString("name").getValue());
+    }
+
+    @Test
+    public void test_redact_command() {
+        BsonDocument cmd = new BsonDocument("count", new BsonString("pet"));
+        cmd.put("query", BsonDocument.parse("{name:'zozoh'}"));
+        BsonDocument re = MongoOperations.redact(cmd, true);
+        assertEquals(BsonDocument.parse("{count:'pet', query:{name:'?'}}"), re);
+
+        // 第一个键的值不是字符串，照样隐藏
+        cmd = BsonDocument.parse("{find:{secret:1}}");
+        assertEquals(BsonDocument.parse("{find:{secret:'?'}}"),
+                     MongoOperations.redact(cmd, true));
+    }
+}
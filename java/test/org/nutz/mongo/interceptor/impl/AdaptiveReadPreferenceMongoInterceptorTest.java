@@ -0,0 +1,131 @@
+package org.nutz.mongo.interceptor.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.Before;
+import org.junit.Test;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteConcernResult;
+import com.mongodb.bulk.InsertRequest;
+import com.mongodb.operation.FindOperation;
+import com.mongodb.operation.InsertOperation;
+import com.mongodb.operation.OperationExecutor;
+import com.mongodb.operation.ReadOperation;
+import com.mongodb.operation.WriteOperation;
+
+public class AdaptiveReadPreferenceMongoInterceptorTest {
+
+    /**
+     * 按读偏好模拟主从库的耗时，并记下每次读的读偏好
+     */
+    private static class FakeExecutor implements OperationExecutor {
+        long primaryMs;
+        long secondaryMs;
+        List<String> rps = new ArrayList<String>();
+
+        public <T> T execute(ReadOperation<T> operation, ReadPreference readPreference) {
+            rps.add(readPreference.getName());
+            long ms = "primary".equals(readPreference.getName()) ? primaryMs : secondaryMs;
+            try {
+                if (ms > 0)
+                    Thread.sleep(ms);
+            }
+            catch (InterruptedException e) {}
+            return null;
+        }
+
+        public <T> T execute(WriteOperation<T> operation) {
+            return null;
+        }
+    }
+
+    private AdaptiveReadPreferenceMongoInterceptor arp;
+
+    private FakeExecutor exe;
+
+    @Before
+    public void before() {
+        arp = new AdaptiveReadPreferenceMongoInterceptor().setProbeEvery(5);
+        exe = new FakeExecutor();
+    }
+
+    @Test
+    public void test_switch_over() {
+        arp.adaptive("db", "c");
+        // 从库慢，切到主库，只有探测的读从库
+        exe.secondaryMs = 3;
+        read(60);
+        assertEquals(8, count(tail(10), "primary"));
+
+        // 从库恢复，主库变慢，切回从库
+        exe.secondaryMs = 0;
+        exe.primaryMs = 3;
+        read(150);
+        assertEquals(8, count(tail(10), "secondary"));
+    }
+
+    @Test
+    public void test_preferred_not_adaptive() {
+        arp.policy("db", "c", ReadPreference.secondaryPreferred()).adaptive("db", "c");
+        exe.secondaryMs = 2;
+        read(40);
+        // 可能由任何一方响应的模式不统计，也不改写
+        assertEquals(40, count(exe.rps, "secondaryPreferred"));
+    }
+
+    @Test
+    public void test_policy_and_read_your_writes() {
+        arp.policy("db", "*", ReadPreference.secondary()).setReadYourWritesMs(60000);
+        read(1);
+        assertEquals("secondary", exe.rps.get(0));
+
+        MongoInterceptorChain<WriteConcernResult> chain = chain();
+        chain.setWriteOperation(new InsertOperation(new MongoNamespace("db", "c"),
+                                                    true,
+                                                    WriteConcern.ACKNOWLEDGED,
+                                                    Arrays.asList(new InsertRequest(new BsonDocument()))));
+        chain.doChain();
+        read(1);
+        assertEquals("primary", exe.rps.get(1));
+    }
+
+    private void read(int n) {
+        for (int i = 0; i < n; i++) {
+            MongoInterceptorChain<BsonDocument> chain = chain();
+            chain.setReadOperation(new FindOperation<BsonDocument>(new MongoNamespace("db", "c"),
+                                                                   new BsonDocumentCodec()));
+            chain.setReadPreference(ReadPreference.primary());
+            chain.doChain();
+        }
+    }
+
+    private <T> MongoInterceptorChain<T> chain() {
+        MongoInterceptorChain<T> chain = new MongoInterceptorChain<T>();
+        chain.setInterceptors(Arrays.<MongoInterceptor> asList(arp));
+        chain.setProxy(exe);
+        return chain;
+    }
+
+    private List<String> tail(int n) {
+        return exe.rps.subList(exe.rps.size() - n, exe.rps.size());
+    }
+
+    private static int count(List<String> list, String nm) {
+        int n = 0;
+        for (String s : list)
+            if (nm.equals(s))
+                n++;
+        return n;
+    }
+}
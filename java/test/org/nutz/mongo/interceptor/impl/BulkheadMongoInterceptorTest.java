@@ -0,0 +1,149 @@
+package org.nutz.mongo.interceptor.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.bson.BsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.Before;
+import org.junit.Test;
+import org.nutz.lang.util.Closer;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.ReadPreference;
+import com.mongodb.operation.BatchCursor;
+import com.mongodb.operation.FindOperation;
+import com.mongodb.operation.OperationExecutor;
+import com.mongodb.operation.ReadOperation;
+import com.mongodb.operation.WriteOperation;
+
+public class BulkheadMongoInterceptorTest {
+
+    /**
+     * 每次读都返回一个有两批数据的游标
+     */
+    private static class FakeExecutor implements OperationExecutor {
+        @SuppressWarnings("unchecked")
+        public <T> T execute(ReadOperation<T> operation, ReadPreference readPreference) {
+            List<List<BsonDocument>> batches = new ArrayList<List<BsonDocument>>();
+            batches.add(Arrays.asList(new BsonDocument()));
+            batches.add(Arrays.asList(new BsonDocument()));
+            return (T) new ReplayBatchCursor<BsonDocument>(batches, null, null);
+        }
+
+        public <T> T execute(WriteOperation<T> operation) {
+            return null;
+        }
+    }
+
+    private BulkheadMongoInterceptor bh;
+
+    @Before
+    public void before() {
+        bh = new BulkheadMongoInterceptor().limit("db.c", 1).setWaitMs(0);
+    }
+
+    @Test
+    public void test_permit_held_until_cursor_done() {
+        BatchCursor<BsonDocument> cu = find();
+        assertEquals(1, bh.getInFlight("db.c"));
+
+        // 游标还开着，第二个查询被拒绝
+        try {
+            find();
+            fail();
+        }
+        catch (BulkheadFullException e) {
+            assertEquals("db.c", e.getKey());
+        }
+        assertEquals(1, bh.getRejected("db.c"));
+
+        // 读完就归还
+        while (cu.hasNext())
+            cu.next();
+        assertEquals(0, bh.getInFlight("db.c"));
+        // 重复关闭不会多归还
+        cu.close();
+        cu.close();
+        assertEquals(0, bh.getInFlight("db.c"));
+
+        // 没读完直接关闭也归还
+        cu = find();
+        assertEquals(1, bh.getInFlight("db.c"));
+        cu.close();
+        assertEquals(0, bh.getInFlight("db.c"));
+    }
+
+    @Test
+    public void test_find_one_release() {
+        // 同 DBCollection.findOne：只读第一批，不关闭游标
+        for (int i = 0; i < 5; i++) {
+            BatchCursor<BsonDocument> cu = find();
+            assertTrue(cu.hasNext());
+            assertEquals(1, cu.next().size());
+            assertEquals(0, bh.getInFlight("db.c"));
+        }
+        assertEquals(0, bh.getRejected("db.c"));
+    }
+
+    @Test
+    public void test_tag_propagation() throws Exception {
+        bh.limit("report", 1);
+        final Callable<String> task = new Callable<String>() {
+            public String call() {
+                return BulkheadMongoInterceptor.currentTag();
+            }
+        };
+        // 没有标签时原样返回
+        assertSame(task, BulkheadMongoInterceptor.wrap(task));
+
+        Callable<String> wrapped = BulkheadMongoInterceptor.tag("report",
+                                                                new Closer<Callable<String>>() {
+                                                                    public Callable<String> invoke() {
+                                                                        return BulkheadMongoInterceptor.wrap(task);
+                                                                    }
+                                                                });
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals("report", es.submit(wrapped).get());
+            // 任务结束后，执行线程上不残留标签
+            assertNull(es.submit(task).get());
+        }
+        finally {
+            es.shutdown();
+        }
+
+        // 带标签的查询计入标签的舱壁
+        BatchCursor<BsonDocument> cu = BulkheadMongoInterceptor.tag("report",
+                                                                    new Closer<BatchCursor<BsonDocument>>() {
+                                                                        public BatchCursor<BsonDocument> invoke() {
+                                                                            return find();
+                                                                        }
+                                                                    });
+        assertEquals(1, bh.getInFlight("report"));
+        assertEquals(0, bh.getInFlight("db.c"));
+        cu.close();
+        assertEquals(0, bh.getInFlight("report"));
+    }
+
+    private BatchCursor<BsonDocument> find() {
+        FindOperation<BsonDocument> op = new FindOperation<BsonDocument>(new MongoNamespace("db",
+                                                                                           "c"),
+                                                                         new BsonDocumentCodec());
+        MongoInterceptorChain<BatchCursor<BsonDocument>> chain = new MongoInterceptorChain<BatchCursor<BsonDocument>>();
+        chain.setInterceptors(Arrays.<MongoInterceptor> asList(bh));
+        chain.setProxy(new FakeExecutor());
+        chain.setReadOperation(op);
+        chain.setReadPreference(ReadPreference.primary());
+        chain.doChain();
+        return chain.getResult();
+    }
+}
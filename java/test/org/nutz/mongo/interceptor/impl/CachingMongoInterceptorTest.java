@@ -0,0 +1,180 @@
+package org.nutz.mongo.interceptor.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.Before;
+import org.junit.Test;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CursorType;
+import com.mongodb.MongoNamespace;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.InsertRequest;
+import com.mongodb.operation.AggregateToCollectionOperation;
+import com.mongodb.operation.CommandReadOperation;
+import com.mongodb.operation.FindOperation;
+import com.mongodb.operation.InsertOperation;
+import com.mongodb.operation.OperationExecutor;
+import com.mongodb.operation.ReadOperation;
+import com.mongodb.operation.WriteOperation;
+
+public class CachingMongoInterceptorTest {
+
+    /**
+     * 每次读都返回一个新的 {n:读的次数}
+     */
+    private static class FakeExecutor implements OperationExecutor {
+        int reads;
+
+        @SuppressWarnings("unchecked")
+        public <T> T execute(ReadOperation<T> operation, ReadPreference readPreference) {
+            reads++;
+            return (T) new BsonDocument("n", new BsonInt32(reads));
+        }
+
+        public <T> T execute(WriteOperation<T> operation) {
+            return null;
+        }
+    }
+
+    private CachingMongoInterceptor cache;
+
+    private FakeExecutor exe;
+
+    @Before
+    public void before() {
+        cache = new CachingMongoInterceptor(100).cache("db", "c", 60000);
+        exe = new FakeExecutor();
+    }
+
+    @Test
+    public void test_key_normalize() {
+        MongoNamespace ns = new MongoNamespace("db", "c");
+        FindOperation<BsonDocument> a = new FindOperation<BsonDocument>(ns, new BsonDocumentCodec());
+        a.filter(BsonDocument.parse("{a:1, b:2}"));
+        FindOperation<BsonDocument> b = new FindOperation<BsonDocument>(ns, new BsonDocumentCodec());
+        b.filter(BsonDocument.parse("{b:2, a:1}"));
+        FindOperation<BsonDocument> c = new FindOperation<BsonDocument>(ns, new BsonDocumentCodec());
+        c.filter(BsonDocument.parse("{a:1, b:3}"));
+
+        ReadPreference p = ReadPreference.primary();
+        String ka = CachingMongoInterceptor.keyOf("db.c", a, p);
+        assertEquals(ka, CachingMongoInterceptor.keyOf("db.c", b, p));
+        assertFalse(ka.equals(CachingMongoInterceptor.keyOf("db.c", c, p)));
+        assertFalse(ka.equals(CachingMongoInterceptor.keyOf("db.c",
+                                                            a,
+                                                            ReadPreference.secondary())));
+
+        a.cursorType(CursorType.Tailable);
+        assertNull(CachingMongoInterceptor.keyOf("db.c", a, p));
+    }
+
+    @Test
+    public void test_hit_and_invalidate() {
+        CommandReadOperation<BsonDocument> count = count("c");
+        assertEquals(1, read(count).getInt32("n").getValue());
+        BsonDocument doc = read(count);
+        assertEquals(1, doc.getInt32("n").getValue());
+        assertEquals(1, exe.reads);
+
+        // 拿到的是拷贝，改了也不影响缓存
+        doc.put("x", new BsonInt32(1));
+        assertFalse(read(count).containsKey("x"));
+
+        // 写别的集合，不影响
+        write(new InsertOperation(new MongoNamespace("db", "other"),
+                                  true,
+                                  WriteConcern.ACKNOWLEDGED,
+                                  Arrays.asList(new InsertRequest(new BsonDocument()))));
+        assertEquals(1, read(count).getInt32("n").getValue());
+
+        // 写本集合，失效
+        write(new InsertOperation(new MongoNamespace("db", "c"),
+                                  true,
+                                  WriteConcern.ACKNOWLEDGED,
+                                  Arrays.asList(new InsertRequest(new BsonDocument()))));
+        assertEquals(2, read(count).getInt32("n").getValue());
+
+        // 聚合 $out 到本集合，失效
+        write(new AggregateToCollectionOperation(new MongoNamespace("db", "src"),
+                                                 Arrays.asList(BsonDocument.parse("{$match:{}}"),
+                                                               BsonDocument.parse("{$out:'c'}"))));
+        assertEquals(3, read(count).getInt32("n").getValue());
+
+        // 读偏好不同，不共用缓存
+        assertEquals(4, read(count, ReadPreference.secondary()).getInt32("n").getValue());
+        assertEquals(3, read(count).getInt32("n").getValue());
+    }
+
+    @Test
+    public void test_uncached_ns() {
+        // 没声明缓存的集合，每次都真的去读
+        FindOperation<BsonDocument> find = new FindOperation<BsonDocument>(new MongoNamespace("db",
+                                                                                              "other"),
+                                                                           new BsonDocumentCodec());
+        read(find);
+        read(find);
+        assertEquals(2, exe.reads);
+
+        CommandReadOperation<BsonDocument> count = count("c");
+        assertEquals(3, read(count).getInt32("n").getValue());
+        assertEquals(3, read(count).getInt32("n").getValue());
+
+        // 源集合没缓存，但聚合命令 $out 到缓存的集合，照样失效
+        BsonDocument agg = new BsonDocument("aggregate", new BsonString("src"));
+        agg.put("pipeline", BsonDocument.parse("{p:[{$match:{}}, {$out:'c'}]}").getArray("p"));
+        read(new CommandReadOperation<BsonDocument>("db", agg, new BsonDocumentCodec()));
+        assertEquals(5, read(count).getInt32("n").getValue());
+    }
+
+    @Test
+    public void test_copyable() {
+        assertTrue(CachingMongoInterceptor.copyable(new BasicDBObject("a", 1)));
+        assertTrue(CachingMongoInterceptor.copyable(new BsonDocument()));
+        assertTrue(CachingMongoInterceptor.copyable(Arrays.asList(new BasicDBObject(), 3L)));
+        // 子类拷贝后类型会变，不缓存
+        assertFalse(CachingMongoInterceptor.copyable(new BasicDBObject() {
+            private static final long serialVersionUID = 1L;
+        }));
+        assertFalse(CachingMongoInterceptor.copyable(Arrays.asList(new BasicDBObject(),
+                                                                   new Object())));
+    }
+
+    private static CommandReadOperation<BsonDocument> count(String co) {
+        return new CommandReadOperation<BsonDocument>("db",
+                                                      new BsonDocument("count",
+                                                                       new BsonString(co)),
+                                                      new BsonDocumentCodec());
+    }
+
+    private BsonDocument read(ReadOperation<BsonDocument> op) {
+        return read(op, ReadPreference.primary());
+    }
+
+    private BsonDocument read(ReadOperation<BsonDocument> op, ReadPreference rp) {
+        MongoInterceptorChain<BsonDocument> chain = new MongoInterceptorChain<BsonDocument>();
+        chain.setInterceptors(Arrays.<MongoInterceptor> asList(cache));
+        chain.setProxy(exe);
+        chain.setReadOperation(op);
+        chain.setReadPreference(rp);
+        chain.doChain();
+        return chain.getResult();
+    }
+
+    private <T> void write(WriteOperation<T> op) {
+        MongoInterceptorChain<T> chain = new MongoInterceptorChain<T>();
+        chain.setInterceptors(Arrays.<MongoInterceptor> asList(cache));
+        chain.setProxy(exe);
+        chain.setWriteOperation(op);
+        chain.doChain();
+    }
+}
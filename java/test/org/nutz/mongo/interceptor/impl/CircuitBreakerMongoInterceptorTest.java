@@ -0,0 +1,156 @@
+package org.nutz.mongo.interceptor.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.bson.BsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.Before;
+import org.junit.Test;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.interceptor.impl.CircuitBreakerMongoInterceptor.State;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.MongoSocketException;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.operation.FindOperation;
+import com.mongodb.operation.OperationExecutor;
+import com.mongodb.operation.ReadOperation;
+import com.mongodb.operation.WriteOperation;
+
+public class CircuitBreakerMongoInterceptorTest {
+
+    private static final String KEY = "db.c";
+
+    /**
+     * 按设定失败或者成功，执行中间可以插入一段逻辑（拨动时钟、发起别的调用）
+     */
+    private static class FakeExecutor implements OperationExecutor {
+        boolean failing;
+
+        Runnable during;
+
+        public <T> T execute(ReadOperation<T> operation, ReadPreference readPreference) {
+            if (null != during) {
+                Runnable r = during;
+                during = null;
+                r.run();
+            }
+            if (failing)
+                throw new MongoSocketException("down", new ServerAddress());
+            return null;
+        }
+
+        public <T> T execute(WriteOperation<T> operation) {
+            return null;
+        }
+    }
+
+    private long clock;
+
+    private CircuitBreakerMongoInterceptor cb;
+
+    private FakeExecutor exe;
+
+    @Before
+    public void before() {
+        clock = 100000;
+        cb = new CircuitBreakerMongoInterceptor() {
+            protected long now() {
+                return clock;
+            }
+        }.setMinCalls(4).setFailureRate(0.5).setSlow(1000, 1.0).setOpenMs(5000).setProbes(2);
+        exe = new FakeExecutor();
+    }
+
+    @Test
+    public void test_open_half_open_close() {
+        openIt();
+        assertFalse(call());
+
+        clock += 5000;
+        assertEquals(State.HALF_OPEN, cb.getState(KEY));
+        assertTrue(call());
+        assertEquals(State.HALF_OPEN, cb.getState(KEY));
+        assertTrue(call());
+        assertEquals(State.CLOSED, cb.getState(KEY));
+    }
+
+    @Test
+    public void test_failed_probe_reopen() {
+        openIt();
+        clock += 5000;
+        exe.failing = true;
+        assertTrue(call());
+        assertEquals(State.OPEN, cb.getState(KEY));
+        assertFalse(call());
+    }
+
+    @Test
+    public void test_stale_success_not_counted() {
+        // 关闭时放行的调用，执行期间熔断被打开又进入半开，它晚些成功返回
+        exe.during = new Runnable() {
+            public void run() {
+                openIt();
+                clock += 5000;
+                assertTrue(call());
+            }
+        };
+        assertTrue(call());
+        // 只有一个探测成功，还不能关闭
+        assertEquals(State.HALF_OPEN, cb.getState(KEY));
+        assertTrue(call());
+        assertEquals(State.CLOSED, cb.getState(KEY));
+    }
+
+    @Test
+    public void test_hung_probe_release_slot() {
+        cb.setProbes(1);
+        cb.reset();
+        openIt();
+        clock += 5000;
+        // 探测请求卡住，超过慢调用的阈值以后，名额让给别的探测请求
+        exe.during = new Runnable() {
+            public void run() {
+                assertFalse(call());
+                clock += 1000;
+                assertTrue(call());
+                assertEquals(State.CLOSED, cb.getState(KEY));
+            }
+        };
+        assertTrue(call());
+        // 卡住的探测晚些返回，已经不算数了
+        assertEquals(State.CLOSED, cb.getState(KEY));
+    }
+
+    private void openIt() {
+        exe.failing = true;
+        for (int i = 0; i < 4; i++)
+            assertTrue(call());
+        assertEquals(State.OPEN, cb.getState(KEY));
+        exe.failing = false;
+    }
+
+    /**
+     * @return 是否被放行
+     */
+    private boolean call() {
+        MongoInterceptorChain<BsonDocument> chain = new MongoInterceptorChain<BsonDocument>();
+        chain.setInterceptors(Arrays.<MongoInterceptor> asList(cb));
+        chain.setProxy(exe);
+        chain.setReadOperation(new FindOperation<BsonDocument>(new MongoNamespace("db", "c"),
+                                                               new BsonDocumentCodec()));
+        chain.setReadPreference(ReadPreference.primary());
+        try {
+            chain.doChain();
+        }
+        catch (CircuitOpenException e) {
+            return false;
+        }
+        catch (MongoSocketException e) {}
+        return true;
+    }
+}
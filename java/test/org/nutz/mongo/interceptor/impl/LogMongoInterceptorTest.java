@@ -0,0 +1,64 @@
+package org.nutz.mongo.interceptor.impl;
+
+import static org.junit.Assert.*;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.Test;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.interceptor.MongoOperations;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.operation.CommandReadOperation;
+import com.mongodb.operation.FindOperation;
+
+public class LogMongoInterceptorTest {
+
+    @Test
+    public void test_message() {
+        MongoInterceptorChain<BsonDocument> chain = new MongoInterceptorChain<BsonDocument>();
+        FindOperation<BsonDocument> find = new FindOperation<BsonDocument>(new MongoNamespace("db",
+                                                                                              "c"),
+                                                                           new BsonDocumentCodec());
+        find.filter(BsonDocument.parse("{pwd:'secret'}"));
+        chain.setReadOperation(find);
+        String msg = new LogMongoInterceptor().message(chain, MongoOperations.describe(chain));
+        assertEquals("R : db=db : cmd=Find(c)", msg);
+    }
+
+    @Test
+    public void test_command_old_format() {
+        MongoInterceptorChain<BsonDocument> chain = new MongoInterceptorChain<BsonDocument>();
+        BsonDocument cmd = new BsonDocument("count", new BsonString("c"));
+        cmd.put("query", BsonDocument.parse("{pwd:'secret'}"));
+        chain.setReadOperation(new CommandReadOperation<BsonDocument>("db",
+                                                                      cmd,
+                                                                      new BsonDocumentCodec()));
+        String msg = new LogMongoInterceptor().message(chain, MongoOperations.describe(chain));
+        // 与原来的格式一样，命令第一个键的值
+        assertEquals("R : db=db : cmd=" + new BsonString("c"), msg);
+        assertFalse(msg.contains("secret"));
+    }
+
+    @Test
+    public void test_redact_opt_in() {
+        MongoInterceptorChain<BsonDocument> chain = new MongoInterceptorChain<BsonDocument>();
+        BsonDocument cmd = BsonDocument.parse("{eval:{pwd:'secret'}}");
+        chain.setReadOperation(new CommandReadOperation<BsonDocument>("db",
+                                                                      cmd,
+                                                                      new BsonDocumentCodec()));
+        LogMongoInterceptor log = new LogMongoInterceptor();
+        // 默认不隐藏
+        assertTrue(log.message(chain, MongoOperations.describe(chain)).contains("secret"));
+        log.setRedact(true);
+        assertFalse(log.message(chain, MongoOperations.describe(chain)).contains("secret"));
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void test_deprecated_fields() {
+        assertNotNull(LogMongoInterceptor.cr_command);
+        assertNotNull(LogMongoInterceptor.cw_databaseName);
+    }
+}
@@ -0,0 +1,182 @@
+package org.nutz.mongo.interceptor.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.bson.BasicBSONEncoder;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.Before;
+import org.junit.Test;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoNamespace;
+import com.mongodb.MongoSocketException;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.operation.BatchCursor;
+import com.mongodb.operation.CommandReadOperation;
+import com.mongodb.operation.FindOperation;
+import com.mongodb.operation.OperationExecutor;
+import com.mongodb.operation.ReadOperation;
+import com.mongodb.operation.WriteOperation;
+
+public class MetricsMongoInterceptorTest {
+
+    /**
+     * 按批返回文档的游标
+     */
+    private static class FakeCursor implements BatchCursor<DBObject> {
+        LinkedList<List<DBObject>> batches = new LinkedList<List<DBObject>>();
+
+        public void close() {}
+
+        public boolean hasNext() {
+            return !batches.isEmpty();
+        }
+
+        public List<DBObject> next() {
+            return batches.removeFirst();
+        }
+
+        public List<DBObject> tryNext() {
+            return batches.isEmpty() ? null : batches.removeFirst();
+        }
+
+        public void setBatchSize(int batchSize) {}
+
+        public int getBatchSize() {
+            return 0;
+        }
+
+        public ServerCursor getServerCursor() {
+            return batches.isEmpty() ? null : new ServerCursor(1, new ServerAddress());
+        }
+
+        public ServerAddress getServerAddress() {
+            return new ServerAddress();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * 读操作返回 cursor，没有设置 cursor 时抛出 MongoSocketException
+     */
+    private static class FakeExecutor implements OperationExecutor {
+        FakeCursor cursor;
+
+        @SuppressWarnings("unchecked")
+        public <T> T execute(ReadOperation<T> operation, ReadPreference readPreference) {
+            if (null == cursor)
+                throw new MongoSocketException("down", new ServerAddress());
+            return (T) cursor;
+        }
+
+        public <T> T execute(WriteOperation<T> operation) {
+            return null;
+        }
+    }
+
+    private MetricsMongoInterceptor metrics;
+
+    private FakeExecutor exe;
+
+    @Before
+    public void before() {
+        metrics = new MetricsMongoInterceptor();
+        exe = new FakeExecutor();
+    }
+
+    @Test
+    public void test_find_and_error() {
+        exe.cursor = new FakeCursor();
+        exe.cursor.batches.add(Arrays.<DBObject> asList(new BasicDBObject("a", 1),
+                                                        new BasicDBObject("a", 2)));
+        exe.cursor.batches.add(Arrays.<DBObject> asList(new BasicDBObject("a", 3)));
+        BatchCursor<DBObject> cursor = read(find());
+        while (cursor.hasNext())
+            cursor.next();
+        read(find());
+
+        exe.cursor = null;
+        try {
+            read(count());
+            fail();
+        }
+        catch (MongoSocketException e) {}
+
+        OpMetrics find = metrics.get("db", "c", "Find");
+        assertEquals(2, find.getCount());
+        assertEquals(0, find.getErrors());
+        assertEquals(3, find.snapshot().getDocs());
+        // 默认不统计字节数
+        assertEquals(0, find.snapshot().getBytes());
+
+        OpMetrics count = metrics.get("db", "c", "count");
+        assertEquals(1, count.getCount());
+        assertEquals(1, count.getErrors());
+
+        assertEquals(3, metrics.getTotalCount());
+        assertEquals(1, metrics.getTotalErrors());
+        assertEquals("[db.c#Find, db.c#count]", Arrays.toString(metrics.getKeys()));
+        assertEquals(2, metrics.getReport().length);
+
+        metrics.reset();
+        assertEquals(0, metrics.getTotalCount());
+        assertEquals(0, metrics.getKeys().length);
+    }
+
+    @Test
+    public void test_counting_cursor() {
+        FakeCursor fc = new FakeCursor();
+        DBObject a = new BasicDBObject("a", "hello");
+        DBObject b = new BasicDBObject("b", 1);
+        fc.batches.add(Arrays.asList(a, b));
+        fc.batches.add(Arrays.<DBObject> asList());
+        OpMetrics m = new OpMetrics("db", "c", "Find");
+        CountingBatchCursor<DBObject> cursor = new CountingBatchCursor<DBObject>(fc, m, true);
+        assertEquals(2, cursor.next().size());
+        assertEquals(0, cursor.tryNext().size());
+        assertNull(cursor.tryNext());
+
+        BasicBSONEncoder enc = new BasicBSONEncoder();
+        assertEquals(2, m.snapshot().getDocs());
+        assertEquals(enc.encode(a).length + enc.encode(b).length, m.snapshot().getBytes());
+        // 只统计返回的文档，不计操作次数
+        assertEquals(0, m.getCount());
+    }
+
+    private <T> T read(ReadOperation<T> op) {
+        MongoInterceptorChain<T> chain = new MongoInterceptorChain<T>();
+        chain.setInterceptors(Arrays.<MongoInterceptor> asList(metrics));
+        chain.setProxy(exe);
+        chain.setReadOperation(op);
+        chain.setReadPreference(ReadPreference.primary());
+        chain.doChain();
+        return chain.getResult();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ReadOperation<BatchCursor<DBObject>> find() {
+        return (ReadOperation) new FindOperation<BsonDocument>(new MongoNamespace("db", "c"),
+                                                               new BsonDocumentCodec());
+    }
+
+    private static CommandReadOperation<BsonDocument> count() {
+        return new CommandReadOperation<BsonDocument>("db",
+                                                      new BsonDocument("count",
+                                                                       new BsonString("c")),
+                                                      new BsonDocumentCodec());
+    }
+}
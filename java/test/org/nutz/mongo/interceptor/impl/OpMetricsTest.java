@@ -0,0 +1,40 @@
+package org.nutz.mongo.interceptor.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class OpMetricsTest {
+
+    @Test
+    public void test_bucket_bounds() {
+        long[] vs = {0, 1, 15, 16, 17, 31, 32, 1000, 123456789L};
+        for (long v : vs) {
+            int i = OpMetrics.indexOf(v);
+            assertTrue(i < OpMetrics.BUCKETS);
+            assertTrue(OpMetrics.upperOf(i) >= v);
+            assertTrue(i == 0 || OpMetrics.upperOf(i - 1) < v);
+        }
+        assertEquals(OpMetrics.BUCKETS - 1, OpMetrics.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void test_percentile() {
+        OpMetrics m = new OpMetrics("db", "pet", "Find");
+        for (int i = 1; i <= 100; i++)
+            m.record(i * 100, i % 10 == 0);
+        OpMetrics.Snapshot sn = m.snapshot();
+        assertEquals(100, sn.getCount());
+        assertEquals(10, sn.getErrors());
+        assertEquals(10000, sn.getMaxMicros());
+        assertEquals(5050, sn.getMeanMicros());
+        // 分桶的相对误差不超过 12.5%
+        long p50 = sn.percentile(0.5);
+        assertTrue(p50 >= 5000 && p50 <= 5000 * 1.125);
+        assertEquals(10000, sn.percentile(1));
+
+        m.reset();
+        assertEquals(0, m.snapshot().getCount());
+        assertEquals(0, m.snapshot().percentile(0.99));
+    }
+}
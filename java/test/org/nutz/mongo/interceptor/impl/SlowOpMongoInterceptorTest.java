@@ -0,0 +1,33 @@
+package org.nutz.mongo.interceptor.impl;
+
+import static org.junit.Assert.*;
+
+import org.bson.BsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.Test;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.operation.FindOperation;
+
+public class SlowOpMongoInterceptorTest {
+
+    @Test
+    public void test_message() {
+        MongoInterceptorChain<BsonDocument> chain = new MongoInterceptorChain<BsonDocument>();
+        FindOperation<BsonDocument> find = new FindOperation<BsonDocument>(new MongoNamespace("db",
+                                                                                              "c"),
+                                                                           new BsonDocumentCodec());
+        find.filter(BsonDocument.parse("{pwd:'secret'}"));
+        chain.setReadOperation(find);
+        SlowOpMongoInterceptor slow = new SlowOpMongoInterceptor();
+        String msg = slow.message(chain, 120, null, 3);
+        assertTrue(msg.startsWith("slow R : 120ms : db.c#Find : "));
+        assertFalse(msg.contains("secret"));
+        assertTrue(msg.endsWith(" (3 suppressed)"));
+
+        // 取不到描述也有一行
+        msg = slow.message(new MongoInterceptorChain<BsonDocument>(), 5, null, 0);
+        assertEquals("slow W : 5ms : ? : -", msg);
+    }
+}
@@ -0,0 +1,223 @@
+package org.nutz.mongo.interceptor.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.Before;
+import org.junit.Test;
+import org.nutz.mongo.interceptor.MongoInterceptor;
+import org.nutz.mongo.interceptor.MongoInterceptorChain;
+import org.nutz.mongo.trace.MemoryMongoTracer;
+import org.nutz.mongo.trace.MemoryMongoTracer.Span;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.MongoSocketException;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteConcernResult;
+import com.mongodb.bulk.InsertRequest;
+import com.mongodb.operation.BatchCursor;
+import com.mongodb.operation.CommandReadOperation;
+import com.mongodb.operation.FindOperation;
+import com.mongodb.operation.InsertOperation;
+import com.mongodb.operation.OperationExecutor;
+import com.mongodb.operation.ReadOperation;
+import com.mongodb.operation.WriteOperation;
+
+public class TracingMongoInterceptorTest {
+
+    /**
+     * 按批返回文档的游标，最后一批取走以后服务器端游标就没有了
+     */
+    private static class FakeCursor implements BatchCursor<Integer> {
+        LinkedList<List<Integer>> batches = new LinkedList<List<Integer>>();
+
+        boolean closed;
+
+        public void close() {
+            closed = true;
+        }
+
+        public boolean hasNext() {
+            return !batches.isEmpty();
+        }
+
+        public List<Integer> next() {
+            return batches.removeFirst();
+        }
+
+        public List<Integer> tryNext() {
+            return batches.isEmpty() ? null : batches.removeFirst();
+        }
+
+        public void setBatchSize(int batchSize) {}
+
+        public int getBatchSize() {
+            return 0;
+        }
+
+        public ServerCursor getServerCursor() {
+            return batches.isEmpty() ? null : new ServerCursor(1, new ServerAddress());
+        }
+
+        public ServerAddress getServerAddress() {
+            return new ServerAddress();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * 读操作返回 cursor，或者抛出 MongoSocketException；写操作返回确认写入 1 条
+     */
+    private static class FakeExecutor implements OperationExecutor {
+        FakeCursor cursor;
+
+        @SuppressWarnings("unchecked")
+        public <T> T execute(ReadOperation<T> operation, ReadPreference readPreference) {
+            if (null == cursor)
+                throw new MongoSocketException("down", new ServerAddress());
+            return (T) cursor;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T execute(WriteOperation<T> operation) {
+            return (T) WriteConcernResult.acknowledged(1, false, null);
+        }
+    }
+
+    private MemoryMongoTracer tracer;
+
+    private TracingMongoInterceptor ti;
+
+    private FakeExecutor exe;
+
+    @Before
+    public void before() {
+        tracer = new MemoryMongoTracer();
+        ti = new TracingMongoInterceptor(tracer);
+        exe = new FakeExecutor();
+    }
+
+    @Test
+    public void test_find_finish_on_last_batch() {
+        exe.cursor = new FakeCursor();
+        exe.cursor.batches.add(Arrays.asList(1, 2));
+        exe.cursor.batches.add(Arrays.asList(3));
+        MongoInterceptorChain<BatchCursor<Integer>> chain = chain();
+        chain.setReadOperation(find());
+        chain.setReadPreference(ReadPreference.primary());
+        chain.doChain();
+        BatchCursor<Integer> cursor = chain.getResult();
+        assertNotSame(exe.cursor, cursor);
+
+        cursor.next();
+        assertTrue(tracer.getSpans().isEmpty());
+        // 读完最后一批，不调用 hasNext 和 close 也结束
+        cursor.next();
+        assertEquals(1, tracer.getSpans().size());
+        Span span = tracer.getSpans().get(0);
+        assertEquals("mongo.Find", span.getName());
+        assertEquals("mongodb", span.getTag("db.type"));
+        assertEquals("db", span.getTag("db.instance"));
+        assertEquals("c", span.getTag("mongo.collection"));
+        assertEquals("Find", span.getTag("mongo.command"));
+        assertEquals("R", span.getTag("mongo.rw"));
+        assertEquals(3L, span.getTag("mongo.docs"));
+        assertEquals(2L, span.getTag("mongo.batches"));
+        assertNull(span.getError());
+
+        // 再关闭也不会重复结束
+        assertFalse(cursor.hasNext());
+        cursor.close();
+        assertTrue(exe.cursor.closed);
+        assertEquals(1, tracer.getSpans().size());
+    }
+
+    @Test
+    public void test_find_close_early() {
+        exe.cursor = new FakeCursor();
+        exe.cursor.batches.add(Arrays.asList(1, 2));
+        exe.cursor.batches.add(Arrays.asList(3));
+        MongoInterceptorChain<BatchCursor<Integer>> chain = chain();
+        chain.setReadOperation(find());
+        chain.setReadPreference(ReadPreference.primary());
+        chain.doChain();
+        chain.getResult().next();
+        chain.getResult().close();
+        Span span = tracer.getSpans().get(0);
+        assertEquals(2L, span.getTag("mongo.docs"));
+        assertEquals(1L, span.getTag("mongo.batches"));
+    }
+
+    @Test
+    public void test_failed_command() {
+        MongoInterceptorChain<BsonDocument> chain = chain();
+        chain.setReadOperation(new CommandReadOperation<BsonDocument>("db",
+                                                                      new BsonDocument("count",
+                                                                                       new BsonString("c")),
+                                                                      new BsonDocumentCodec()));
+        chain.setReadPreference(ReadPreference.primary());
+        try {
+            chain.doChain();
+            fail();
+        }
+        catch (MongoSocketException e) {}
+        assertEquals(1, tracer.getSpans().size());
+        Span span = tracer.getSpans().get(0);
+        assertEquals("mongo.count", span.getName());
+        assertEquals("c", span.getTag("mongo.collection"));
+        assertEquals("count", span.getTag("mongo.command"));
+        assertEquals("R", span.getTag("mongo.rw"));
+        assertTrue(span.getError() instanceof MongoSocketException);
+    }
+
+    @Test
+    public void test_write() {
+        MongoInterceptorChain<WriteConcernResult> chain = chain();
+        chain.setWriteOperation(new InsertOperation(new MongoNamespace("db", "c"),
+                                                    true,
+                                                    WriteConcern.ACKNOWLEDGED,
+                                                    Arrays.asList(new InsertRequest(new BsonDocument()))));
+        chain.doChain();
+        Span span = tracer.getSpans().get(0);
+        assertEquals("mongo.Insert", span.getName());
+        assertEquals("W", span.getTag("mongo.rw"));
+        assertEquals(1L, span.getTag("mongo.docs"));
+    }
+
+    @Test
+    public void test_no_tracer() {
+        ti.setTracer(null);
+        exe.cursor = new FakeCursor();
+        MongoInterceptorChain<BatchCursor<Integer>> chain = chain();
+        chain.setReadOperation(find());
+        chain.setReadPreference(ReadPreference.primary());
+        chain.doChain();
+        assertSame(exe.cursor, chain.getResult());
+    }
+
+    private <T> MongoInterceptorChain<T> chain() {
+        MongoInterceptorChain<T> chain = new MongoInterceptorChain<T>();
+        chain.setInterceptors(new ArrayList<MongoInterceptor>(Arrays.<MongoInterceptor> asList(ti)));
+        chain.setProxy(exe);
+        return chain;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ReadOperation<BatchCursor<Integer>> find() {
+        return (ReadOperation) new FindOperation<BsonDocument>(new MongoNamespace("db", "c"),
+                                                               new BsonDocumentCodec());
+    }
+}
@@ -0,0 +1,27 @@
+package org.nutz.mongo.pojo;
+
+/**
+ * _id 是数字的对象
+ */
+public class Seq {
+
+    private Object _id;
+
+    private String name;
+
+    public Object get_id() {
+        return _id;
+    }
+
+    public void set_id(Object _id) {
+        this._id = _id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}